@@ -0,0 +1,71 @@
+package com.codecritic.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executors for the stages of the review pipeline.
+ * <p>
+ * CPU-bound static analysis gets a pool sized to the number of cores. Blocking GitHub and Azure
+ * calls each get their own bounded pool whose size is the per-service concurrency cap, so a slow
+ * dependency cannot starve the other. Webhook processing runs on its own pool behind
+ * {@code @Async("webhookExecutor")}. Spring Boot binds every {@link ThreadPoolTaskExecutor} bean
+ * to the {@code executor.*} metrics, tagged with the bean name.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    @Bean
+    public ThreadPoolTaskExecutor webhookExecutor(
+            @Value("${executor.webhook.threads:2}") int threads,
+            @Value("${executor.webhook.queue-capacity:200}") int queueCapacity) {
+        return createExecutor("webhook-", threads, queueCapacity, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor staticAnalysisExecutor(
+            @Value("${executor.static-analysis.threads:0}") int threads,
+            @Value("${executor.static-analysis.queue-capacity:500}") int queueCapacity) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // Running overflow on the submitting thread throttles producers instead of failing reviews
+        return createExecutor("static-analysis-", size, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor githubExecutor(
+            @Value("${executor.github.concurrency:8}") int concurrency,
+            @Value("${executor.github.queue-capacity:1000}") int queueCapacity) {
+        return createExecutor("github-io-", concurrency, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor aiExecutor(
+            @Value("${executor.ai.concurrency:8}") int concurrency,
+            @Value("${executor.ai.queue-capacity:1000}") int queueCapacity) {
+        return createExecutor("ai-io-", concurrency, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private ThreadPoolTaskExecutor createExecutor(String threadNamePrefix, int threads, int queueCapacity,
+                                                  RejectedExecutionHandler rejectionPolicy) {
+        logger.info("Creating executor {} with {} thread(s) and queue capacity {}",
+                threadNamePrefix, threads, queueCapacity);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectionPolicy);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
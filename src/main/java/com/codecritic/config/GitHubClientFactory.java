@@ -0,0 +1,59 @@
+package com.codecritic.config;
+
+import com.codecritic.service.GitHubRateLimitException;
+import okhttp3.OkHttpClient;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubAbuseLimitHandler;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.GitHubRateLimitHandler;
+import org.kohsuke.github.authorization.AuthorizationProvider;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+import org.kohsuke.github.extras.okhttp3.OkHttpGitHubConnector;
+
+import java.io.IOException;
+
+/**
+ * Creates GitHub clients that share one pooled, caching HTTP connector.
+ * <p>
+ * Rate-limited calls fail fast with a {@link GitHubRateLimitException} so that the request
+ * scheduler, not the library, decides when to retry them.
+ */
+public class GitHubClientFactory {
+
+    private final String apiUrl;
+    private final GitHubConnector connector;
+
+    public GitHubClientFactory(String apiUrl, OkHttpClient httpClient) {
+        this.apiUrl = apiUrl;
+        // A max-age of 0 makes every request a conditional one, answered from the cache on 304
+        this.connector = new OkHttpGitHubConnector(httpClient, 0);
+    }
+
+    /**
+     * Create a client that authenticates every request with the given provider
+     */
+    public GitHub create(AuthorizationProvider authorizationProvider) throws IOException {
+        return new GitHubBuilder()
+                .withEndpoint(apiUrl)
+                .withAuthorizationProvider(authorizationProvider)
+                .withConnector(connector)
+                .withRateLimitHandler(new GitHubRateLimitHandler() {
+                    @Override
+                    public void onError(GitHubConnectorResponse response) throws IOException {
+                        throw GitHubRateLimitException.from(response, false);
+                    }
+                })
+                .withAbuseLimitHandler(new GitHubAbuseLimitHandler() {
+                    @Override
+                    public void onError(GitHubConnectorResponse response) throws IOException {
+                        throw GitHubRateLimitException.from(response, true);
+                    }
+                })
+                .build();
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+}
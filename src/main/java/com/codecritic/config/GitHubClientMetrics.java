@@ -0,0 +1,71 @@
+package com.codecritic.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+/**
+ * Counts connection reuse and cache outcomes of the GitHub HTTP client.
+ * <p>
+ * {@code codecritic.github.http.connections.acquired} counts every connection a call used and
+ * {@code codecritic.github.http.connections.opened} the ones that had to be established, so the
+ * difference is the number of reused keep-alive connections. {@code codecritic.github.http.cache}
+ * is tagged with {@code result}: {@code conditional} when a cached response was revalidated with
+ * its ETag, {@code hit} when the response was served from the cache (including after a 304 Not
+ * Modified), and {@code miss} when nothing was cached.
+ */
+public class GitHubClientMetrics extends EventListener {
+
+    private final Counter connectionsAcquired;
+    private final Counter connectionsOpened;
+    private final Counter cacheHits;
+    private final Counter cacheConditional;
+    private final Counter cacheMisses;
+
+    public GitHubClientMetrics(MeterRegistry meterRegistry) {
+        this.connectionsAcquired = Counter.builder("codecritic.github.http.connections.acquired")
+                .description("Connections used by GitHub calls, new or reused")
+                .register(meterRegistry);
+        this.connectionsOpened = Counter.builder("codecritic.github.http.connections.opened")
+                .description("New connections established to GitHub")
+                .register(meterRegistry);
+        this.cacheHits = Counter.builder("codecritic.github.http.cache")
+                .tag("result", "hit").register(meterRegistry);
+        this.cacheConditional = Counter.builder("codecritic.github.http.cache")
+                .tag("result", "conditional").register(meterRegistry);
+        this.cacheMisses = Counter.builder("codecritic.github.http.cache")
+                .tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionsAcquired.increment();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectionsOpened.increment();
+    }
+
+    @Override
+    public void cacheHit(Call call, Response response) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void cacheConditionalHit(Call call, Response cachedResponse) {
+        cacheConditional.increment();
+    }
+
+    @Override
+    public void cacheMiss(Call call) {
+        cacheMisses.increment();
+    }
+}
@@ -0,0 +1,102 @@
+package com.codecritic.config;
+
+import com.codecritic.service.GitHubRateLimitInterceptor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.authorization.AuthorizationProvider;
+import org.kohsuke.github.authorization.ImmutableAuthorizationProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared GitHub client.
+ * <p>
+ * All GitHub calls go through one {@link GitHub} instance backed by OkHttp, so TLS connections are
+ * pooled and kept alive between calls. Responses are stored in an on-disk HTTP cache and every
+ * request is revalidated with its ETag; GitHub answers unchanged resources with 304 Not Modified,
+ * which does not count against the rate limit. Clients for other credentials, such as GitHub App
+ * installations, are created with the same {@link GitHubClientFactory} and share the pool and cache.
+ */
+@Configuration
+public class GitHubConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubConfig.class);
+
+    @Value("${github.api.url:https://api.github.com}")
+    private String apiUrl;
+
+    @Value("${github.api.token}")
+    private String githubToken;
+
+    @Bean(destroyMethod = "close")
+    public Cache githubHttpCache(
+            @Value("${github.client.cache-dir:data/github-cache}") String cacheDir,
+            @Value("${github.client.cache-size-mb:50}") long cacheSizeMb) {
+        logger.info("Caching GitHub responses in {} (max {} MB)", cacheDir, cacheSizeMb);
+        return new Cache(new File(cacheDir), cacheSizeMb * 1024 * 1024);
+    }
+
+    @Bean
+    public OkHttpClient githubHttpClient(
+            Cache githubHttpCache,
+            MeterRegistry meterRegistry,
+            @Value("${github.client.max-idle-connections:16}") int maxIdleConnections,
+            @Value("${github.client.keep-alive-seconds:300}") long keepAliveSeconds,
+            @Value("${github.client.connect-timeout-ms:10000}") long connectTimeoutMs,
+            @Value("${github.client.read-timeout-ms:30000}") long readTimeoutMs) {
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+        GitHubClientMetrics clientMetrics = new GitHubClientMetrics(meterRegistry);
+
+        Gauge.builder("codecritic.github.http.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Open connections to GitHub")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.github.http.pool.idle", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Idle keep-alive connections to GitHub")
+                .register(meterRegistry);
+        FunctionCounter.builder("codecritic.github.http.cache.requests", githubHttpCache, Cache::requestCount)
+                .description("Requests that went through the GitHub response cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("codecritic.github.http.cache.network", githubHttpCache, Cache::networkCount)
+                .description("Cached requests that needed a network call, including 304 revalidations")
+                .register(meterRegistry);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .cache(githubHttpCache)
+                .eventListener(clientMetrics)
+                .addNetworkInterceptor(new GitHubRateLimitInterceptor())
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(Duration.ofMillis(readTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public GitHubClientFactory githubClientFactory(OkHttpClient githubHttpClient) {
+        return new GitHubClientFactory(apiUrl, githubHttpClient);
+    }
+
+    /**
+     * Provides the GitHub client authenticated with {@code github.api.token}
+     */
+    @Bean
+    public GitHub gitHub(GitHubClientFactory githubClientFactory) throws IOException {
+        logger.info("Initializing GitHub client for {}", apiUrl);
+
+        return githubClientFactory.create(githubToken == null || githubToken.isBlank()
+                ? AuthorizationProvider.ANONYMOUS
+                : ImmutableAuthorizationProvider.fromOauthToken(githubToken));
+    }
+}
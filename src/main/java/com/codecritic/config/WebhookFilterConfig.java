@@ -0,0 +1,29 @@
+package com.codecritic.config;
+
+import com.codecritic.filter.WebhookSignatureFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the webhook signature filter on the GitHub webhook endpoint only
+ */
+@Configuration
+public class WebhookFilterConfig {
+
+    @Value("${github.webhook.secret}")
+    private String webhookSecret;
+
+    @Value("${github.webhook.max-payload-bytes:26214400}")
+    private int maxPayloadBytes;
+
+    @Bean
+    public FilterRegistrationBean<WebhookSignatureFilter> webhookSignatureFilter() {
+        FilterRegistrationBean<WebhookSignatureFilter> registration =
+                new FilterRegistrationBean<>(new WebhookSignatureFilter(webhookSecret, maxPayloadBytes));
+        registration.addUrlPatterns("/api/webhook/github");
+        registration.setName("webhookSignatureFilter");
+        return registration;
+    }
+}
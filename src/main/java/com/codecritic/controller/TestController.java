@@ -2,8 +2,12 @@ package com.codecritic.controller;
 
 import com.codecritic.model.GitHubWebhookEvent;
 import com.codecritic.service.GitHubWebhookService;
+import com.codecritic.service.WebhookAdmissionService;
+import com.codecritic.service.WebhookPayloadParser;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
@@ -18,34 +22,59 @@ public class TestController {
 
     private static final Logger logger = LoggerFactory.getLogger(TestController.class);
     private final GitHubWebhookService githubWebhookService;
+    private final WebhookPayloadParser webhookPayloadParser;
+    private final WebhookAdmissionService admissionService;
     
-    public TestController(GitHubWebhookService githubWebhookService) {
+    public TestController(GitHubWebhookService githubWebhookService,
+                          WebhookPayloadParser webhookPayloadParser,
+                          WebhookAdmissionService admissionService) {
         this.githubWebhookService = githubWebhookService;
+        this.webhookPayloadParser = webhookPayloadParser;
+        this.admissionService = admissionService;
     }
     
     @Operation(summary = "Process a test GitHub webhook event", 
             description = "Simulates a GitHub webhook event for testing without signature validation")
     @PostMapping("/webhook/github")
-    public ResponseEntity<String> simulateGitHubWebhook(@RequestBody String payload) {
+    public ResponseEntity<String> simulateGitHubWebhook(@RequestBody byte[] payload) {
         logger.info("Received test GitHub webhook simulation");
         
         try {
-            // Extract PR ID from payload
-            long prId = extractPullRequestId(payload);
-            String repoName = extractRepositoryName(payload);
-            
-            // Create and process the webhook event
-            GitHubWebhookEvent event = GitHubWebhookEvent.builder()
+            // Create the webhook event from the fields present in the payload
+            GitHubWebhookEvent event = webhookPayloadParser.parse(payload, GitHubWebhookEvent.builder())
                     .eventId("test-" + System.currentTimeMillis())
                     .eventType("pull_request")
-                    .repositoryName(repoName)
-                    .pullRequestId(prId)
                     .timestamp(Instant.now())
-                    .rawPayload(payload)
                     .build();
             
+            // Fall back to test defaults for minimal payloads
+            if (event.getPullRequestId() == null) {
+                event.setPullRequestId(123L);
+            }
+            if (event.getRepositoryName() == null) {
+                event.setRepositoryName("test/CodeCritic-J");
+            }
+            if (event.getAction() == null) {
+                event.setAction("opened");
+            }
+            
+            if (!webhookPayloadParser.isReviewable(event)) {
+                return ResponseEntity.ok("Test webhook ignored for action: " + event.getAction());
+            }
+            
+            if (!admissionService.tryAdmit(event)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionService.getRetryAfterSeconds()))
+                        .body("Too many pending reviews, retry later");
+            }
+            
             // Process the event asynchronously
-            githubWebhookService.processWebhookEvent(event);
+            try {
+                githubWebhookService.processWebhookEvent(event);
+            } catch (RuntimeException e) {
+                admissionService.release();
+                throw e;
+            }
             
             return ResponseEntity.ok("Test webhook received and processing started");
         } catch (Exception e) {
@@ -53,34 +82,4 @@ public class TestController {
             return ResponseEntity.badRequest().body("Error processing test webhook: " + e.getMessage());
         }
     }
-    
-    /**
-     * Extract pull request ID from the webhook payload
-     * This is a simplified implementation - in a real app, you'd use a JSON parser
-     */
-    private long extractPullRequestId(String payload) {
-        // Simple string extraction for demo purposes
-        int idIndex = payload.indexOf("\"number\":");
-        if (idIndex >= 0) {
-            int start = idIndex + 9; // Length of "\"number\":"
-            int end = payload.indexOf(",", start);
-            return Long.parseLong(payload.substring(start, end).trim());
-        }
-        return 123; // Default test PR ID
-    }
-    
-    /**
-     * Extract repository name from the webhook payload
-     * This is a simplified implementation - in a real app, you'd use a JSON parser
-     */
-    private String extractRepositoryName(String payload) {
-        // Simple string extraction for demo purposes
-        int fullNameIndex = payload.indexOf("\"full_name\":");
-        if (fullNameIndex >= 0) {
-            int start = fullNameIndex + 13; // Length of "\"full_name\":"
-            int end = payload.indexOf("\"", start + 1);
-            return payload.substring(start, end).trim().replace("\"", "");
-        }
-        return "test/CodeCritic-J"; // Default test repo
-    }
-} 
\ No newline at end of file
+}
@@ -1,20 +1,20 @@
 package com.codecritic.controller;
 
+import com.codecritic.filter.WebhookSignatureFilter;
 import com.codecritic.model.GitHubWebhookEvent;
 import com.codecritic.service.GitHubWebhookService;
-import org.springframework.beans.factory.annotation.Value;
+import com.codecritic.service.WebhookAdmissionService;
+import com.codecritic.service.WebhookJournal;
+import com.codecritic.service.WebhookPayloadParser;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.time.Instant;
-import java.util.Formatter;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/webhook")
@@ -22,47 +22,60 @@ public class WebhookController {
 
     private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
     
-    @Value("${github.webhook.secret}")
-    private String webhookSecret;
-    
     private final GitHubWebhookService githubWebhookService;
+    private final WebhookPayloadParser webhookPayloadParser;
+    private final WebhookJournal webhookJournal;
+    private final WebhookAdmissionService admissionService;
     
-    public WebhookController(GitHubWebhookService githubWebhookService) {
+    public WebhookController(GitHubWebhookService githubWebhookService,
+                             WebhookPayloadParser webhookPayloadParser,
+                             WebhookJournal webhookJournal,
+                             WebhookAdmissionService admissionService) {
         this.githubWebhookService = githubWebhookService;
+        this.webhookPayloadParser = webhookPayloadParser;
+        this.webhookJournal = webhookJournal;
+        this.admissionService = admissionService;
     }
     
     @PostMapping("/github")
     public ResponseEntity<String> handleGitHubWebhook(
-            @RequestBody String payload,
+            @RequestAttribute(WebhookSignatureFilter.RAW_BODY_ATTRIBUTE) byte[] body,
             @RequestHeader("X-GitHub-Event") String eventType,
-            @RequestHeader("X-Hub-Signature-256") String signature,
             @RequestHeader("X-GitHub-Delivery") String deliveryId) {
         
         logger.info("Received GitHub webhook: {}, delivery: {}", eventType, deliveryId);
         
-        // Validate webhook signature
-        if (!isValidSignature(payload, signature)) {
-            logger.warn("Invalid webhook signature");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid signature");
-        }
+        // The signature has already been verified by WebhookSignatureFilter
         
         // For pull request events, trigger the processing
         if ("pull_request".equals(eventType)) {
+            GitHubWebhookEvent event;
             try {
-                // Extract PR ID from payload
-                // This is a simplified example - in a real app, you'd parse the JSON properly
-                long prId = extractPullRequestId(payload);
-                String repoName = extractRepositoryName(payload);
-                
-                // Create and process the webhook event
-                GitHubWebhookEvent event = GitHubWebhookEvent.builder()
+                event = webhookPayloadParser.parse(body, GitHubWebhookEvent.builder())
                         .eventId(deliveryId)
                         .eventType(eventType)
-                        .repositoryName(repoName)
-                        .pullRequestId(prId)
                         .timestamp(Instant.now())
-                        .rawPayload(payload)
                         .build();
+            } catch (IOException e) {
+                logger.warn("Malformed webhook payload for delivery {}: {}", deliveryId, e.getMessage());
+                return ResponseEntity.badRequest().body("Malformed payload");
+            }
+            
+            // Drop actions such as labeled or closed before any work is scheduled
+            if (!webhookPayloadParser.isReviewable(event)) {
+                return ResponseEntity.ok("Webhook ignored");
+            }
+            
+            // Shed load when saturated so GitHub redelivers later
+            if (!admissionService.tryAdmit(event)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionService.getRetryAfterSeconds()))
+                        .body("Too many pending reviews, retry later");
+            }
+            
+            try {
+                // Journal the event before acknowledging so it survives a restart
+                webhookJournal.append(event);
                 
                 // Process the event asynchronously
                 githubWebhookService.processWebhookEvent(event);
@@ -70,6 +83,10 @@ public class WebhookController {
                 return ResponseEntity.ok("Webhook received and processing started");
             } catch (Exception e) {
                 logger.error("Error processing webhook: {}", e.getMessage(), e);
+                // The event was not handed off, so nothing else will settle its journal record,
+                // and an unacknowledged record would hold the checkpoint back for good
+                webhookJournal.acknowledge(event.getJournalSequence());
+                admissionService.release();
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body("Error processing webhook");
             }
@@ -78,69 +95,4 @@ public class WebhookController {
         // For other event types, acknowledge but don't process
         return ResponseEntity.ok("Webhook received");
     }
-    
-    /**
-     * Validate the webhook signature
-     */
-    private boolean isValidSignature(String payload, String signature) {
-        try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKeySpec = new SecretKeySpec(
-                    webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-            mac.init(secretKeySpec);
-            byte[] digest = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            
-            StringBuilder hexString = new StringBuilder();
-            try (Formatter formatter = new Formatter(hexString)) {
-                for (byte b : digest) {
-                    formatter.format("%02x", b);
-                }
-            }
-            
-            // GitHub signature starts with "sha256="
-            String expectedSignature = "sha256=" + hexString;
-            
-            // Debug info
-            logger.info("Secret used: {}", webhookSecret);
-            logger.info("Payload length: {}", payload.length());
-            logger.info("Expected signature: {}", expectedSignature);
-            logger.info("Received signature: {}", signature);
-            
-            return expectedSignature.equals(signature);
-            
-        } catch (Exception e) {
-            logger.error("Error validating signature: {}", e.getMessage(), e);
-            return false;
-        }
-    }
-    
-    /**
-     * Extract pull request ID from the webhook payload
-     * This is a simplified implementation - in a real app, you'd use a JSON parser
-     */
-    private long extractPullRequestId(String payload) {
-        // Simple string extraction for demo purposes
-        int idIndex = payload.indexOf("\"number\":");
-        if (idIndex >= 0) {
-            int start = idIndex + 9; // Length of "\"number\":"
-            int end = payload.indexOf(",", start);
-            return Long.parseLong(payload.substring(start, end).trim());
-        }
-        return 0;
-    }
-    
-    /**
-     * Extract repository name from the webhook payload
-     * This is a simplified implementation - in a real app, you'd use a JSON parser
-     */
-    private String extractRepositoryName(String payload) {
-        // Simple string extraction for demo purposes
-        int fullNameIndex = payload.indexOf("\"full_name\":");
-        if (fullNameIndex >= 0) {
-            int start = fullNameIndex + 13; // Length of "\"full_name\":"
-            int end = payload.indexOf("\"", start + 1);
-            return payload.substring(start, end).trim().replace("\"", "");
-        }
-        return "unknown/repo";
-    }
-} 
\ No newline at end of file
+}
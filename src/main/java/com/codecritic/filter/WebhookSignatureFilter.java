@@ -0,0 +1,235 @@
+package com.codecritic.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Verifies the GitHub webhook signature against the raw request bytes.
+ * <p>
+ * The body is read exactly once. The same buffer is exposed to the controller through the
+ * {@link #RAW_BODY_ATTRIBUTE} request attribute and through the request input stream, so
+ * nothing downstream re-reads or re-encodes the payload. Bodies larger than the configured maximum
+ * are rejected with 413 before they are buffered: from their Content-Length when it is declared,
+ * and as soon as the limit is crossed otherwise.
+ */
+public class WebhookSignatureFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookSignatureFilter.class);
+
+    /**
+     * Request attribute holding the verified payload bytes
+     */
+    public static final String RAW_BODY_ATTRIBUTE = "com.codecritic.filter.WebhookSignatureFilter.rawBody";
+
+    private static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int DIGEST_LENGTH = 32;
+
+    private final ThreadLocal<Verifier> verifiers;
+    private final int maxBodyBytes;
+
+    /**
+     * @param maxBodyBytes largest request body accepted
+     */
+    public WebhookSignatureFilter(String webhookSecret, int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+        if (webhookSecret == null || webhookSecret.isEmpty()) {
+            logger.warn("No webhook secret configured - all webhook deliveries will be rejected");
+            this.verifiers = null;
+        } else {
+            SecretKeySpec key = new SecretKeySpec(
+                    webhookSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            this.verifiers = ThreadLocal.withInitial(() -> new Verifier(key));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        byte[] body = contentLength > maxBodyBytes ? null : readBody(request, (int) contentLength);
+        if (body == null) {
+            logger.warn("Rejecting webhook delivery {} larger than {} bytes",
+                    request.getHeader("X-GitHub-Delivery"), maxBodyBytes);
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            response.getWriter().write("Payload too large");
+            return;
+        }
+
+        if (!isValidSignature(body, request.getHeader(SIGNATURE_HEADER))) {
+            logger.warn("Invalid webhook signature for delivery {}", request.getHeader("X-GitHub-Delivery"));
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            response.getWriter().write("Invalid signature");
+            return;
+        }
+
+        request.setAttribute(RAW_BODY_ATTRIBUTE, body);
+        filterChain.doFilter(new CachedBodyRequest(request, body), response);
+    }
+
+    /**
+     * Check the signature header against the HMAC of the payload in constant time
+     */
+    boolean isValidSignature(byte[] body, String signature) {
+        if (verifiers == null || signature == null
+                || signature.length() != SIGNATURE_PREFIX.length() + DIGEST_LENGTH * 2
+                || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+
+        Verifier verifier = verifiers.get();
+        if (!decodeHex(signature, SIGNATURE_PREFIX.length(), verifier.expected)) {
+            return false;
+        }
+
+        try {
+            verifier.mac.update(body);
+            verifier.mac.doFinal(verifier.computed, 0);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error computing webhook signature: {}", e.getMessage(), e);
+            return false;
+        }
+
+        return MessageDigest.isEqual(verifier.computed, verifier.expected);
+    }
+
+    /**
+     * Read the whole request body into a single array sized from Content-Length when known
+     *
+     * @param contentLength declared length of the body, at most the maximum, or -1 if unknown
+     * @return the body, or null if it has no declared length and is larger than the maximum
+     */
+    private byte[] readBody(HttpServletRequest request, int contentLength) throws IOException {
+        try (InputStream in = request.getInputStream()) {
+            if (contentLength < 0) {
+                byte[] body = in.readNBytes(maxBodyBytes + 1);
+                return body.length > maxBodyBytes ? null : body;
+            }
+            // Read in place: readNBytes(int) buffers in chunks and copies them into a second array
+            byte[] body = new byte[contentLength];
+            if (in.readNBytes(body, 0, contentLength) != contentLength) {
+                throw new IOException("Request body shorter than Content-Length");
+            }
+            return body;
+        }
+    }
+
+    /**
+     * Decode lowercase or uppercase hex into the target buffer without allocating
+     */
+    private static boolean decodeHex(String hex, int offset, byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            int high = Character.digit(hex.charAt(offset + i * 2), 16);
+            int low = Character.digit(hex.charAt(offset + i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            target[i] = (byte) ((high << 4) | low);
+        }
+        return true;
+    }
+
+    /**
+     * Per-thread pre-keyed MAC plus scratch buffers for the two digests
+     */
+    private static final class Verifier {
+        private final Mac mac;
+        private final byte[] computed = new byte[DIGEST_LENGTH];
+        private final byte[] expected = new byte[DIGEST_LENGTH];
+
+        private Verifier(SecretKeySpec key) {
+            try {
+                this.mac = Mac.getInstance(HMAC_ALGORITHM);
+                this.mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 is not available", e);
+            }
+        }
+    }
+
+    /**
+     * Request wrapper that serves the already-read body from the same buffer
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // The whole body is already in memory, so it is available right away; the
+                    // listener is called again as long as it keeps reading
+                    try {
+                        int remaining = in.available();
+                        while (remaining > 0) {
+                            readListener.onDataAvailable();
+                            if (in.available() == remaining) {
+                                return;
+                            }
+                            remaining = in.available();
+                        }
+                        readListener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -11,6 +11,7 @@ public class AnalysisIssue {
     private Severity severity;
     private int lineNumber;
     private Integer columnNumber;
+    private Integer diffPosition;
     
     public enum Severity {
         LOW,
@@ -12,4 +12,5 @@ public class AnalysisReport {
     private Instant generatedAt;
     private String fileId;
     private List<AnalysisIssue> issues;
+    private boolean failed;
 } 
\ No newline at end of file
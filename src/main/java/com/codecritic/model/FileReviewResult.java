@@ -0,0 +1,14 @@
+package com.codecritic.model;
+
+import lombok.Data;
+import lombok.Builder;
+
+@Data
+@Builder
+public class FileReviewResult {
+    private String filePath;
+    private String blobSha;
+    private AnalysisReport report;
+    private AIReview review;
+    private boolean carriedOver;
+}
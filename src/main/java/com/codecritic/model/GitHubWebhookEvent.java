@@ -1,18 +1,32 @@
 package com.codecritic.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.time.Instant;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class GitHubWebhookEvent {
     private String eventId;
     private String eventType;
+    private String action;
     private String repositoryName;
     private Long pullRequestId;
+    private String headSha;
+    private boolean draft;
+    private String senderLogin;
+    private String senderType;
+    private Long installationId;
     private Instant timestamp;
+    @JsonIgnore
     private String rawPayload;
-} 
\ No newline at end of file
+    @JsonIgnore
+    private Long journalSequence;
+}
@@ -0,0 +1,13 @@
+package com.codecritic.model;
+
+import lombok.Data;
+import lombok.Builder;
+
+@Data
+@Builder
+public class InlineComment {
+    private String filePath;
+    /** Position in the file's diff, counted from 1 for the line below the first hunk header */
+    private int position;
+    private String body;
+}
@@ -12,7 +12,14 @@ public class PullRequest {
     private String title;
     private String author;
     private String repository;
+    private String headSha;
+    private String baseSha;
+    private Boolean draft;
+    private Long installationId;
     private Instant createdAt;
     private Instant updatedAt;
+    private Integer changedFiles;
+    private Integer additions;
+    private Integer deletions;
     private List<ModifiedFile> modifiedFiles;
 } 
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.AIReview;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.service.AIReviewService;
+import com.codecritic.service.ParsedSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Asks the AI model for a review of each file, naming the declarations the patch changes when
+ * {@link ParseStage} parsed the file
+ */
+@Component
+@Order(200)
+public class AIReviewStage implements ReviewStage<AIReview> {
+
+    public static final String NAME = "ai-review";
+
+    private final AIReviewService aiReviewService;
+    private final Executor aiExecutor;
+
+    public AIReviewStage(
+            AIReviewService aiReviewService,
+            @Qualifier("aiExecutor") Executor aiExecutor) {
+        this.aiReviewService = aiReviewService;
+        this.aiExecutor = aiExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<String> getInputs() {
+        return List.of(ParseStage.NAME);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return aiExecutor;
+    }
+
+    @Override
+    public AIReview process(ModifiedFile file, StageResults inputs) {
+        ParsedSource parsedSource = inputs.get(ParseStage.NAME, ParsedSource.class);
+        return aiReviewService.generateReview(file, changedDeclarations(parsedSource, file.getDiffContent()));
+    }
+
+    /**
+     * Declarations of the outline containing lines the patch adds
+     */
+    private static List<ParsedSource.Declaration> changedDeclarations(ParsedSource parsedSource, String patch) {
+        if (parsedSource == null) {
+            return List.of();
+        }
+        DiffLineIndex index = DiffLineIndex.parse(patch);
+        return parsedSource.getOutline().stream()
+                .filter(declaration -> index.addsAnyOf(declaration.beginLine(), declaration.endLine()))
+                .toList();
+    }
+}
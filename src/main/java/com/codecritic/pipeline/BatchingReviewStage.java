@@ -0,0 +1,30 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A review stage that processes files in batches.
+ * <p>
+ * {@link ReviewPipeline} hands each file to {@link #submit} as soon as its inputs are ready instead
+ * of running {@link #process} on the stage's executor, so no thread sits idle while a batch fills
+ * up. The stage completes the returned future once the file's batch is done.
+ *
+ * @param <T> type of the result produced for each file
+ */
+public interface BatchingReviewStage<T> extends ReviewStage<T> {
+
+    /**
+     * Queue one file for processing
+     *
+     * @param inputs results of the stages listed in {@link #getInputs()} for this file
+     * @return a future with the file's result; cancelling it drops the file from its batch
+     */
+    CompletableFuture<T> submit(ModifiedFile file, StageResults inputs);
+
+    @Override
+    default T process(ModifiedFile file, StageResults inputs) {
+        return submit(file, inputs).join();
+    }
+}
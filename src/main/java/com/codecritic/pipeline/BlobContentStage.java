@@ -0,0 +1,63 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.service.BlobStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the full post-change content of each file from the {@link BlobStore}. Files whose content
+ * cannot be loaded publish no result, and later stages fall back to the patch.
+ * <p>
+ * Missing blobs are fetched in batches by the store, so files are handed to it without a thread
+ * waiting for their download.
+ */
+@Component
+@Order(50)
+public class BlobContentStage implements BatchingReviewStage<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobContentStage.class);
+
+    public static final String NAME = "blob-content";
+
+    private final BlobStore blobStore;
+    private final Executor githubExecutor;
+
+    public BlobContentStage(
+            BlobStore blobStore,
+            @Qualifier("githubExecutor") Executor githubExecutor) {
+        this.blobStore = blobStore;
+        this.githubExecutor = githubExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return githubExecutor;
+    }
+
+    @Override
+    public boolean accepts(ModifiedFile file) {
+        return file.getChangeType() != ModifiedFile.ChangeType.DELETED && BlobStore.isBlobSha(file.getFileId());
+    }
+
+    @Override
+    public CompletableFuture<String> submit(ModifiedFile file, StageResults inputs) {
+        // A dependent future, so that cancelling it leaves the download others may wait for
+        return blobStore.get(inputs.getPullRequest(), file.getFileId()).exceptionally(e -> {
+            logger.warn("Could not load content of {}, analyzing its patch: {}",
+                    file.getFilePath(), e.getMessage());
+            return null;
+        });
+    }
+}
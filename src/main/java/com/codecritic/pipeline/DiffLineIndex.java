@@ -0,0 +1,130 @@
+package com.codecritic.pipeline;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the lines a patch adds, for restricting findings to the changed code.
+ * <p>
+ * The added lines of a unified diff are kept as sorted runs of consecutive lines, each with the
+ * post-change line number and the diff position of its first line; a position counts the lines
+ * below the first hunk header, as GitHub does for review comments. Both a file line and a diff
+ * position are looked up with a binary search over the runs.
+ */
+public final class DiffLineIndex {
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)");
+
+    private static final DiffLineIndex EMPTY = new DiffLineIndex(new int[0], new int[0], new int[0], 0);
+
+    /** First post-change line of each run */
+    private final int[] startLines;
+    /** Diff position of the first line of each run */
+    private final int[] startPositions;
+    private final int[] lengths;
+    private final int runs;
+
+    private DiffLineIndex(int[] startLines, int[] startPositions, int[] lengths, int runs) {
+        this.startLines = startLines;
+        this.startPositions = startPositions;
+        this.lengths = lengths;
+        this.runs = runs;
+    }
+
+    /**
+     * Index the added lines of a patch as GitHub returns it for a file, starting at a hunk header
+     *
+     * @param patch the patch, or null for a file without one
+     */
+    public static DiffLineIndex parse(String patch) {
+        if (patch == null || patch.isEmpty()) {
+            return EMPTY;
+        }
+        int[] startLines = new int[16];
+        int[] startPositions = new int[16];
+        int[] lengths = new int[16];
+        int runs = 0;
+
+        int position = -1;
+        int line = 0;
+        boolean inRun = false;
+        for (String text : patch.split("\n")) {
+            position++;
+            boolean added = false;
+            if (text.startsWith("@@")) {
+                Matcher header = HUNK_HEADER.matcher(text);
+                line = header.find() ? Integer.parseInt(header.group(1)) : line;
+            } else if (text.startsWith("+")) {
+                added = position > 0;
+                if (added && inRun) {
+                    lengths[runs - 1]++;
+                } else if (added) {
+                    if (runs == startLines.length) {
+                        startLines = Arrays.copyOf(startLines, runs * 2);
+                        startPositions = Arrays.copyOf(startPositions, runs * 2);
+                        lengths = Arrays.copyOf(lengths, runs * 2);
+                    }
+                    startLines[runs] = line;
+                    startPositions[runs] = position;
+                    lengths[runs] = 1;
+                    runs++;
+                }
+                line++;
+            } else if (text.startsWith(" ")) {
+                line++;
+            }
+            inRun = added;
+        }
+        return runs == 0 ? EMPTY : new DiffLineIndex(startLines, startPositions, lengths, runs);
+    }
+
+    /**
+     * Whether the patch adds no lines
+     */
+    public boolean isEmpty() {
+        return runs == 0;
+    }
+
+    /**
+     * Diff position of a post-change line the patch adds
+     *
+     * @return the position, or null if the line is not added by the patch
+     */
+    public Integer positionOf(int line) {
+        int run = floor(startLines, line);
+        if (run < 0 || line >= startLines[run] + lengths[run]) {
+            return null;
+        }
+        return startPositions[run] + line - startLines[run];
+    }
+
+    /**
+     * Post-change line of an added line at a diff position
+     *
+     * @return the line number, or null if the position is not an added line
+     */
+    public Integer lineAt(int position) {
+        int run = floor(startPositions, position);
+        if (run < 0 || position >= startPositions[run] + lengths[run]) {
+            return null;
+        }
+        return startLines[run] + position - startPositions[run];
+    }
+
+    /**
+     * Whether the patch adds any post-change line from {@code firstLine} to {@code lastLine}
+     */
+    public boolean addsAnyOf(int firstLine, int lastLine) {
+        int run = floor(startLines, lastLine);
+        return run >= 0 && startLines[run] + lengths[run] > firstLine;
+    }
+
+    /**
+     * Index of the last run starting at or before {@code value}, or -1 if there is none
+     */
+    private int floor(int[] starts, int value) {
+        int index = Arrays.binarySearch(starts, 0, runs, value);
+        return index >= 0 ? index : -index - 2;
+    }
+}
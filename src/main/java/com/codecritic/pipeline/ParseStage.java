@@ -0,0 +1,59 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.service.JavaSourceParser;
+import com.codecritic.service.ParsedSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Parses the full content of each Java file once into a {@link ParsedSource}, which the later
+ * stages share instead of parsing the file themselves. Files whose content was not loaded publish
+ * no result.
+ */
+@Component
+@Order(75)
+public class ParseStage implements ReviewStage<ParsedSource> {
+
+    public static final String NAME = "parse";
+
+    private final JavaSourceParser javaSourceParser;
+    private final Executor staticAnalysisExecutor;
+
+    public ParseStage(
+            JavaSourceParser javaSourceParser,
+            @Qualifier("staticAnalysisExecutor") Executor staticAnalysisExecutor) {
+        this.javaSourceParser = javaSourceParser;
+        this.staticAnalysisExecutor = staticAnalysisExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<String> getInputs() {
+        return List.of(BlobContentStage.NAME);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return staticAnalysisExecutor;
+    }
+
+    @Override
+    public boolean accepts(ModifiedFile file) {
+        return file.getFilePath().endsWith(".java");
+    }
+
+    @Override
+    public ParsedSource process(ModifiedFile file, StageResults inputs) {
+        String content = inputs.get(BlobContentStage.NAME, String.class);
+        return content != null ? javaSourceParser.parse(file.getFilePath(), content) : null;
+    }
+}
@@ -0,0 +1,229 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.codecritic.service.CancellableTasks;
+import com.codecritic.service.WebhookAdmissionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the registered {@link ReviewStage}s over the files of a review.
+ * <p>
+ * At startup the stages are checked to form a DAG (unique names, known inputs, no cycles) and
+ * put in dependency order. Files are streamed through the pipeline: each submitted file starts
+ * its stages independently of the other files, and each stage starts as soon as its inputs for
+ * that file are done, so stages without a dependency between them run concurrently. The time
+ * spent in every stage is recorded in the {@code codecritic.pipeline.stage} timer. Files are
+ * handed to a {@link BatchingReviewStage} without occupying a thread, and its time includes the
+ * wait for the file's batch. The result of a stage that other stages consume, such as a file's
+ * content or syntax tree, is dropped once all of them have finished; only the results nothing
+ * consumes are returned.
+ */
+@Component
+public class ReviewPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewPipeline.class);
+
+    private final List<ReviewStage<?>> stages;
+    /** Names of the stages consuming each stage's result, for the stages that have any */
+    private final Map<String, List<String>> consumers = new HashMap<>();
+    private final Set<String> disabledStages;
+    private final Map<String, Timer> stageTimers = new HashMap<>();
+    private final WebhookAdmissionService admissionService;
+
+    public ReviewPipeline(
+            List<ReviewStage<?>> stages,
+            MeterRegistry meterRegistry,
+            WebhookAdmissionService admissionService,
+            @Value("${review.pipeline.disabled-stages:}") Set<String> disabledStages) {
+        this.stages = order(stages);
+        this.disabledStages = disabledStages;
+        this.admissionService = admissionService;
+
+        for (ReviewStage<?> stage : this.stages) {
+            for (String input : stage.getInputs()) {
+                consumers.computeIfAbsent(input, name -> new ArrayList<>()).add(stage.getName());
+            }
+            stageTimers.put(stage.getName(), Timer.builder("codecritic.pipeline.stage")
+                    .description("Time spent in a review pipeline stage per file")
+                    .tag("stage", stage.getName())
+                    .register(meterRegistry));
+        }
+        logger.info("Review pipeline stages: {} (disabled: {})",
+                this.stages.stream().map(ReviewStage::getName).toList(), disabledStages);
+    }
+
+    /**
+     * Start a run of the pipeline for one review
+     */
+    public Run start(PullRequest pullRequest) {
+        return new Run(pullRequest);
+    }
+
+    /**
+     * Sort the stages so that every stage comes after its inputs, keeping registration order
+     * between independent stages
+     */
+    private static List<ReviewStage<?>> order(List<ReviewStage<?>> stages) {
+        Map<String, ReviewStage<?>> byName = new LinkedHashMap<>();
+        for (ReviewStage<?> stage : stages) {
+            if (byName.put(stage.getName(), stage) != null) {
+                throw new IllegalStateException("Duplicate review stage name: " + stage.getName());
+            }
+        }
+        for (ReviewStage<?> stage : stages) {
+            for (String input : stage.getInputs()) {
+                if (!byName.containsKey(input)) {
+                    throw new IllegalStateException("Review stage " + stage.getName()
+                            + " depends on unknown stage " + input);
+                }
+            }
+        }
+
+        List<ReviewStage<?>> ordered = new ArrayList<>();
+        Set<String> placed = new HashSet<>();
+        while (ordered.size() < stages.size()) {
+            boolean progress = false;
+            for (ReviewStage<?> stage : byName.values()) {
+                if (!placed.contains(stage.getName()) && placed.containsAll(stage.getInputs())) {
+                    ordered.add(stage);
+                    placed.add(stage.getName());
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                List<String> remaining = byName.keySet().stream().filter(name -> !placed.contains(name)).toList();
+                throw new IllegalStateException("Review stages form a cycle: " + remaining);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * The stages of one review, which can be cancelled as a whole
+     */
+    public final class Run {
+        private final PullRequest pullRequest;
+        /** Stage tasks that have not completed yet */
+        private final Set<CompletableFuture<?>> tasks = new HashSet<>();
+        private boolean cancelled;
+
+        private Run(PullRequest pullRequest) {
+            this.pullRequest = pullRequest;
+        }
+
+        /**
+         * Feed a file through the pipeline
+         *
+         * @return a future with the results of the stages no other stage consumes
+         */
+        public CompletableFuture<StageResults> submit(ModifiedFile file) {
+            StageResults results = new StageResults(pullRequest);
+            Map<String, CompletableFuture<?>> stageFutures = new HashMap<>();
+
+            for (ReviewStage<?> stage : stages) {
+                CompletableFuture<?>[] inputs = stage.getInputs().stream()
+                        .map(stageFutures::get)
+                        .toArray(CompletableFuture[]::new);
+                stageFutures.put(stage.getName(), CompletableFuture.allOf(inputs)
+                        .thenCompose(v -> runStage(stage, file, results)));
+            }
+
+            // Drop each consumed result once its last consumer has finished
+            List<CompletableFuture<?>> done = new ArrayList<>(stageFutures.values());
+            consumers.forEach((input, names) -> done.add(CompletableFuture.allOf(names.stream()
+                            .map(stageFutures::get)
+                            .toArray(CompletableFuture[]::new))
+                    .whenComplete((v, ex) -> results.remove(input))));
+
+            return CompletableFuture.allOf(done.toArray(new CompletableFuture[0]))
+                    .thenApply(v -> results);
+        }
+
+        /**
+         * Cancel every pending stage task of the run, interrupting those that are running
+         */
+        public void cancel() {
+            List<CompletableFuture<?>> toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = new ArrayList<>(tasks);
+            }
+            toCancel.forEach(task -> task.cancel(true));
+        }
+
+        private CompletableFuture<Object> runStage(ReviewStage<?> stage, ModifiedFile file, StageResults results) {
+            if (disabledStages.contains(stage.getName()) || !stage.accepts(file)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            CompletableFuture<Object> task;
+            if (stage instanceof BatchingReviewStage<?> batchingStage) {
+                task = submitToBatch(batchingStage, file, results);
+            } else {
+                task = CancellableTasks.supply(() -> {
+                    admissionService.workStarted();
+                    try {
+                        Object result = stageTimers.get(stage.getName()).record(() -> stage.process(file, results));
+                        results.put(stage.getName(), result);
+                        return result;
+                    } finally {
+                        admissionService.workFinished();
+                    }
+                }, stage.getExecutor());
+            }
+
+            boolean cancelNow;
+            synchronized (this) {
+                tasks.add(task);
+                cancelNow = cancelled;
+            }
+            task.whenComplete((result, ex) -> {
+                synchronized (this) {
+                    tasks.remove(task);
+                }
+            });
+            if (cancelNow) {
+                task.cancel(true);
+            }
+            return task;
+        }
+
+        /**
+         * Hand the file to a batching stage. Its time is measured from submission until its batch
+         * is done, and cancelling the task drops the file from the batch.
+         */
+        private CompletableFuture<Object> submitToBatch(BatchingReviewStage<?> stage, ModifiedFile file,
+                                                        StageResults results) {
+            admissionService.workStarted();
+            Timer.Sample sample = Timer.start();
+            CompletableFuture<?> submitted = stage.submit(file, results);
+            CompletableFuture<Object> task = submitted.thenApply(result -> {
+                results.put(stage.getName(), result);
+                return (Object) result;
+            });
+            task.whenComplete((result, ex) -> {
+                sample.stop(stageTimers.get(stage.getName()));
+                admissionService.workFinished();
+                if (task.isCancelled()) {
+                    submitted.cancel(true);
+                }
+            });
+            return task;
+        }
+    }
+}
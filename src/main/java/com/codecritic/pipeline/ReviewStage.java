@@ -0,0 +1,50 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * One step of the per-file review pipeline.
+ * <p>
+ * A stage declares the stages whose results it consumes; its own result is published under its
+ * name. {@link ReviewPipeline} orders stages by these dependencies, runs stages that do not depend
+ * on each other concurrently, and starts a stage for a file as soon as that file's inputs are
+ * ready. Implementations are Spring beans and are picked up automatically.
+ *
+ * @param <T> type of the result produced for each file
+ */
+public interface ReviewStage<T> {
+
+    /**
+     * Unique name of the stage, under which its result is published
+     */
+    String getName();
+
+    /**
+     * Names of the stages whose results this stage needs
+     */
+    default List<String> getInputs() {
+        return List.of();
+    }
+
+    /**
+     * Executor the stage runs on, matching the kind of work it does
+     */
+    Executor getExecutor();
+
+    /**
+     * Whether the stage applies to the file; skipped stages publish no result
+     */
+    default boolean accepts(ModifiedFile file) {
+        return true;
+    }
+
+    /**
+     * Produce the stage's result for one file
+     *
+     * @param inputs results of the stages listed in {@link #getInputs()} for this file
+     */
+    T process(ModifiedFile file, StageResults inputs);
+}
@@ -0,0 +1,47 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.PullRequest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Results of the pipeline stages for one file, keyed by stage name
+ */
+public class StageResults {
+
+    private final PullRequest pullRequest;
+    private final Map<String, Object> results = new ConcurrentHashMap<>();
+
+    StageResults(PullRequest pullRequest) {
+        this.pullRequest = pullRequest;
+    }
+
+    /**
+     * Pull request the file belongs to
+     */
+    public PullRequest getPullRequest() {
+        return pullRequest;
+    }
+
+    /**
+     * Result of the named stage, or null if it did not run for this file
+     */
+    public <T> T get(String stage, Class<T> type) {
+        return type.cast(results.get(stage));
+    }
+
+    public boolean contains(String stage) {
+        return results.containsKey(stage);
+    }
+
+    void put(String stage, Object result) {
+        if (result != null) {
+            results.put(stage, result);
+        }
+    }
+
+    void remove(String stage) {
+        results.remove(stage);
+    }
+}
@@ -0,0 +1,97 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.AnalysisReport;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.service.ParsedSource;
+import com.codecritic.service.StaticAnalysisService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs PMD and Checkstyle on each file, on its full content when {@link BlobContentStage} loaded it
+ * and on its patch otherwise; Checkstyle walks the tree {@link ParseStage} parsed from the content.
+ * Only issues on lines the patch adds are kept, each placed on its position in the diff through a
+ * {@link DiffLineIndex}. Files are analyzed in per-PR batches by {@link StaticAnalysisService}.
+ */
+@Component
+@Order(100)
+public class StaticAnalysisStage implements BatchingReviewStage<AnalysisReport> {
+
+    public static final String NAME = "static-analysis";
+
+    private final StaticAnalysisService staticAnalysisService;
+    private final Executor staticAnalysisExecutor;
+
+    public StaticAnalysisStage(
+            StaticAnalysisService staticAnalysisService,
+            @Qualifier("staticAnalysisExecutor") Executor staticAnalysisExecutor) {
+        this.staticAnalysisService = staticAnalysisService;
+        this.staticAnalysisExecutor = staticAnalysisExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<String> getInputs() {
+        return List.of(BlobContentStage.NAME, ParseStage.NAME);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return staticAnalysisExecutor;
+    }
+
+    @Override
+    public CompletableFuture<AnalysisReport> submit(ModifiedFile file, StageResults inputs) {
+        String content = inputs.get(BlobContentStage.NAME, String.class);
+        ParsedSource parsedSource = content != null ? inputs.get(ParseStage.NAME, ParsedSource.class) : null;
+        return staticAnalysisService.submit(inputs.getPullRequest(), file,
+                content != null ? content : file.getDiffContent(), parsedSource)
+                .thenApply(report -> {
+                    restrictToDiff(report, file.getDiffContent(), content != null);
+                    return report;
+                });
+    }
+
+    /**
+     * Keep only the issues on lines the patch adds, and place each of them on its post-change line
+     * and diff position. Lines of the full content are post-change lines already; lines of the
+     * patch itself are one below their position, since position 1 is the line after the first
+     * hunk header. Issues about the whole file, without a line, are kept as they are.
+     */
+    private static void restrictToDiff(AnalysisReport report, String patch, boolean fullContent) {
+        DiffLineIndex index = DiffLineIndex.parse(patch);
+        List<AnalysisIssue> kept = new ArrayList<>();
+        for (AnalysisIssue issue : report.getIssues()) {
+            if (issue.getLineNumber() <= 0) {
+                kept.add(issue);
+                continue;
+            }
+            Integer line;
+            Integer position;
+            if (fullContent) {
+                line = issue.getLineNumber();
+                position = index.positionOf(line);
+            } else {
+                position = issue.getLineNumber() - 1;
+                line = index.lineAt(position);
+            }
+            if (line != null && position != null) {
+                issue.setLineNumber(line);
+                issue.setDiffPosition(position);
+                kept.add(issue);
+            }
+        }
+        report.setIssues(kept);
+    }
+}
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -25,6 +26,11 @@ public class AIReviewService {
 
     private static final Logger logger = LoggerFactory.getLogger(AIReviewService.class);
     
+    /**
+     * Context data of a review that failed and should not be reused
+     */
+    public static final String FAILED_REVIEW_CONTEXT = "Failed review";
+    
     private final OpenAIClient openAIClient;
     private final String deploymentId;
     
@@ -43,6 +49,15 @@ public class AIReviewService {
      * Generate an AI review for a modified file
      */
     public AIReview generateReview(ModifiedFile file) {
+        return generateReview(file, List.of());
+    }
+    
+    /**
+     * Generate an AI review for a modified file, telling the model which declarations the change touches
+     *
+     * @param changedDeclarations declarations of the file containing added lines, outermost first
+     */
+    public AIReview generateReview(ModifiedFile file, List<ParsedSource.Declaration> changedDeclarations) {
         logger.info("Generating AI review for file: {}", file.getFileName());
         logger.info("Using Azure AI Foundry deployment ID: {}", deploymentId);
         
@@ -75,7 +90,9 @@ public class AIReviewService {
             
             String userPrompt = "Here is the Java code to review:\n\n```java\n" + 
                                 file.getDiffContent() + 
-                                "\n```\n\nPlease analyze for:\n" +
+                                "\n```\n\n" +
+                                describeDeclarations(changedDeclarations) +
+                                "Please analyze for:\n" +
                                 "1. Code quality and maintainability\n" +
                                 "2. Potential bugs or edge cases\n" +
                                 "3. Performance issues\n" +
@@ -109,8 +126,25 @@ public class AIReviewService {
             
         } catch (Exception e) {
             logger.error("Error generating AI review: {}", e.getMessage(), e);
-            return createEmptyReview("Error generating review: " + e.getMessage());
+            AIReview review = createEmptyReview("Error generating review: " + e.getMessage());
+            review.setContextData(FAILED_REVIEW_CONTEXT);
+            return review;
+        }
+    }
+    
+    /**
+     * List the changed declarations for the prompt, or nothing if there are none
+     */
+    private String describeDeclarations(List<ParsedSource.Declaration> declarations) {
+        if (declarations.isEmpty()) {
+            return "";
+        }
+        StringBuilder description = new StringBuilder("The change touches these declarations:\n");
+        for (ParsedSource.Declaration declaration : declarations) {
+            description.append(String.format("- %s %s (lines %d-%d)\n", declaration.kind().name().toLowerCase(),
+                    declaration.name(), declaration.beginLine(), declaration.endLine()));
         }
+        return description.append("\n").toString();
     }
     
     /**
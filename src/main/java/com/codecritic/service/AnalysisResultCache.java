@@ -0,0 +1,255 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Cache of static analysis results, keyed by the analyzed content.
+ * <p>
+ * A result is stored under a SHA-256 of the source, the file name and a fingerprint of the active
+ * PMD rule sets and Checkstyle configuration, so content seen again in a rebased, reopened or
+ * forked pull request is not analyzed twice, and changing the rules makes old entries unreachable
+ * until they are evicted. The last {@code static.analysis.cache.memory-entries} results used are
+ * kept in memory. Every result is also written under {@code static.analysis.cache.dir}, bounded to
+ * {@code static.analysis.cache.max-size-mb} by evicting the least recently used ones, and is still
+ * there after a restart.
+ */
+@Component
+public class AnalysisResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    private static final TypeReference<List<CachedIssue>> ISSUES = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int memoryEntries;
+
+    /** Results held in memory, least recently used first */
+    private final LinkedHashMap<String, List<CachedIssue>> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Results on disk, or null if the cache is disabled */
+    private final DiskLruStore store;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter memoryEvictions;
+
+    public AnalysisResultCache(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${static.analysis.cache.enabled:true}") boolean enabled,
+            @Value("${static.analysis.cache.dir:data/analysis-cache}") String directory,
+            @Value("${static.analysis.cache.memory-entries:2000}") int memoryEntries,
+            @Value("${static.analysis.cache.max-size-mb:128}") long maxSizeMb) throws IOException {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.memoryEntries = memoryEntries;
+
+        this.memoryHits = requests(meterRegistry, "memory-hit");
+        this.diskHits = requests(meterRegistry, "disk-hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.memoryEvictions = evictions(meterRegistry, "memory");
+
+        if (enabled) {
+            this.store = new DiskLruStore(Path.of(directory), maxSizeMb * 1024 * 1024, "analysis result",
+                    evictions(meterRegistry, "disk"));
+        } else {
+            this.store = null;
+            logger.info("Static analysis result cache is disabled");
+        }
+        Gauge.builder("codecritic.analysis.cache.entries", this, AnalysisResultCache::getMemoryEntries)
+                .description("Static analysis results cached")
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.analysis.cache.entries", this, AnalysisResultCache::getDiskEntries)
+                .description("Static analysis results cached")
+                .tag("tier", "disk")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.analysis.cache.stored.bytes", this, AnalysisResultCache::getStoredBytes)
+                .description("Bytes of cached static analysis results on disk")
+                .register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("codecritic.analysis.cache.requests")
+                .description("Static analysis result lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictions(MeterRegistry meterRegistry, String tier) {
+        return Counter.builder("codecritic.analysis.cache.evictions")
+                .description("Static analysis results evicted from the cache")
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cache key of a file's source analyzed with the rules identified by {@code fingerprint}
+     */
+    public static String key(String fingerprint, String fileName, String source) {
+        MessageDigest digest = sha256();
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hex SHA-256 of the given parts, for building rule fingerprints
+     */
+    public static String fingerprint(List<byte[]> parts) {
+        MessageDigest digest = sha256();
+        for (byte[] part : parts) {
+            digest.update(part);
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Cached issues for a key, as new issues the caller may modify
+     *
+     * @return the issues, or null if the key is not cached
+     */
+    public List<AnalysisIssue> get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        List<CachedIssue> cached;
+        synchronized (this) {
+            cached = memory.get(key);
+        }
+        if (cached != null) {
+            memoryHits.increment();
+            return toIssues(cached);
+        }
+
+        cached = read(key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        remember(key, cached);
+        return toIssues(cached);
+    }
+
+    /**
+     * Cache the issues found in a complete analysis
+     */
+    public void put(String key, List<AnalysisIssue> issues) {
+        if (!enabled) {
+            return;
+        }
+        List<CachedIssue> cached = issues.stream()
+                .map(issue -> new CachedIssue(issue.getDescription(), issue.getSeverity(),
+                        issue.getLineNumber(), issue.getColumnNumber()))
+                .toList();
+        remember(key, cached);
+        write(key, cached);
+    }
+
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    public int getDiskEntries() {
+        return store != null ? store.size() : 0;
+    }
+
+    public long getStoredBytes() {
+        return store != null ? store.getStoredBytes() : 0;
+    }
+
+    private void remember(String key, List<CachedIssue> cached) {
+        synchronized (this) {
+            memory.put(key, cached);
+            Iterator<String> eldest = memory.keySet().iterator();
+            while (memory.size() > memoryEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                memoryEvictions.increment();
+            }
+        }
+    }
+
+    private static List<AnalysisIssue> toIssues(List<CachedIssue> cached) {
+        List<AnalysisIssue> issues = new ArrayList<>(cached.size());
+        for (CachedIssue issue : cached) {
+            issues.add(AnalysisIssue.builder()
+                    .issueId(UUID.randomUUID().toString())
+                    .description(issue.description())
+                    .severity(issue.severity())
+                    .lineNumber(issue.lineNumber())
+                    .columnNumber(issue.columnNumber())
+                    .build());
+        }
+        return issues;
+    }
+
+    private List<CachedIssue> read(String key) {
+        byte[] content = store.read(key);
+        if (content == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(content, ISSUES);
+        } catch (IOException e) {
+            logger.warn("Failed to read cached analysis result {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(String key, List<CachedIssue> cached) {
+        try {
+            store.write(key, objectMapper.writeValueAsBytes(cached));
+        } catch (IOException e) {
+            logger.warn("Failed to store analysis result {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The parts of an issue that depend only on the analyzed content
+     */
+    private record CachedIssue(String description, AnalysisIssue.Severity severity, int lineNumber,
+                               Integer columnNumber) {
+    }
+}
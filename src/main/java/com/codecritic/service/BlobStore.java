@@ -0,0 +1,286 @@
+package com.codecritic.service;
+
+import com.codecritic.model.PullRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressable store of file contents, keyed by git blob SHA.
+ * <p>
+ * Blobs are kept on disk under {@code blob-store.dir}, bounded to {@code blob-store.max-size-mb}
+ * by evicting the least recently used ones. Since a blob SHA identifies its content, a blob is
+ * shared by every pull request, fork and push that references it and is downloaded at most once
+ * while it stays in the store; concurrent requests for a blob that is being downloaded wait for
+ * the same download. Missing blobs are collected for {@code blob-store.batch-window-ms} and
+ * fetched per repository with one GraphQL query of up to {@code blob-store.max-batch-size}
+ * blobs. Blobs GraphQL returns truncated are fetched one by one through REST. A binary blob has
+ * no text to keep, so an empty marker entry records that it is binary instead.
+ */
+@Component
+public class BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final Pattern BLOB_SHA = Pattern.compile("[0-9a-f]{40}|[0-9a-f]{64}");
+    private static final String BINARY_MARKER = ".binary";
+
+    private final GitHubClientProvider clientProvider;
+    private final GitHubGraphQLClient graphQLClient;
+    private final DiskLruStore store;
+    private final long batchWindowMs;
+    private final int maxBatchSize;
+
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final ScheduledExecutorService fetcher;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter joined;
+    private final Counter batchesFetched;
+
+    public BlobStore(
+            GitHubClientProvider clientProvider,
+            GitHubGraphQLClient graphQLClient,
+            MeterRegistry meterRegistry,
+            @Value("${blob-store.dir:data/blobs}") String directory,
+            @Value("${blob-store.max-size-mb:512}") long maxSizeMb,
+            @Value("${blob-store.batch-window-ms:20}") long batchWindowMs,
+            @Value("${blob-store.max-batch-size:50}") int maxBatchSize,
+            @Value("${blob-store.fetch-threads:2}") int fetchThreads) throws IOException {
+        this.clientProvider = clientProvider;
+        this.graphQLClient = graphQLClient;
+        this.batchWindowMs = batchWindowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.fetcher = Executors.newScheduledThreadPool(fetchThreads, r -> {
+            Thread thread = new Thread(r, "blob-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.joined = requests(meterRegistry, "joined");
+        Counter evictions = Counter.builder("codecritic.blobs.evictions")
+                .description("Blobs evicted from the blob store")
+                .register(meterRegistry);
+        this.store = new DiskLruStore(Path.of(directory), maxSizeMb * 1024 * 1024, "blob", evictions);
+        this.batchesFetched = Counter.builder("codecritic.blobs.batches")
+                .description("Batched blob fetches sent to GitHub")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.blobs.stored.bytes", this, BlobStore::getStoredBytes)
+                .description("Bytes of blob content on disk")
+                .register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("codecritic.blobs.requests")
+                .description("Blob lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the ID is a full SHA-1 or SHA-256 blob ID that can be looked up
+     */
+    public static boolean isBlobSha(String id) {
+        return id != null && BLOB_SHA.matcher(id).matches();
+    }
+
+    /**
+     * Content of a blob of the pull request's repository, fetched if it is not stored yet
+     *
+     * @return a future with the blob as UTF-8 text, or null if the blob is binary
+     */
+    public CompletableFuture<String> get(PullRequest pullRequest, String blobSha) {
+        if (!isBlobSha(blobSha)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Not a blob SHA: " + blobSha));
+        }
+        String stored = read(blobSha);
+        if (stored != null || isBinary(blobSha)) {
+            hits.increment();
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflight.putIfAbsent(blobSha, created);
+        if (existing != null) {
+            joined.increment();
+            return existing;
+        }
+        created.whenComplete((content, ex) -> inflight.remove(blobSha, created));
+
+        // A download may have finished between the lookup and claiming the blob
+        stored = read(blobSha);
+        if (stored != null || isBinary(blobSha)) {
+            hits.increment();
+            created.complete(stored);
+            return created;
+        }
+        misses.increment();
+        enqueue(pullRequest, blobSha, created);
+        return created;
+    }
+
+    /**
+     * Store content that was obtained elsewhere, such as from a local clone
+     */
+    public void put(String blobSha, String content) {
+        if (isBlobSha(blobSha) && !contains(blobSha)) {
+            write(blobSha, content);
+        }
+    }
+
+    public boolean contains(String blobSha) {
+        return store.contains(blobSha) || store.contains(blobSha + BINARY_MARKER);
+    }
+
+    public long getStoredBytes() {
+        return store.getStoredBytes();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetcher.shutdownNow();
+    }
+
+    /**
+     * Missing blobs of one repository waiting to be fetched together
+     */
+    private static final class Batch {
+        private final PullRequest pullRequest;
+        private final Map<String, CompletableFuture<String>> blobs = new LinkedHashMap<>();
+
+        private Batch(PullRequest pullRequest) {
+            this.pullRequest = pullRequest;
+        }
+    }
+
+    private void enqueue(PullRequest pullRequest, String blobSha, CompletableFuture<String> future) {
+        String key = pullRequest.getRepository() + "#" + pullRequest.getInstallationId();
+        Batch full = null;
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(pullRequest);
+                batches.put(key, batch);
+                Batch scheduled = batch;
+                fetcher.schedule(() -> flush(key, scheduled), batchWindowMs, TimeUnit.MILLISECONDS);
+            }
+            batch.blobs.put(blobSha, future);
+            if (batch.blobs.size() >= maxBatchSize) {
+                batches.remove(key);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            Batch toFetch = full;
+            fetcher.execute(() -> fetch(toFetch));
+        }
+    }
+
+    private void flush(String key, Batch batch) {
+        synchronized (batches) {
+            if (!batches.remove(key, batch)) {
+                // Already sent because it filled up
+                return;
+            }
+        }
+        fetch(batch);
+    }
+
+    /**
+     * Fetch the blobs of a batch with one GraphQL query, falling back to REST for blobs the query
+     * could not return in full
+     */
+    private void fetch(Batch batch) {
+        String repoName = batch.pullRequest.getRepository();
+        List<String> shas = new ArrayList<>(batch.blobs.keySet());
+        try {
+            GitHubClientProvider.Client client = clientProvider.forRepository(repoName,
+                    batch.pullRequest.getInstallationId());
+
+            ObjectNode variables = graphQLClient.repositoryVariables(repoName);
+            StringBuilder declarations = new StringBuilder("$owner: String!, $name: String!");
+            StringBuilder selection = new StringBuilder();
+            for (int i = 0; i < shas.size(); i++) {
+                declarations.append(", $o").append(i).append(": GitObjectID!");
+                variables.put("o" + i, shas.get(i));
+                selection.append('b').append(i).append(": object(oid: $o").append(i)
+                        .append(") { ... on Blob { text isBinary isTruncated } } ");
+            }
+            batchesFetched.increment();
+            JsonNode repository = graphQLClient.query(client, GitHubRequestScheduler.Priority.FETCH,
+                    "query(" + declarations + ") { repository(owner: $owner, name: $name) { " + selection + "} }",
+                    variables).path("repository");
+            logger.debug("Fetched {} blob(s) of {} in one query", shas.size(), repoName);
+
+            for (int i = 0; i < shas.size(); i++) {
+                String sha = shas.get(i);
+                CompletableFuture<String> future = batch.blobs.get(sha);
+                try {
+                    JsonNode blob = repository.path("b" + i);
+                    String content;
+                    if (blob.path("isBinary").asBoolean(false)) {
+                        content = null;
+                    } else if (blob.isObject() && !blob.path("isTruncated").asBoolean(false)) {
+                        content = blob.path("text").asText();
+                    } else {
+                        content = graphQLClient.get(client, GitHubRequestScheduler.Priority.FETCH,
+                                "/repos/" + repoName + "/git/blobs/" + sha, "application/vnd.github.raw");
+                    }
+                    if (content != null) {
+                        write(sha, content);
+                    } else {
+                        store.write(sha + BINARY_MARKER, new byte[0]);
+                    }
+                    future.complete(content);
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to fetch {} blob(s) of {}: {}", shas.size(), repoName, e.getMessage());
+            batch.blobs.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private String read(String blobSha) {
+        byte[] content = store.read(blobSha);
+        return content != null ? new String(content, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Whether the blob is stored as binary, marking it as the most recently used
+     */
+    private boolean isBinary(String blobSha) {
+        return store.read(blobSha + BINARY_MARKER) != null;
+    }
+
+    private void write(String blobSha, String content) {
+        store.write(blobSha, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package com.codecritic.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for running work whose {@link CompletableFuture} can actually stop it.
+ * <p>
+ * {@link CompletableFuture#cancel(boolean)} normally only completes the future; the task keeps
+ * running. Futures created here skip the task if it has not started yet and interrupt the
+ * worker thread if it is running, so blocking HTTP calls to GitHub or Azure are aborted.
+ */
+public final class CancellableTasks {
+
+    private CancellableTasks() {
+    }
+
+    /**
+     * Run the supplier on the executor and return a future whose cancellation interrupts it
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> supplier, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runner runner = new Runner();
+
+        executor.execute(() -> {
+            if (!runner.start()) {
+                return;
+            }
+            try {
+                if (!future.isDone()) {
+                    future.complete(supplier.get());
+                }
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                runner.finish();
+            }
+        });
+
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                runner.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Tracks the thread running a task so that it can be interrupted exactly while it runs.
+     * <p>
+     * The thread may be the submitter's own, with a caller-runs executor, so only an interrupt
+     * delivered by {@link #cancel()} is cleared afterwards, and one the thread had before the task
+     * started is kept.
+     */
+    private static final class Runner {
+        private Thread thread;
+        private boolean cancelled;
+        private boolean interruptedBefore;
+        private boolean interruptedByCancel;
+
+        synchronized boolean start() {
+            if (cancelled) {
+                return false;
+            }
+            thread = Thread.currentThread();
+            interruptedBefore = thread.isInterrupted();
+            return true;
+        }
+
+        synchronized void finish() {
+            thread = null;
+            // Never leak an interrupt aimed at this task into the next task on a pooled thread
+            if (interruptedByCancel) {
+                Thread.interrupted();
+            }
+            if (interruptedBefore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) {
+                interruptedByCancel = true;
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.TreeWalker;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.BeforeExecutionFileFilter;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import com.puppycrawl.tools.checkstyle.api.FileSetCheck;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Runs Checkstyle with a configuration that is parsed once and reused.
+ * <p>
+ * The configuration is read from {@code static.analysis.checkstyle.config}, or from the bundled
+ * {@code checkstyle.xml} when that is empty, and is parsed again only when the file changes. Each
+ * thread keeps its own configured {@link Checker}, since checkers are not thread-safe, and rebuilds
+ * it only after the configuration was reloaded. Sources are checked in memory, and the checks below
+ * {@code TreeWalker} walk the tree of a {@link ParsedSource} through {@link SharedAstTreeWalker}.
+ */
+@Component
+public class CheckstyleAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckstyleAnalyzer.class);
+
+    /**
+     * Minimum time between checks of whether the configuration file changed
+     */
+    private static final long RELOAD_CHECK_INTERVAL_MS = 2000;
+
+    private final String location;
+    private final Path configFile;
+    private volatile LoadedConfiguration loaded;
+    private volatile long lastReloadCheck;
+
+    private final ThreadLocal<PooledChecker> checkers = new ThreadLocal<>();
+
+    public CheckstyleAnalyzer(@Value("${static.analysis.checkstyle.config:}") String configPath) {
+        if (configPath.isBlank()) {
+            URL resource = getClass().getClassLoader().getResource("checkstyle.xml");
+            if (resource == null) {
+                throw new IllegalStateException("checkstyle.xml is missing from the classpath");
+            }
+            this.location = resource.toExternalForm();
+            this.configFile = toFile(resource);
+        } else {
+            this.configFile = Path.of(configPath).toAbsolutePath();
+            this.location = configFile.toString();
+        }
+    }
+
+    /**
+     * Check a batch of parsed sources with one run of this thread's checker. The checks walk the
+     * syntax tree of each source instead of parsing it again, and nothing is read from disk, so
+     * checks that open the file themselves, such as NewlineAtEndOfFile, cannot be used.
+     *
+     * @return the issues of each file, in the order of {@code sources}, or null for a file that a
+     *         check failed on, whose issues are unknown
+     */
+    public List<List<AnalysisIssue>> check(List<ParsedSource> sources) throws CheckstyleException {
+        PooledChecker pooled = acquire();
+        pooled.listener.reset();
+        pooled.checker.checkAll(sources);
+
+        List<List<AnalysisIssue>> issues = new ArrayList<>(sources.size());
+        for (ParsedSource source : sources) {
+            issues.add(pooled.checker.failed.contains(source.getPath())
+                    ? null
+                    : toIssues(pooled.listener.events(source.getPath())));
+        }
+        return issues;
+    }
+
+    /**
+     * Fingerprint of the current configuration and the Checkstyle version, which changes whenever
+     * the checks could report different issues
+     */
+    public String fingerprint() throws CheckstyleException {
+        return currentConfiguration().fingerprint;
+    }
+
+    /**
+     * This thread's checker, rebuilt if the configuration changed since it was configured
+     */
+    private PooledChecker acquire() throws CheckstyleException {
+        LoadedConfiguration current = currentConfiguration();
+        PooledChecker pooled = checkers.get();
+        if (pooled != null && pooled.configuration == current) {
+            return pooled;
+        }
+        if (pooled != null) {
+            pooled.checker.destroy();
+        }
+
+        InMemoryChecker checker = new InMemoryChecker();
+        checker.setModuleClassLoader(getClass().getClassLoader());
+        checker.configure(current.configuration);
+        CollectingListener listener = new CollectingListener();
+        checker.addListener(listener);
+
+        pooled = new PooledChecker(checker, listener, current);
+        checkers.set(pooled);
+        return pooled;
+    }
+
+    private LoadedConfiguration currentConfiguration() throws CheckstyleException {
+        LoadedConfiguration current = loaded;
+        long now = System.currentTimeMillis();
+        if (current != null && (configFile == null || now - lastReloadCheck < RELOAD_CHECK_INTERVAL_MS)) {
+            return current;
+        }
+
+        synchronized (this) {
+            lastReloadCheck = now;
+            long modified = lastModified();
+            if (loaded == null || loaded.modified != modified) {
+                if (loaded != null) {
+                    logger.info("Checkstyle configuration {} changed, reloading it", location);
+                }
+                Configuration configuration = withSharedAstWalker(ConfigurationLoader.loadConfiguration(
+                        location, new PropertiesExpander(new Properties())));
+                String fingerprint = AnalysisResultCache.fingerprint(List.of(
+                        String.valueOf(Checker.class.getPackage().getImplementationVersion())
+                                .getBytes(StandardCharsets.UTF_8),
+                        readConfiguration()));
+                loaded = new LoadedConfiguration(configuration, modified, fingerprint);
+            }
+            return loaded;
+        }
+    }
+
+    private long lastModified() {
+        try {
+            return configFile != null ? Files.getLastModifiedTime(configFile).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A copy of the configuration with {@link SharedAstTreeWalker} in place of {@code TreeWalker}
+     */
+    private static Configuration withSharedAstWalker(Configuration configuration) throws CheckstyleException {
+        String name = configuration.getName();
+        if ("TreeWalker".equals(name) || TreeWalker.class.getName().equals(name)) {
+            name = SharedAstTreeWalker.class.getName();
+        }
+        DefaultConfiguration copy = new DefaultConfiguration(name);
+        for (String property : configuration.getPropertyNames()) {
+            copy.addProperty(property, configuration.getProperty(property));
+        }
+        configuration.getMessages().forEach(copy::addMessage);
+        for (Configuration child : configuration.getChildren()) {
+            copy.addChild(withSharedAstWalker(child));
+        }
+        return copy;
+    }
+
+    private byte[] readConfiguration() throws CheckstyleException {
+        try {
+            if (configFile != null) {
+                return Files.readAllBytes(configFile);
+            }
+            try (InputStream in = new URL(location).openStream()) {
+                return in.readAllBytes();
+            }
+        } catch (IOException e) {
+            throw new CheckstyleException("Unable to read " + location, e);
+        }
+    }
+
+    private List<AnalysisIssue> toIssues(List<AuditEvent> events) {
+        List<AnalysisIssue> issues = new ArrayList<>();
+        for (AuditEvent event : events) {
+            AnalysisIssue.Severity severity = event.getSeverityLevel() == SeverityLevel.ERROR
+                    ? AnalysisIssue.Severity.MEDIUM
+                    : AnalysisIssue.Severity.LOW;
+
+            issues.add(AnalysisIssue.builder()
+                    .issueId(UUID.randomUUID().toString())
+                    .description(event.getMessage())
+                    .severity(severity)
+                    .lineNumber(event.getLine())
+                    .columnNumber(event.getColumn())
+                    .build());
+        }
+        return issues;
+    }
+
+    /**
+     * The configuration file behind a classpath resource, if it is a plain file that can change
+     */
+    private static Path toFile(URL resource) {
+        try {
+            return "file".equals(resource.getProtocol()) ? Path.of(resource.toURI()) : null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private record LoadedConfiguration(Configuration configuration, long modified, String fingerprint) {
+    }
+
+    private record PooledChecker(InMemoryChecker checker, CollectingListener listener,
+                                 LoadedConfiguration configuration) {
+    }
+
+    /**
+     * A checker fed with sources from memory. {@link Checker} only runs its file set checks and file
+     * filters on files it reads from disk, so the checker keeps them as it is configured and runs
+     * them itself.
+     */
+    private static final class InMemoryChecker extends Checker {
+        private final List<FileSetCheck> fileSetChecks = new ArrayList<>();
+        private final List<BeforeExecutionFileFilter> fileFilters = new ArrayList<>();
+        /** Paths of the files of the last run that a check failed on */
+        private final Set<String> failed = new HashSet<>();
+
+        @Override
+        public void addFileSetCheck(FileSetCheck fileSetCheck) {
+            super.addFileSetCheck(fileSetCheck);
+            fileSetChecks.add(fileSetCheck);
+        }
+
+        @Override
+        public void addBeforeExecutionFileFilter(BeforeExecutionFileFilter filter) {
+            super.addBeforeExecutionFileFilter(filter);
+            fileFilters.add(filter);
+        }
+
+        private void checkAll(List<ParsedSource> sources) {
+            failed.clear();
+            for (FileSetCheck fileSetCheck : fileSetChecks) {
+                fileSetCheck.beginProcessing(StandardCharsets.UTF_8.name());
+            }
+            for (ParsedSource source : sources) {
+                if (fileFilters.stream().allMatch(filter -> filter.accept(source.getPath()))) {
+                    check(source);
+                }
+            }
+            for (FileSetCheck fileSetCheck : fileSetChecks) {
+                fileSetCheck.finishProcessing();
+            }
+        }
+
+        private void check(ParsedSource source) {
+            String path = source.getPath();
+            FileText text = source.getFileContents().getText();
+            SortedSet<Violation> violations = new TreeSet<>();
+            try {
+                for (FileSetCheck fileSetCheck : fileSetChecks) {
+                    if (fileSetCheck instanceof SharedAstTreeWalker walker) {
+                        walker.setParsedSource(source);
+                    }
+                    violations.addAll(fileSetCheck.process(text.getFile(), text));
+                }
+            } catch (CheckstyleException | RuntimeException e) {
+                logger.warn("Checkstyle could not check {}: {}", path, e.getMessage(), e);
+                failed.add(path);
+                return;
+            } finally {
+                fileSetChecks.stream()
+                        .filter(SharedAstTreeWalker.class::isInstance)
+                        .forEach(walker -> ((SharedAstTreeWalker) walker).setParsedSource(null));
+            }
+            fireFileStarted(path);
+            fireErrors(path, violations);
+            fireFileFinished(path);
+        }
+    }
+
+    /**
+     * Collects the violations of each file of a run; cleared before every run
+     */
+    private static final class CollectingListener implements AuditListener {
+        private final Map<String, List<AuditEvent>> eventsByFile = new HashMap<>();
+
+        private void reset() {
+            eventsByFile.clear();
+        }
+
+        private List<AuditEvent> events(String fileName) {
+            return eventsByFile.getOrDefault(fileName, List.of());
+        }
+
+        @Override
+        public void auditStarted(AuditEvent event) {
+        }
+
+        @Override
+        public void auditFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void fileStarted(AuditEvent event) {
+            eventsByFile.put(event.getFileName(), new ArrayList<>());
+        }
+
+        @Override
+        public void fileFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void addError(AuditEvent event) {
+            eventsByFile.computeIfAbsent(event.getFileName(), name -> new ArrayList<>()).add(event);
+        }
+
+        @Override
+        public void addException(AuditEvent event, Throwable throwable) {
+            logger.error("Checkstyle exception in {}: {}", event.getFileName(), throwable.getMessage());
+        }
+    }
+}
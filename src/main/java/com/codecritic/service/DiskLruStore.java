@@ -0,0 +1,198 @@
+package com.codecritic.service;
+
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed files on disk, bounded in total size by evicting the least recently used.
+ * <p>
+ * Each entry is a file named after its key, in a subdirectory named after the key's first two
+ * characters, so keys must be hex digests or similar. Writes go to a temporary file that is then
+ * moved into place, so a reader never sees a partial entry. The time of the last access is kept as
+ * the file's modification time, so the eviction order survives restarts; on startup the index is
+ * rebuilt from the files and trimmed to the size bound.
+ */
+final class DiskLruStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskLruStore.class);
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String entryName;
+    private final Counter evictions;
+
+    /** Stored entries and their sizes, least recently used first */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long storedBytes;
+
+    /**
+     * @param entryName what an entry is, for log messages
+     * @param evictions counter of entries evicted to stay within {@code maxBytes}
+     */
+    DiskLruStore(Path directory, long maxBytes, String entryName, Counter evictions) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entryName = entryName;
+        this.evictions = evictions;
+
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Content of an entry, marking it as the most recently used
+     *
+     * @return the content, or null if there is no such entry or it cannot be read
+     */
+    byte[] read(String key) {
+        synchronized (this) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        Path path = pathOf(key);
+        try {
+            byte[] content = Files.readAllBytes(path);
+            // Persist the access order so that it survives restarts
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return content;
+        } catch (NoSuchFileException e) {
+            // Evicted between the lookup and the read
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read {} {}: {}", entryName, key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store an entry, replacing any with the same key, and evict the least recently used ones
+     * while the store is over its size bound
+     */
+    void write(String key, byte[] content) {
+        Path path = pathOf(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), key, ".tmp");
+            Files.write(temp, content);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to store {} {}: {}", entryName, key, e.getMessage());
+            return;
+        }
+
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = index.put(key, (long) content.length);
+            storedBytes += content.length - (previous != null ? previous : 0);
+            evicted = trim(key);
+        }
+        delete(evicted);
+    }
+
+    synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Remove the least recently used entries from the index until the store fits its bound
+     *
+     * @param keep key never to evict, or null
+     * @return the keys removed, whose files are still to be deleted
+     */
+    private List<String> trim(String keep) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (storedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            storedBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    private void delete(List<String> evicted) {
+        for (String key : evicted) {
+            try {
+                Files.deleteIfExists(pathOf(key));
+                evictions.increment();
+            } catch (IOException e) {
+                logger.warn("Failed to evict {} {}: {}", entryName, key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from the entries on disk, oldest access first, and evict the oldest ones
+     * if they exceed the size bound, which may have been lowered since they were written
+     */
+    private void loadIndex() throws IOException {
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            files.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(path -> {
+                        try {
+                            return Files.getLastModifiedTime(path);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }))
+                    .forEach(path -> {
+                        try {
+                            long size = Files.size(path);
+                            index.put(path.getFileName().toString(), size);
+                            storedBytes += size;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<String> evicted = trim(null);
+        delete(evicted);
+        if (!evicted.isEmpty()) {
+            logger.info("Evicted {} {}(s) from {} to fit {} MB", evicted.size(), entryName, directory,
+                    maxBytes / (1024 * 1024));
+        }
+        logger.info("Store at {} holds {} {}(s), {} KB", directory, index.size(), entryName, storedBytes / 1024);
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
@@ -0,0 +1,186 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Streams the files of a pull request to one subscriber, fetching the next page of files only
+ * once the subscriber has requested more files than are buffered.
+ * <p>
+ * Pages are fetched one at a time on the given executor, and no thread waits for demand between
+ * pages, so a slow subscriber holds buffered files but never a thread of the executor. Files are
+ * delivered on the thread that fetched their page or that requested them; the subscriber must not
+ * block in {@code onNext}.
+ */
+final class FileStream implements Flow.Subscription {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileStream.class);
+
+    /**
+     * Source of the pages of files, asked for one page at a time
+     */
+    @FunctionalInterface
+    interface Pages {
+
+        /**
+         * Fetch the next page
+         *
+         * @return the files of the page, possibly none, or null after the last page
+         */
+        List<ModifiedFile> next() throws Exception;
+    }
+
+    private final PullRequest pullRequest;
+    private final Pages pages;
+    private final Executor executor;
+    private final Flow.Subscriber<? super ModifiedFile> subscriber;
+    private final Deque<ModifiedFile> buffer = new ArrayDeque<>();
+    private long demand;
+    private boolean fetching;
+    private boolean exhausted;
+    private Throwable failure;
+    /** Set once the stream has completed, failed or been cancelled */
+    private boolean done;
+    /** Set while a thread is delivering files, so that files are delivered one at a time */
+    private boolean draining;
+    private int pageCount;
+    private int fileCount;
+
+    private FileStream(PullRequest pullRequest, Pages pages, Executor executor,
+                       Flow.Subscriber<? super ModifiedFile> subscriber) {
+        this.pullRequest = pullRequest;
+        this.pages = pages;
+        this.executor = executor;
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * Subscribe the subscriber to the pages; nothing is fetched before it requests files
+     */
+    static void start(PullRequest pullRequest, Pages pages, Executor executor,
+                      Flow.Subscriber<? super ModifiedFile> subscriber) {
+        subscriber.onSubscribe(new FileStream(pullRequest, pages, executor, subscriber));
+    }
+
+    @Override
+    public void request(long n) {
+        synchronized (this) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " files");
+                buffer.clear();
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public synchronized void cancel() {
+        done = true;
+        buffer.clear();
+    }
+
+    /**
+     * Deliver buffered files while there is demand, start fetching the next page when the
+     * buffer runs dry, and signal the end of the stream once the last page has been delivered
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                // The thread delivering files sees the change on its next round
+                return;
+            }
+            draining = true;
+        }
+
+        while (true) {
+            ModifiedFile next = null;
+            Throwable error = null;
+            boolean complete = false;
+            boolean fetch = false;
+
+            synchronized (this) {
+                if (done) {
+                    draining = false;
+                    return;
+                }
+                if (demand > 0 && !buffer.isEmpty()) {
+                    next = buffer.poll();
+                    demand--;
+                } else if (buffer.isEmpty() && (failure != null || exhausted)) {
+                    done = true;
+                    error = failure;
+                    complete = failure == null;
+                } else if (demand > 0 && !fetching) {
+                    fetching = true;
+                    fetch = true;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (next != null) {
+                subscriber.onNext(next);
+            } else if (error != null) {
+                logger.error("Error streaming files of PR #{}: {}", pullRequest.getPrId(), error.getMessage(), error);
+                subscriber.onError(error);
+                return;
+            } else if (complete) {
+                logger.info("Streamed {} Java file(s) of PR #{} in {} page(s)",
+                        fileCount, pullRequest.getPrId(), pageCount);
+                subscriber.onComplete();
+                return;
+            } else if (fetch) {
+                try {
+                    executor.execute(this::fetchPage);
+                } catch (RejectedExecutionException e) {
+                    synchronized (this) {
+                        fetching = false;
+                        failure = e;
+                    }
+                }
+            }
+        }
+    }
+
+    private void fetchPage() {
+        List<ModifiedFile> page = null;
+        Throwable error = null;
+        synchronized (this) {
+            if (done) {
+                fetching = false;
+                return;
+            }
+        }
+        try {
+            page = pages.next();
+        } catch (Exception e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            fetching = false;
+            if (error != null) {
+                failure = error;
+            } else if (page == null) {
+                exhausted = true;
+            } else if (!done) {
+                buffer.addAll(page);
+                pageCount++;
+                fileCount += page.size();
+            }
+        }
+        drain();
+    }
+}
@@ -0,0 +1,111 @@
+package com.codecritic.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Signs the short-lived RS256 JWTs that authenticate as a GitHub App.
+ * <p>
+ * GitHub issues App private keys as PKCS#1 PEM ({@code BEGIN RSA PRIVATE KEY}); those are wrapped
+ * into PKCS#8 so that the JDK can load them without extra dependencies. PKCS#8 keys are accepted
+ * as well.
+ */
+public class GitHubAppJwtSigner {
+
+    /**
+     * DER encoding of the rsaEncryption algorithm identifier: SEQUENCE { OID 1.2.840.113549.1.1.1, NULL }
+     */
+    private static final byte[] RSA_ALGORITHM_IDENTIFIER = {
+            0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00
+    };
+
+    private static final long CLOCK_DRIFT_SECONDS = 60;
+    private static final long LIFETIME_SECONDS = 9 * 60;
+
+    /**
+     * Time from signing until a JWT expires
+     */
+    static final Duration LIFETIME = Duration.ofSeconds(LIFETIME_SECONDS);
+
+    private final String appId;
+    private final PrivateKey privateKey;
+
+    public GitHubAppJwtSigner(String appId, String privateKeyPem) throws GeneralSecurityException {
+        this.appId = appId;
+        this.privateKey = parsePrivateKey(privateKeyPem);
+    }
+
+    /**
+     * Create a JWT valid for nine minutes, backdated a minute to allow for clock drift
+     */
+    public String createJwt() throws GeneralSecurityException {
+        long now = Instant.now().getEpochSecond();
+        String header = "{\"alg\":\"RS256\",\"typ\":\"JWT\"}";
+        String payload = "{\"iat\":" + (now - CLOCK_DRIFT_SECONDS)
+                + ",\"exp\":" + (now + LIFETIME_SECONDS)
+                + ",\"iss\":\"" + appId + "\"}";
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String signingInput = encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + encoder.encodeToString(signature.sign());
+    }
+
+    private static PrivateKey parsePrivateKey(String pem) throws GeneralSecurityException {
+        boolean pkcs1 = pem.contains("BEGIN RSA PRIVATE KEY");
+        String base64 = pem.replaceAll("-----(BEGIN|END) [A-Z ]+-----", "").replaceAll("\\s", "");
+        byte[] der = Base64.getDecoder().decode(base64);
+        if (pkcs1) {
+            der = wrapPkcs1(der);
+        }
+        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+    }
+
+    /**
+     * Wrap a PKCS#1 RSAPrivateKey into a PKCS#8 PrivateKeyInfo:
+     * SEQUENCE { INTEGER 0, AlgorithmIdentifier, OCTET STRING { pkcs1 } }
+     */
+    private static byte[] wrapPkcs1(byte[] pkcs1) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0x02);
+        body.write(0x01);
+        body.write(0x00);
+        body.writeBytes(RSA_ALGORITHM_IDENTIFIER);
+        body.write(0x04);
+        writeLength(body, pkcs1.length);
+        body.writeBytes(pkcs1);
+
+        ByteArrayOutputStream info = new ByteArrayOutputStream();
+        info.write(0x30);
+        writeLength(info, body.size());
+        info.writeBytes(body.toByteArray());
+        return info.toByteArray();
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        if (length < 0x80) {
+            out.write(length);
+            return;
+        }
+        int bytes = 0;
+        for (int remaining = length; remaining > 0; remaining >>= 8) {
+            bytes++;
+        }
+        out.write(0x80 | bytes);
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write(length >> (8 * i));
+        }
+    }
+}
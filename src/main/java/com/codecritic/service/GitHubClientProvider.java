@@ -0,0 +1,241 @@
+package com.codecritic.service;
+
+import com.codecritic.config.GitHubClientFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.kohsuke.github.GHAppInstallationToken;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.authorization.AuthorizationProvider;
+import org.kohsuke.github.authorization.ImmutableAuthorizationProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out the GitHub client to use for a repository.
+ * <p>
+ * Without GitHub App settings, every repository uses the client authenticated with
+ * {@code github.api.token}. When {@code github.app.id} and a private key are configured, each
+ * repository is accessed through the App installation that owns it, so every installation has its
+ * own rate limit. The installation comes from the webhook event or is looked up once per
+ * repository owner. Installation tokens are cached and refreshed in the background before they
+ * expire, so requests do not wait for a token to be minted. The App's own client is built once
+ * and signs a new JWT only when the previous one nears expiry.
+ */
+@Component
+public class GitHubClientProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubClientProvider.class);
+
+    /**
+     * Tokens this close to expiry are refreshed inline rather than used
+     */
+    private static final Duration EXPIRY_GUARD = Duration.ofSeconds(30);
+
+    /**
+     * JWTs this close to expiry are signed again rather than reused
+     */
+    private static final Duration JWT_EXPIRY_GUARD = Duration.ofMinutes(1);
+
+    /**
+     * A GitHub client and the name of the credential it uses, for rate-limit accounting
+     */
+    public record Client(String credential, GitHub github, AuthorizationProvider authorization) {
+    }
+
+    private final GitHubClientFactory clientFactory;
+    private final Client defaultClient;
+    private final GitHubAppJwtSigner jwtSigner;
+    /** Client authenticated as the App itself, or null without App settings */
+    private final GitHub appClient;
+    private final Duration refreshMargin;
+    private final Map<String, Long> installationsByOwner = new ConcurrentHashMap<>();
+    private final Map<Long, Installation> installations = new ConcurrentHashMap<>();
+    private final Counter tokensMinted;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "github-token-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public GitHubClientProvider(
+            GitHub gitHub,
+            GitHubClientFactory clientFactory,
+            MeterRegistry meterRegistry,
+            @Value("${github.api.token:}") String githubToken,
+            @Value("${github.app.id:}") String appId,
+            @Value("${github.app.private-key:}") String privateKey,
+            @Value("${github.app.private-key-path:}") String privateKeyPath,
+            @Value("${github.app.token-refresh-margin-seconds:300}") long refreshMarginSeconds)
+            throws IOException, GeneralSecurityException {
+        this.clientFactory = clientFactory;
+        this.defaultClient = new Client(GitHubRequestScheduler.DEFAULT_CREDENTIAL, gitHub, githubToken.isBlank()
+                ? AuthorizationProvider.ANONYMOUS
+                : ImmutableAuthorizationProvider.fromOauthToken(githubToken));
+        this.refreshMargin = Duration.ofSeconds(refreshMarginSeconds);
+
+        if (!appId.isBlank() && !(privateKey.isBlank() && privateKeyPath.isBlank())) {
+            String pem = privateKeyPath.isBlank()
+                    ? privateKey.replace("\\n", "\n")
+                    : Files.readString(Path.of(privateKeyPath));
+            this.jwtSigner = new GitHubAppJwtSigner(appId, pem);
+            this.appClient = clientFactory.create(new AppAuthorization());
+            logger.info("Authenticating to GitHub as App {} with per-installation tokens", appId);
+
+            long period = Math.max(10, refreshMarginSeconds / 5);
+            refresher.scheduleWithFixedDelay(this::refreshExpiringTokens, period, period, TimeUnit.SECONDS);
+        } else {
+            this.jwtSigner = null;
+            this.appClient = null;
+        }
+
+        this.tokensMinted = Counter.builder("codecritic.github.app.tokens.minted")
+                .description("Installation tokens minted for the GitHub App")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.github.app.installations", installations, Map::size)
+                .description("GitHub App installations with a cached client")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether requests are authenticated as GitHub App installations
+     */
+    public boolean isAppAuthentication() {
+        return jwtSigner != null;
+    }
+
+    /**
+     * Client for a repository
+     *
+     * @param repoName       repository in owner/name form
+     * @param installationId App installation from the webhook event, or null to look it up
+     */
+    public Client forRepository(String repoName, Long installationId) throws IOException {
+        if (jwtSigner == null) {
+            return defaultClient;
+        }
+
+        String owner = repoName.substring(0, repoName.indexOf('/'));
+        long id;
+        if (installationId != null) {
+            installationsByOwner.put(owner, installationId);
+            id = installationId;
+        } else {
+            Long known = installationsByOwner.get(owner);
+            id = known != null ? known : lookUpInstallation(owner, repoName);
+        }
+
+        try {
+            return installations.computeIfAbsent(id, Installation::new).client;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long lookUpInstallation(String owner, String repoName) throws IOException {
+        String name = repoName.substring(repoName.indexOf('/') + 1);
+        long id = appClient.getApp().getInstallationByRepository(owner, name).getId();
+        logger.info("Repository owner {} is served by App installation {}", owner, id);
+        installationsByOwner.put(owner, id);
+        return id;
+    }
+
+    private void refreshExpiringTokens() {
+        for (Installation installation : installations.values()) {
+            if (installation.expiresWithin(refreshMargin)) {
+                try {
+                    installation.refresh(refreshMargin);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Failed to refresh token of installation {}: {}", installation.id, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Authenticates as the App with a cached JWT, signing a new one when it nears expiry
+     */
+    private final class AppAuthorization implements AuthorizationProvider {
+        private String jwt;
+        private Instant expiresAt = Instant.EPOCH;
+
+        @Override
+        public synchronized String getEncodedAuthorization() throws IOException {
+            Instant now = Instant.now();
+            if (jwt == null || now.plus(JWT_EXPIRY_GUARD).isAfter(expiresAt)) {
+                try {
+                    jwt = jwtSigner.createJwt();
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to sign GitHub App JWT", e);
+                }
+                // Taken before signing, so no later than the expiry the JWT carries
+                expiresAt = now.plus(GitHubAppJwtSigner.LIFETIME);
+            }
+            return "Bearer " + jwt;
+        }
+    }
+
+    /**
+     * Cached token and client of one App installation. The client asks for the current token on
+     * every request, so it survives token rotation.
+     */
+    private final class Installation implements AuthorizationProvider {
+        private final long id;
+        private final Client client;
+        private volatile String token;
+        private volatile Instant expiresAt = Instant.EPOCH;
+
+        private Installation(long id) {
+            this.id = id;
+            try {
+                this.client = new Client("installation-" + id, clientFactory.create(this), this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String getEncodedAuthorization() throws IOException {
+            if (expiresWithin(EXPIRY_GUARD)) {
+                refresh(EXPIRY_GUARD);
+            }
+            return "token " + token;
+        }
+
+        private boolean expiresWithin(Duration margin) {
+            return token == null || Instant.now().plus(margin).isAfter(expiresAt);
+        }
+
+        private synchronized void refresh(Duration margin) throws IOException {
+            if (!expiresWithin(margin)) {
+                return;
+            }
+            GHAppInstallationToken minted = appClient.getApp().getInstallationById(id).createToken().create();
+            token = minted.getToken();
+            expiresAt = minted.getExpiresAt().toInstant();
+            tokensMinted.increment();
+            logger.info("Minted token for App installation {}, valid until {}", id, expiresAt);
+        }
+    }
+}
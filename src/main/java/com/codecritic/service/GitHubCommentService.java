@@ -2,13 +2,10 @@ package com.codecritic.service;
 
 import com.codecritic.model.PullRequest;
 import com.codecritic.model.ReviewComment;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHIssueComment;
 import org.kohsuke.github.GHRepository;
@@ -20,38 +17,72 @@ public class GitHubCommentService {
 
     private static final Logger logger = LoggerFactory.getLogger(GitHubCommentService.class);
     
-    @Value("${github.api.token}")
-    private String githubToken;
+    private final GitHubClientProvider clientProvider;
+    private final GitHubRequestScheduler requestScheduler;
+    
+    public GitHubCommentService(GitHubClientProvider clientProvider, GitHubRequestScheduler requestScheduler) {
+        this.clientProvider = clientProvider;
+        this.requestScheduler = requestScheduler;
+    }
     
     /**
      * Post a review comment to a GitHub pull request
+     * 
+     * @return the posted comment, or null if posting failed
      */
-    public void postComment(PullRequest pullRequest, ReviewComment comment) {
+    public GHIssueComment postComment(PullRequest pullRequest, ReviewComment comment) {
         logger.info("Posting review comment to PR #{}", pullRequest.getPrId());
         
         try {
-            // Connect to GitHub API
-            GitHub github = new GitHubBuilder().withOAuthToken(githubToken).build();
-            
             // Extract repository name from PR context
             // For a real implementation, you would need to store or extract this information
             String repoName = getRepositoryName(pullRequest);
             
             logger.info("Using repository: {}", repoName);
-            GHRepository repository = github.getRepository(repoName);
+            GitHubClientProvider.Client client = clientProvider.forRepository(repoName, pullRequest.getInstallationId());
+            GHRepository repository = publish(client, gh -> gh.getRepository(repoName));
             
             // Get the PR and post the comment
-            GHPullRequest pr = repository.getPullRequest(pullRequest.getPrId().intValue());
+            GHPullRequest pr = publish(client, gh -> repository.getPullRequest(pullRequest.getPrId().intValue()));
             
-            GHIssueComment postedComment = pr.comment(comment.getContent());
+            GHIssueComment postedComment = publish(client, gh -> pr.comment(comment.getContent()));
             
             logger.info("Successfully posted comment with ID: {}", postedComment.getId());
+            return postedComment;
             
         } catch (IOException e) {
             logger.error("Error posting comment to GitHub: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Replace the body of a previously posted comment
+     */
+    public void updateComment(PullRequest pullRequest, GHIssueComment postedComment, ReviewComment comment) {
+        try {
+            GitHubClientProvider.Client client = clientProvider.forRepository(pullRequest.getRepository(),
+                    pullRequest.getInstallationId());
+            publish(client, gh -> {
+                postedComment.update(comment.getContent());
+                return postedComment;
+            });
+            logger.info("Updated comment with ID: {}", postedComment.getId());
+        } catch (IOException e) {
+            logger.error("Error updating comment {} on GitHub: {}", postedComment.getId(), e.getMessage(), e);
         }
     }
     
+    /**
+     * Make a call through the request scheduler at publishing priority, so results still get out
+     * when the rate-limit budget runs low
+     */
+    private <T> T publish(GitHubClientProvider.Client client, GitHubRequestScheduler.GitHubCall<T> call)
+            throws IOException {
+        return requestScheduler.execute(client.credential(), client.github(),
+                GitHubRequestScheduler.Priority.PUBLISH, call);
+    }
+    
     /**
      * Extract repository name from pull request
      * In a real implementation, this would come from your database or PR context
@@ -0,0 +1,157 @@
+package com.codecritic.service;
+
+import com.codecritic.config.GitHubClientFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.HttpException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Sends GraphQL queries and raw REST requests that the GitHub client library does not cover.
+ * <p>
+ * Requests use the shared pooled HTTP client and the credentials of a
+ * {@link GitHubClientProvider.Client}, and go through the {@link GitHubRequestScheduler}. GraphQL
+ * queries are scheduled under a {@code <credential>/graphql} bucket because GitHub limits them
+ * separately from REST calls.
+ */
+@Component
+public class GitHubGraphQLClient {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final GitHubRequestScheduler requestScheduler;
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String apiUrl;
+    private final String graphqlUrl;
+
+    public GitHubGraphQLClient(
+            GitHubRequestScheduler requestScheduler,
+            OkHttpClient githubHttpClient,
+            GitHubClientFactory clientFactory,
+            ObjectMapper objectMapper) {
+        this.requestScheduler = requestScheduler;
+        this.httpClient = githubHttpClient;
+        this.objectMapper = objectMapper;
+        this.apiUrl = clientFactory.getApiUrl().replaceAll("/+$", "");
+        // GitHub Enterprise serves REST under /api/v3 and GraphQL under /api/graphql
+        this.graphqlUrl = apiUrl.replaceFirst("/v3$", "") + "/graphql";
+    }
+
+    /**
+     * Variables naming a repository as {@code $owner} and {@code $name}
+     *
+     * @param repoName repository in owner/name form
+     */
+    public ObjectNode repositoryVariables(String repoName) {
+        ObjectNode variables = objectMapper.createObjectNode();
+        variables.put("owner", repoName.substring(0, repoName.indexOf('/')));
+        variables.put("name", repoName.substring(repoName.indexOf('/') + 1));
+        return variables;
+    }
+
+    /**
+     * Send a GraphQL query
+     *
+     * @return the {@code data} of the response; nodes that were not found are null
+     */
+    public JsonNode query(GitHubClientProvider.Client client, GitHubRequestScheduler.Priority priority,
+                          String query, ObjectNode variables) throws IOException {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("query", query);
+        payload.set("variables", variables);
+
+        Request request = new Request.Builder()
+                .url(graphqlUrl)
+                .post(RequestBody.create(objectMapper.writeValueAsBytes(payload), JSON))
+                .build();
+        // Errors are read inside the scheduled call, so a RATE_LIMITED error, which GitHub sends
+        // with status 200, pauses the credential and is retried like a rejected REST call
+        return requestScheduler.execute(client.credential() + "/graphql", client.github(), priority,
+                gh -> send(client, request, this::readGraphQLResponse));
+    }
+
+    /**
+     * Send a REST GET request and return the response body as text
+     *
+     * @param path   path below the API URL, starting with a slash
+     * @param accept media type to request, such as {@code application/vnd.github.diff}
+     */
+    public String get(GitHubClientProvider.Client client, GitHubRequestScheduler.Priority priority,
+                      String path, String accept) throws IOException {
+        Request request = new Request.Builder()
+                .url(apiUrl + path)
+                .header("Accept", accept)
+                .build();
+        return requestScheduler.execute(client.credential(), client.github(), priority,
+                gh -> send(client, request, (response, content) -> content));
+    }
+
+    /**
+     * Read the {@code data} of a GraphQL response, throwing on its errors
+     */
+    private JsonNode readGraphQLResponse(Response response, String content) throws IOException {
+        JsonNode body = objectMapper.readTree(content);
+        for (JsonNode error : body.path("errors")) {
+            String type = error.path("type").asText();
+            if ("RATE_LIMITED".equals(type)) {
+                throw GitHubRateLimitException.from(response, false);
+            }
+            // A missing object comes back as a null node with a NOT_FOUND error
+            if (!"NOT_FOUND".equals(type)) {
+                throw new IOException("GraphQL error: " + error.path("message").asText());
+            }
+        }
+        return body.path("data");
+    }
+
+    /**
+     * Send a request with the client's credentials, turning rate-limit and error responses into
+     * the exceptions the request scheduler and callers expect
+     *
+     * @param reader reads the result from a successful response and its body
+     */
+    private <T> T send(GitHubClientProvider.Client client, Request request, ResponseReader<T> reader)
+            throws IOException {
+        Request.Builder authorized = request.newBuilder();
+        String authorization = client.authorization().getEncodedAuthorization();
+        if (authorization != null) {
+            authorized.header("Authorization", authorization);
+        }
+
+        try (Response response = httpClient.newCall(authorized.build()).execute()) {
+            ResponseBody body = response.body();
+            String content = body != null ? body.string() : "";
+            if (response.code() == 403 || response.code() == 429) {
+                if ("0".equals(response.header("X-RateLimit-Remaining"))) {
+                    throw GitHubRateLimitException.from(response, false);
+                }
+                if (response.header("Retry-After") != null || content.contains("secondary rate limit")) {
+                    throw GitHubRateLimitException.from(response, true);
+                }
+            }
+            if (response.code() == 404) {
+                throw new GHFileNotFoundException(request.url() + " " + content);
+            }
+            if (!response.isSuccessful()) {
+                throw new HttpException(content, response.code(), response.message(), request.url().toString());
+            }
+            return reader.read(response, content);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Response response, String content) throws IOException;
+    }
+}
@@ -0,0 +1,376 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * GitHubService backend that fetches pull requests through the GraphQL API.
+ * <p>
+ * The pull request's metadata and its first page of files come back in one query. Each further
+ * query fetches the next page of files, using the cursor of the previous one, together with the
+ * blob SHAs of the page before. GraphQL does not expose patches, so the whole diff of the pull
+ * request is fetched with one REST call, made while the first query runs, and split per file.
+ * Pull requests with more files than a diff may contain fall back to the REST backend. Comments
+ * and reviews are still posted through REST.
+ * <p>
+ * Selected with {@code github.service.backend=graphql}.
+ */
+@Service
+@ConditionalOnProperty(name = "github.service.backend", havingValue = "graphql")
+public class GitHubGraphQLService extends GitHubServiceImpl {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubGraphQLService.class);
+
+    /**
+     * GitHub refuses diffs of pull requests with more files than this
+     */
+    private static final int MAX_DIFF_FILES = 300;
+
+    private static final String PULL_REQUEST_FIELDS = "title isDraft createdAt headRefOid baseRefOid "
+            + "changedFiles additions deletions author { login }";
+
+    private static final String FILES_FIELDS = "files(first: $first, after: $after) { "
+            + "pageInfo { hasNextPage endCursor } nodes { path changeType } }";
+
+    private final GitHubClientProvider clientProvider;
+    private final GitHubGraphQLClient graphQLClient;
+    private final Executor githubExecutor;
+    private final int pageSize;
+
+    public GitHubGraphQLService(
+            GitHubClientProvider clientProvider,
+            GitHubRequestScheduler requestScheduler,
+            @Qualifier("githubExecutor") Executor githubExecutor,
+            GitHubGraphQLClient graphQLClient,
+            @Value("${github.files.streaming.page-size:100}") int streamPageSize,
+            @Value("${github.review.max-comments-per-review:200}") int maxCommentsPerReview,
+            @Value("${github.review.max-review-chars:60000}") int maxReviewChars) {
+        super(clientProvider, requestScheduler, githubExecutor, streamPageSize,
+                maxCommentsPerReview, maxReviewChars);
+        this.clientProvider = clientProvider;
+        this.graphQLClient = graphQLClient;
+        this.githubExecutor = githubExecutor;
+        this.pageSize = Math.min(100, streamPageSize);
+    }
+
+    @Override
+    public PullRequest fetchPullRequestDetails(String repoName, long prId, Long installationId) {
+        try {
+            logger.info("Fetching pull request details for {}, PR #{} with GraphQL", repoName, prId);
+
+            GitHubClientProvider.Client client = clientProvider.forRepository(repoName, installationId);
+            CompletableFuture<Map<String, String>> patches = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetchPatches(client, repoName, prId);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, githubExecutor);
+
+            FileLister files = new FileLister(client, repoName, prId, null);
+            JsonNode pullRequestNode = files.fetchFirstPage();
+            if (pullRequestNode == null) {
+                patches.cancel(false);
+                logger.warn("PR #{} not found in repo {} through GraphQL, falling back to REST", prId, repoName);
+                return super.fetchPullRequestDetails(repoName, prId, installationId);
+            }
+            if (pullRequestNode.path("changedFiles").asInt() > MAX_DIFF_FILES) {
+                patches.cancel(false);
+                logger.info("PR #{} changes more than {} files, fetching it through REST", prId, MAX_DIFF_FILES);
+                return super.fetchPullRequestDetails(repoName, prId, installationId);
+            }
+
+            files.setPatches(joinPatches(patches));
+            List<ModifiedFile> modifiedFiles = new ArrayList<>();
+            for (List<ModifiedFile> page = files.nextPage(); page != null; page = files.nextPage()) {
+                modifiedFiles.addAll(page);
+            }
+            logger.info("Fetched {} Java file(s) of PR #{} in {} GraphQL queries",
+                    modifiedFiles.size(), prId, files.queries);
+
+            return toPullRequest(repoName, prId, installationId, pullRequestNode, modifiedFiles);
+        } catch (IOException e) {
+            logger.error("Error fetching pull request details: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch pull request details", e);
+        }
+    }
+
+    @Override
+    public PullRequest fetchPullRequestSummary(String repoName, long prId, Long installationId) {
+        try {
+            logger.info("Fetching pull request summary for {}, PR #{} with GraphQL", repoName, prId);
+
+            GitHubClientProvider.Client client = clientProvider.forRepository(repoName, installationId);
+            ObjectNode variables = repositoryVariables(repoName, prId);
+            JsonNode data = graphQLClient.query(client, GitHubRequestScheduler.Priority.FETCH, "query($owner: String!, $name: String!, $number: Int!) { "
+                    + "repository(owner: $owner, name: $name) { pullRequest(number: $number) { "
+                    + PULL_REQUEST_FIELDS + " } } }", variables);
+            JsonNode pullRequestNode = data.path("repository").path("pullRequest");
+            if (pullRequestNode.isMissingNode() || pullRequestNode.isNull()) {
+                logger.warn("PR #{} not found in repo {} through GraphQL, falling back to REST", prId, repoName);
+                return super.fetchPullRequestSummary(repoName, prId, installationId);
+            }
+            return toPullRequest(repoName, prId, installationId, pullRequestNode, null);
+        } catch (IOException e) {
+            logger.error("Error fetching pull request summary: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch pull request summary", e);
+        }
+    }
+
+    /**
+     * Fetch the diff with the first page, then list the files page by page, each page once its
+     * blob SHAs are known
+     */
+    @Override
+    protected FileStream.Pages filePages(PullRequest pullRequest) {
+        if (pullRequest.getChangedFiles() != null && pullRequest.getChangedFiles() > MAX_DIFF_FILES) {
+            return super.filePages(pullRequest);
+        }
+        return new FileStream.Pages() {
+            private FileLister files;
+
+            @Override
+            public List<ModifiedFile> next() throws IOException {
+                if (files == null) {
+                    GitHubClientProvider.Client client = clientProvider.forRepository(pullRequest.getRepository(),
+                            pullRequest.getInstallationId());
+                    files = new FileLister(client, pullRequest.getRepository(), pullRequest.getPrId(),
+                            pullRequest.getHeadSha());
+                    files.setPatches(fetchPatches(client, pullRequest.getRepository(), pullRequest.getPrId()));
+                }
+                return files.nextPage();
+            }
+        };
+    }
+
+    /**
+     * Lists the Java files of a pull request. Blob SHAs of a page are looked up in the same query
+     * that fetches the following page, so every page costs one query plus one at the end.
+     */
+    private final class FileLister {
+        private final GitHubClientProvider.Client client;
+        private final String repoName;
+        private final long prId;
+        private String headSha;
+        private Map<String, String> patches = Map.of();
+        private String cursor;
+        private boolean hasMorePages = true;
+        private List<ModifiedFile> pending = List.of();
+        private int queries;
+
+        private FileLister(GitHubClientProvider.Client client, String repoName, long prId, String headSha) {
+            this.client = client;
+            this.repoName = repoName;
+            this.prId = prId;
+            this.headSha = headSha;
+        }
+
+        private void setPatches(Map<String, String> patches) {
+            this.patches = patches;
+        }
+
+        /**
+         * Fetch the pull request's metadata with the first page of files
+         *
+         * @return the pull request node, or null if there is no such pull request
+         */
+        private JsonNode fetchFirstPage() throws IOException {
+            JsonNode pullRequestNode = fetch(true, List.of()).path("repository").path("pullRequest");
+            if (pullRequestNode.isMissingNode() || pullRequestNode.isNull()) {
+                return null;
+            }
+            headSha = pullRequestNode.path("headRefOid").asText();
+            readFiles(pullRequestNode);
+            return pullRequestNode;
+        }
+
+        /**
+         * Complete the pending page, fetching the next one in the same query
+         *
+         * @return the files of the completed page, or null once all pages have been returned
+         */
+        private List<ModifiedFile> nextPage() throws IOException {
+            if (!hasMorePages && pending.isEmpty()) {
+                return null;
+            }
+            List<ModifiedFile> completed = pending;
+            JsonNode repository = fetch(false, completed).path("repository");
+            for (int i = 0; i < completed.size(); i++) {
+                ModifiedFile file = completed.get(i);
+                file.setDiffContent(patches.get(file.getFilePath()));
+                JsonNode blob = repository.path("b" + i);
+                if (!blob.isMissingNode() && !blob.isNull()) {
+                    file.setFileId(blob.path("oid").asText());
+                }
+            }
+            pending = List.of();
+            readFiles(repository.path("pullRequest"));
+            return completed;
+        }
+
+        /**
+         * Query the next page of files, if any, and the blob SHAs of the given page
+         */
+        private JsonNode fetch(boolean withMetadata, List<ModifiedFile> page) throws IOException {
+            ObjectNode variables = repositoryVariables(repoName, prId);
+            StringBuilder declarations = new StringBuilder("$owner: String!, $name: String!, $number: Int!");
+            StringBuilder selection = new StringBuilder();
+
+            if (withMetadata || hasMorePages) {
+                declarations.append(", $first: Int!, $after: String");
+                variables.put("first", pageSize);
+                variables.put("after", cursor);
+                selection.append("pullRequest(number: $number) { ");
+                if (withMetadata) {
+                    selection.append(PULL_REQUEST_FIELDS).append(' ');
+                }
+                selection.append(FILES_FIELDS).append(" } ");
+            }
+            for (int i = 0; i < page.size(); i++) {
+                ModifiedFile file = page.get(i);
+                if (file.getChangeType() != ModifiedFile.ChangeType.DELETED) {
+                    declarations.append(", $e").append(i).append(": String!");
+                    variables.put("e" + i, headSha + ":" + file.getFilePath());
+                    selection.append('b').append(i).append(": object(expression: $e").append(i)
+                            .append(") { oid } ");
+                }
+            }
+
+            if (selection.length() == 0) {
+                return MissingNode.getInstance();
+            }
+            queries++;
+            return graphQLClient.query(client, GitHubRequestScheduler.Priority.FETCH, "query(" + declarations + ") { repository(owner: $owner, name: $name) { "
+                    + selection + "} }", variables);
+        }
+
+        private void readFiles(JsonNode pullRequestNode) {
+            JsonNode files = pullRequestNode.path("files");
+            if (files.isMissingNode()) {
+                return;
+            }
+            List<ModifiedFile> page = new ArrayList<>();
+            for (JsonNode node : files.path("nodes")) {
+                String path = node.path("path").asText();
+                if (path.endsWith(".java")) {
+                    page.add(ModifiedFile.builder()
+                            .fileName(path.substring(path.lastIndexOf('/') + 1))
+                            .filePath(path)
+                            .changeType(mapChangeType(node.path("changeType").asText()))
+                            .build());
+                }
+            }
+            pending = page;
+            hasMorePages = files.path("pageInfo").path("hasNextPage").asBoolean(false);
+            cursor = files.path("pageInfo").path("endCursor").asText(null);
+        }
+    }
+
+    /**
+     * Fetch the unified diff of a pull request with one REST call and split it into per-file
+     * patches in the format of the REST files endpoint
+     */
+    private Map<String, String> fetchPatches(GitHubClientProvider.Client client, String repoName, long prId)
+            throws IOException {
+        String diff = graphQLClient.get(client, GitHubRequestScheduler.Priority.FETCH,
+                "/repos/" + repoName + "/pulls/" + prId, "application/vnd.github.diff");
+        return splitDiff(diff);
+    }
+
+    private static Map<String, String> splitDiff(String diff) {
+        Map<String, String> patches = new HashMap<>();
+        String path = null;
+        StringBuilder patch = null;
+        for (String line : diff.split("\n", -1)) {
+            if (line.startsWith("diff --git ")) {
+                putPatch(patches, path, patch);
+                int b = line.lastIndexOf(" b/");
+                path = b >= 0 ? line.substring(b + 3) : null;
+                patch = null;
+            } else if (patch != null) {
+                patch.append(line).append('\n');
+            } else if (line.startsWith("+++ b/")) {
+                path = line.substring(6);
+            } else if (line.startsWith("rename to ")) {
+                path = line.substring(10);
+            } else if (line.startsWith("@@")) {
+                patch = new StringBuilder(line).append('\n');
+            }
+        }
+        putPatch(patches, path, patch);
+        return patches;
+    }
+
+    private static void putPatch(Map<String, String> patches, String path, StringBuilder patch) {
+        if (path != null && patch != null) {
+            patches.put(path, patch.toString().stripTrailing());
+        }
+    }
+
+    private Map<String, String> joinPatches(CompletableFuture<Map<String, String>> patches) throws IOException {
+        try {
+            return patches.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private ObjectNode repositoryVariables(String repoName, long prId) {
+        ObjectNode variables = graphQLClient.repositoryVariables(repoName);
+        variables.put("number", Math.toIntExact(prId));
+        return variables;
+    }
+
+    private PullRequest toPullRequest(String repoName, long prId, Long installationId, JsonNode node,
+                                      List<ModifiedFile> modifiedFiles) {
+        return PullRequest.builder()
+                .prId(prId)
+                .repository(repoName)
+                .headSha(node.path("headRefOid").asText())
+                .baseSha(node.path("baseRefOid").asText())
+                .draft(node.path("isDraft").asBoolean())
+                .installationId(installationId)
+                .title(node.path("title").asText())
+                .author(node.path("author").path("login").asText(null))
+                .createdAt(Instant.parse(node.path("createdAt").asText()))
+                .updatedAt(Instant.now())
+                .changedFiles(node.path("changedFiles").asInt())
+                .additions(node.path("additions").asInt())
+                .deletions(node.path("deletions").asInt())
+                .modifiedFiles(modifiedFiles)
+                .build();
+    }
+
+    private static ModifiedFile.ChangeType mapChangeType(String changeType) {
+        switch (changeType) {
+            case "ADDED":
+                return ModifiedFile.ChangeType.ADDED;
+            case "DELETED":
+                return ModifiedFile.ChangeType.DELETED;
+            default:
+                return ModifiedFile.ChangeType.MODIFIED;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.codecritic.service;
+
+import okhttp3.Response;
+import org.kohsuke.github.GHIOException;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+
+import java.time.Instant;
+
+/**
+ * A GitHub call rejected by the primary or a secondary rate limit.
+ * <p>
+ * The GitHub client is configured to throw this instead of sleeping inside the library, so
+ * {@link GitHubRequestScheduler} decides when the call is retried.
+ */
+public class GitHubRateLimitException extends GHIOException {
+
+    private static final long DEFAULT_RETRY_SECONDS = 60;
+
+    private final boolean secondary;
+    private final Instant retryAt;
+
+    public GitHubRateLimitException(String message, boolean secondary, Instant retryAt) {
+        super(message);
+        this.secondary = secondary;
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * Build the exception from a rate-limited response, using {@code Retry-After} or
+     * {@code X-RateLimit-Reset} to tell when the call may be retried
+     */
+    public static GitHubRateLimitException from(GitHubConnectorResponse response, boolean secondary) {
+        return from(response.statusCode(), response.header("Retry-After"), response.header("X-RateLimit-Reset"),
+                secondary);
+    }
+
+    /**
+     * Build the exception from a rate-limited response received with the HTTP client directly
+     */
+    public static GitHubRateLimitException from(Response response, boolean secondary) {
+        return from(response.code(), response.header("Retry-After"), response.header("X-RateLimit-Reset"),
+                secondary);
+    }
+
+    private static GitHubRateLimitException from(int statusCode, String retryAfter, String reset, boolean secondary) {
+        Instant retryAt = Instant.now().plusSeconds(DEFAULT_RETRY_SECONDS);
+        try {
+            if (retryAfter != null) {
+                retryAt = Instant.now().plusSeconds(Long.parseLong(retryAfter.trim()));
+            } else if (reset != null) {
+                retryAt = Instant.ofEpochSecond(Long.parseLong(reset.trim()));
+            }
+        } catch (NumberFormatException e) {
+            // Keep the default delay
+        }
+        String kind = secondary ? "Secondary rate limit" : "Rate limit";
+        return new GitHubRateLimitException(kind + " hit (HTTP " + statusCode + "), retry at " + retryAt,
+                secondary, retryAt);
+    }
+
+    public boolean isSecondary() {
+        return secondary;
+    }
+
+    public Instant getRetryAt() {
+        return retryAt;
+    }
+}
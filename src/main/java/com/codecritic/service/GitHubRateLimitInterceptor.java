@@ -0,0 +1,49 @@
+package com.codecritic.service;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.kohsuke.github.GHRateLimit;
+
+import java.io.IOException;
+
+/**
+ * Captures the {@code X-RateLimit-*} headers of every response the GitHub client receives.
+ * <p>
+ * OkHttp runs synchronous calls on the calling thread, so the last rate limit seen is kept per
+ * thread and {@link GitHubRequestScheduler} reads it right after the call it made. The client's
+ * own merged rate-limit state is not used because it can lag behind after a rate-limit error.
+ * GraphQL responses report the separate GraphQL limit, so GraphQL calls are scheduled under a
+ * credential of their own.
+ */
+public class GitHubRateLimitInterceptor implements Interceptor {
+
+    private static final ThreadLocal<GHRateLimit.Record> LAST_OBSERVED = new ThreadLocal<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        String limit = response.header("X-RateLimit-Limit");
+        String remaining = response.header("X-RateLimit-Remaining");
+        String reset = response.header("X-RateLimit-Reset");
+        String resource = response.header("X-RateLimit-Resource");
+        if (limit != null && remaining != null && reset != null && (resource == null || "core".equals(resource) || "graphql".equals(resource))) {
+            try {
+                LAST_OBSERVED.set(new GHRateLimit.Record(Integer.parseInt(limit.trim()),
+                        Integer.parseInt(remaining.trim()), Long.parseLong(reset.trim())));
+            } catch (NumberFormatException e) {
+                // Ignore malformed headers
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Return and clear the last core or GraphQL rate limit observed on this thread, or null if
+     * none was
+     */
+    public static GHRateLimit.Record takeLastObserved() {
+        GHRateLimit.Record record = LAST_OBSERVED.get();
+        LAST_OBSERVED.remove();
+        return record;
+    }
+}
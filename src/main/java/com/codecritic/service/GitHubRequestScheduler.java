@@ -0,0 +1,246 @@
+package com.codecritic.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.kohsuke.github.GHRateLimit;
+import org.kohsuke.github.GitHub;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Paces every GitHub call against the rate limit of the credential it uses.
+ * <p>
+ * Each credential has a token bucket that refills at {@code limit} requests per hour and is
+ * corrected after every call from the {@code X-RateLimit-*} headers GitHub returned. A call takes
+ * one token before it is sent. Lower-priority calls leave a reserve of the budget to higher ones
+ * and wait while a higher-priority call is waiting, so results are still posted when the budget
+ * runs low. A call rejected by the primary or a secondary rate limit pauses the credential until
+ * the time GitHub gave and is then retried, instead of failing the review.
+ */
+@Component
+public class GitHubRequestScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubRequestScheduler.class);
+
+    /**
+     * Name of the credential configured with {@code github.api.token}
+     */
+    public static final String DEFAULT_CREDENTIAL = "default";
+
+    /**
+     * Priority of a call, highest first
+     */
+    public enum Priority {
+        /** Publishing review results */
+        PUBLISH,
+        /** Fetching what a scheduled review needs */
+        FETCH,
+        /** Work that can be skipped or done later, such as prefetching */
+        SPECULATIVE
+    }
+
+    /**
+     * A call made with a GitHub client
+     */
+    @FunctionalInterface
+    public interface GitHubCall<T> {
+        T call(GitHub github) throws IOException;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int defaultLimit;
+    private final int maxRetries;
+    private final Duration maxWait;
+    private final Map<Priority, Double> reserves = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    public GitHubRequestScheduler(
+            MeterRegistry meterRegistry,
+            @Value("${github.scheduler.default-limit:5000}") int defaultLimit,
+            @Value("${github.scheduler.max-retries:5}") int maxRetries,
+            @Value("${github.scheduler.max-wait-seconds:900}") long maxWaitSeconds,
+            @Value("${github.scheduler.fetch-reserve:0.05}") double fetchReserve,
+            @Value("${github.scheduler.speculative-reserve:0.25}") double speculativeReserve) {
+        this.meterRegistry = meterRegistry;
+        this.defaultLimit = defaultLimit;
+        this.maxRetries = maxRetries;
+        this.maxWait = Duration.ofSeconds(maxWaitSeconds);
+        reserves.put(Priority.PUBLISH, 0.0);
+        reserves.put(Priority.FETCH, fetchReserve);
+        reserves.put(Priority.SPECULATIVE, speculativeReserve);
+
+        for (Priority priority : Priority.values()) {
+            waitTimers.put(priority, Timer.builder("codecritic.github.requests.wait")
+                    .description("Time a GitHub call waited for rate-limit budget")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Run a call once the credential has budget for it, retrying it when GitHub rejects it with a
+     * rate limit
+     *
+     * @param credential name of the credential the client authenticates with
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     * @throws GitHubRateLimitException if the call is still rate limited after the allowed retries,
+     *                                  or GitHub asks to wait longer than {@code max-wait-seconds}
+     */
+    public <T> T execute(String credential, GitHub github, Priority priority, GitHubCall<T> call) throws IOException {
+        Bucket bucket = bucket(credential);
+
+        for (int attempt = 0; ; attempt++) {
+            long waitStart = System.nanoTime();
+            bucket.acquire(priority);
+            GitHubRateLimitInterceptor.takeLastObserved();
+            waitTimers.get(priority).record(Duration.ofNanos(System.nanoTime() - waitStart));
+
+            try {
+                T result = call.call(github);
+                bucket.observe(GitHubRateLimitInterceptor.takeLastObserved());
+                return result;
+            } catch (GitHubRateLimitException e) {
+                Duration wait = Duration.between(Instant.now(), e.getRetryAt());
+                if (attempt >= maxRetries || wait.compareTo(maxWait) > 0) {
+                    logger.error("Giving up {} call for {} after {} attempt(s): {}",
+                            priority, credential, attempt + 1, e.getMessage());
+                    throw e;
+                }
+                logger.warn("{}; pausing {} calls for {} s (attempt {} of {})",
+                        e.getMessage(), credential, Math.max(0, wait.toSeconds()), attempt + 1, maxRetries + 1);
+                bucket.pauseUntil(System.currentTimeMillis() + Math.max(0, wait.toMillis()), e.isSecondary());
+            }
+        }
+    }
+
+    private synchronized Bucket bucket(String credential) {
+        return buckets.computeIfAbsent(credential, Bucket::new);
+    }
+
+    /**
+     * Rate-limit budget of one credential
+     */
+    private final class Bucket {
+        private final String credential;
+        private final Map<Priority, Integer> waiting = new EnumMap<>(Priority.class);
+        private final Counter primaryRetries;
+        private final Counter secondaryRetries;
+        private int limit = defaultLimit;
+        private int remaining = defaultLimit;
+        private double tokens = defaultLimit;
+        private long lastRefill = System.currentTimeMillis();
+        private long pausedUntil;
+        private long windowResetAt;
+
+        private Bucket(String credential) {
+            this.credential = credential;
+            for (Priority priority : Priority.values()) {
+                waiting.put(priority, 0);
+            }
+            Gauge.builder("codecritic.github.ratelimit.remaining", this, b -> b.remaining)
+                    .description("Requests left in the current rate-limit window, as reported by GitHub")
+                    .tag("credential", credential)
+                    .register(meterRegistry);
+            Gauge.builder("codecritic.github.ratelimit.tokens", this, b -> b.tokens)
+                    .description("Requests the scheduler may still send right now")
+                    .tag("credential", credential)
+                    .register(meterRegistry);
+            this.primaryRetries = Counter.builder("codecritic.github.requests.retried")
+                    .tag("credential", credential).tag("limit", "primary").register(meterRegistry);
+            this.secondaryRetries = Counter.builder("codecritic.github.requests.retried")
+                    .tag("credential", credential).tag("limit", "secondary").register(meterRegistry);
+        }
+
+        /**
+         * Take one token, waiting while the bucket is paused, below the priority's reserve, or
+         * a higher-priority call is waiting
+         */
+        private synchronized void acquire(Priority priority) throws InterruptedIOException {
+            waiting.merge(priority, 1, Integer::sum);
+            try {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    refill(now);
+                    if (now >= pausedUntil && !higherWaiting(priority)
+                            && tokens >= 1 + limit * reserves.get(priority)) {
+                        tokens--;
+                        return;
+                    }
+                    long delay = now < pausedUntil ? pausedUntil - now : (long) Math.ceil(millisPerToken());
+                    wait(Math.max(1, Math.min(delay, 1000)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for GitHub rate limit of " + credential);
+            } finally {
+                waiting.merge(priority, -1, Integer::sum);
+                notifyAll();
+            }
+        }
+
+        /**
+         * Align the bucket with the rate limit GitHub reported
+         */
+        private synchronized void observe(GHRateLimit.Record record) {
+            if (record == null) {
+                return;
+            }
+            limit = record.getLimit();
+            remaining = record.getRemaining();
+            tokens = Math.min(tokens, remaining);
+            windowResetAt = record.getResetEpochSeconds() * 1000;
+            if (remaining == 0) {
+                pausedUntil = Math.max(pausedUntil, windowResetAt);
+            }
+            notifyAll();
+        }
+
+        private synchronized void pauseUntil(long until, boolean secondary) {
+            (secondary ? secondaryRetries : primaryRetries).increment();
+            pausedUntil = Math.max(pausedUntil, until);
+            if (!secondary) {
+                remaining = 0;
+                tokens = 0;
+                windowResetAt = until;
+            }
+            notifyAll();
+        }
+
+        private void refill(long now) {
+            if (windowResetAt > 0 && now >= windowResetAt) {
+                // A new rate-limit window has started with the full budget
+                windowResetAt = 0;
+                remaining = limit;
+                tokens = limit;
+            }
+            tokens = Math.min(limit, tokens + (now - lastRefill) / millisPerToken());
+            lastRefill = now;
+        }
+
+        private double millisPerToken() {
+            return 3_600_000.0 / Math.max(1, limit);
+        }
+
+        private boolean higherWaiting(Priority priority) {
+            for (Priority other : Priority.values()) {
+                if (other.ordinal() < priority.ordinal() && waiting.get(other) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
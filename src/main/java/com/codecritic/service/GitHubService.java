@@ -1,7 +1,12 @@
 package com.codecritic.service;
 
+import com.codecritic.model.InlineComment;
+import com.codecritic.model.ModifiedFile;
 import com.codecritic.model.PullRequest;
 
+import java.util.List;
+import java.util.concurrent.Flow;
+
 /**
  * Interface for GitHub operations
  */
@@ -14,7 +19,40 @@ public interface GitHubService {
      * @param prId Pull request ID
      * @return Pull request details
      */
-    PullRequest fetchPullRequestDetails(String repoName, long prId);
+    default PullRequest fetchPullRequestDetails(String repoName, long prId) {
+        return fetchPullRequestDetails(repoName, prId, null);
+    }
+    
+    /**
+     * Fetch pull request details from GitHub through a GitHub App installation
+     * 
+     * @param repoName Repository name (format: owner/repo)
+     * @param prId Pull request ID
+     * @param installationId GitHub App installation that delivered the event, or null
+     * @return Pull request details
+     */
+    PullRequest fetchPullRequestDetails(String repoName, long prId, Long installationId);
+    
+    /**
+     * Fetch pull request details without listing its files, which are left null. The files are
+     * read with {@link #streamModifiedFiles(PullRequest)}.
+     * 
+     * @param repoName Repository name (format: owner/repo)
+     * @param prId Pull request ID
+     * @param installationId GitHub App installation that delivered the event, or null
+     * @return Pull request details with the changed file and line counts, but no files
+     */
+    PullRequest fetchPullRequestSummary(String repoName, long prId, Long installationId);
+    
+    /**
+     * Stream the Java files of a pull request page by page. Nothing is fetched until a subscriber
+     * subscribes, and the next page is only fetched once the subscriber has requested the files
+     * buffered so far, so memory use does not grow with the size of the pull request.
+     * 
+     * @param pullRequest Pull request returned by {@link #fetchPullRequestSummary}
+     * @return Publisher of the modified files; it fails if a page cannot be fetched
+     */
+    Flow.Publisher<ModifiedFile> streamModifiedFiles(PullRequest pullRequest);
     
     /**
      * Post a comment to a pull request
@@ -29,8 +67,19 @@ public interface GitHubService {
      * 
      * @param pullRequest Pull request to comment on
      * @param filePath Path to the file
-     * @param lineNumber Line number to comment on
+     * @param lineNumber Position in the file's diff to comment on
      * @param commentBody Comment text
      */
     void postReviewComment(PullRequest pullRequest, String filePath, int lineNumber, String commentBody);
+    
+    /**
+     * Submit inline comments as pull request reviews on the PR's head commit. All comments go into
+     * one review unless they exceed the size limits of a review, in which case they are split over
+     * as few reviews as possible.
+     * 
+     * @param pullRequest Pull request to review
+     * @param body Review body, posted with the first review
+     * @param comments Comments on lines of the diff
+     */
+    void submitReview(PullRequest pullRequest, String body, List<InlineComment> comments);
 } 
\ No newline at end of file
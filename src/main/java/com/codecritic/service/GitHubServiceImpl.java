@@ -1,52 +1,124 @@
 package com.codecritic.service;
 
+import com.codecritic.model.InlineComment;
 import com.codecritic.model.ModifiedFile;
 import com.codecritic.model.PullRequest;
 import org.kohsuke.github.*;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.stream.Collectors;
 import java.util.ArrayList;
 
 /**
  * Production implementation of GitHubService using GitHub API
+ * <p>
+ * This is the default backend; set {@code github.service.backend} to {@code graphql} to fetch
+ * pull requests with {@link GitHubGraphQLService}, or to {@code mirror} to read them from local
+ * git mirrors with {@link GitMirrorService} instead.
  */
 @Service
+@ConditionalOnProperty(name = "github.service.backend", havingValue = "rest", matchIfMissing = true)
 public class GitHubServiceImpl implements GitHubService {
     
     private static final Logger logger = LoggerFactory.getLogger(GitHubServiceImpl.class);
     
-    @Value("${github.api.token}")
-    private String githubToken;
+    private static final int MAX_SUMMARIZED = 256;
+    
+    private final GitHubClientProvider clientProvider;
+    private final GitHubRequestScheduler requestScheduler;
+    private final Executor githubExecutor;
+    private final int streamPageSize;
+    private final int maxCommentsPerReview;
+    private final int maxReviewChars;
+    
+    /**
+     * Pull requests fetched for a summary, kept until their files are streamed so that listing
+     * the files does not fetch the pull request again. Bounded, as not every summary is streamed.
+     */
+    private final Map<String, GHPullRequest> summarized = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, GHPullRequest> eldest) {
+                    return size() > MAX_SUMMARIZED;
+                }
+            });
+    
+    public GitHubServiceImpl(
+            GitHubClientProvider clientProvider,
+            GitHubRequestScheduler requestScheduler,
+            @Qualifier("githubExecutor") Executor githubExecutor,
+            @Value("${github.files.streaming.page-size:100}") int streamPageSize,
+            @Value("${github.review.max-comments-per-review:200}") int maxCommentsPerReview,
+            @Value("${github.review.max-review-chars:60000}") int maxReviewChars) {
+        this.clientProvider = clientProvider;
+        this.requestScheduler = requestScheduler;
+        this.githubExecutor = githubExecutor;
+        this.streamPageSize = streamPageSize;
+        this.maxCommentsPerReview = maxCommentsPerReview;
+        this.maxReviewChars = maxReviewChars;
+    }
+    
+    @Override
+    public PullRequest fetchPullRequestDetails(String repoName, long prId, Long installationId) {
+        return fetchPullRequest(repoName, prId, installationId, true);
+    }
     
     @Override
-    public PullRequest fetchPullRequestDetails(String repoName, long prId) {
+    public PullRequest fetchPullRequestSummary(String repoName, long prId, Long installationId) {
+        return fetchPullRequest(repoName, prId, installationId, false);
+    }
+    
+    @Override
+    public Flow.Publisher<ModifiedFile> streamModifiedFiles(PullRequest pullRequest) {
+        return subscriber -> FileStream.start(pullRequest, filePages(pullRequest), githubExecutor, subscriber);
+    }
+    
+    private PullRequest fetchPullRequest(String repoName, long prId, Long installationId, boolean withFiles) {
         try {
             logger.info("Fetching pull request details for {}, PR #{}", repoName, prId);
             
             try {
-                GitHub github = new GitHubBuilder().withOAuthToken(githubToken).build();
-                GHRepository repository = github.getRepository(repoName);
-                GHPullRequest ghPullRequest = repository.getPullRequest(Math.toIntExact(prId));
+                GitHubClientProvider.Client client = clientProvider.forRepository(repoName, installationId);
+                GHPullRequest ghPullRequest = fetch(client, gh -> gh.getRepository(repoName)
+                        .getPullRequest(Math.toIntExact(prId)));
                 
-                List<ModifiedFile> modifiedFiles = ghPullRequest.listFiles().toList().stream()
-                        .filter(file -> file.getFilename().endsWith(".java"))
-                        .map(this::mapToModifiedFile)
-                        .collect(Collectors.toList());
+                List<ModifiedFile> modifiedFiles = null;
+                if (!withFiles) {
+                    summarized.put(summaryKey(repoName, prId), ghPullRequest);
+                } else {
+                    modifiedFiles = fetch(client, gh -> ghPullRequest.listFiles().toList()).stream()
+                            .filter(file -> file.getFilename().endsWith(".java"))
+                            .map(this::mapToModifiedFile)
+                            .collect(Collectors.toList());
+                }
                 
                 return PullRequest.builder()
                         .prId(prId)
                         .repository(repoName)
+                        .headSha(ghPullRequest.getHead().getSha())
+                        .baseSha(ghPullRequest.getBase().getSha())
+                        .draft(ghPullRequest.isDraft())
+                        .installationId(installationId)
                         .title(ghPullRequest.getTitle())
                         .author(ghPullRequest.getUser().getLogin())
                         .createdAt(ghPullRequest.getCreatedAt().toInstant())
                         .updatedAt(Instant.now())
+                        .changedFiles(ghPullRequest.getChangedFiles())
+                        .additions(ghPullRequest.getAdditions())
+                        .deletions(ghPullRequest.getDeletions())
                         .modifiedFiles(modifiedFiles)
                         .build();
             } catch (GHFileNotFoundException e) {
@@ -68,6 +140,7 @@ public class GitHubServiceImpl implements GitHubService {
                 return PullRequest.builder()
                         .prId(prId)
                         .repository(repoName)
+                        .installationId(installationId)
                         .title("Test PR (Not Found in GitHub)")
                         .author("test-user")
                         .createdAt(Instant.now().minusSeconds(3600))
@@ -81,17 +154,71 @@ public class GitHubServiceImpl implements GitHubService {
         }
     }
     
+    /**
+     * Pages of the pull request's Java files, each fetched once the stream asks for it. The pull
+     * request fetched for its summary is reused to list the files.
+     */
+    protected FileStream.Pages filePages(PullRequest pullRequest) {
+        return new FileStream.Pages() {
+            private GitHubClientProvider.Client client;
+            private PagedIterator<GHPullRequestFileDetail> pages;
+            
+            @Override
+            public List<ModifiedFile> next() throws IOException {
+                if (pages == null) {
+                    client = clientProvider.forRepository(pullRequest.getRepository(), pullRequest.getInstallationId());
+                    GHPullRequest ghPullRequest = summarized.remove(
+                            summaryKey(pullRequest.getRepository(), pullRequest.getPrId()));
+                    if (ghPullRequest == null) {
+                        ghPullRequest = fetch(client, gh -> gh.getRepository(pullRequest.getRepository())
+                                .getPullRequest(Math.toIntExact(pullRequest.getPrId())));
+                    }
+                    pages = ghPullRequest.listFiles()
+                            .withPageSize(streamPageSize)
+                            .iterator();
+                }
+                
+                List<GHPullRequestFileDetail> page = fetch(client, gh -> nextPage(pages));
+                if (page == null) {
+                    return null;
+                }
+                return page.stream()
+                        .filter(file -> file.getFilename().endsWith(".java"))
+                        .map(GitHubServiceImpl.this::mapToModifiedFile)
+                        .toList();
+            }
+        };
+    }
+    
+    private static String summaryKey(String repoName, long prId) {
+        return repoName + "#" + prId;
+    }
+    
+    /**
+     * Fetch the next page, or return null after the last one. Page iterators wrap I/O errors in
+     * {@link GHException}; they are unwrapped so that rate limits are retried by the scheduler.
+     */
+    private static <T> List<T> nextPage(PagedIterator<T> pages) throws IOException {
+        try {
+            return pages.hasNext() ? pages.nextPage() : null;
+        } catch (GHException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
     @Override
     public void postComment(PullRequest pullRequest, String commentBody) {
         try {
             logger.info("Posting comment to PR #{}", pullRequest.getPrId());
             
-            GitHub github = new GitHubBuilder().withOAuthToken(githubToken).build();
-            String[] repoPathParts = getRepoPathPartsFromComment(commentBody);
-            GHPullRequest ghPullRequest = github.getRepository(repoPathParts[0] + "/" + repoPathParts[1])
-                    .getPullRequest(Math.toIntExact(pullRequest.getPrId()));
-            
-            ghPullRequest.comment(commentBody);
+            GitHubClientProvider.Client client = clientProvider.forRepository(pullRequest.getRepository(),
+                    pullRequest.getInstallationId());
+            GHPullRequest ghPullRequest = publish(client, gh -> gh.getRepository(pullRequest.getRepository())
+                    .getPullRequest(Math.toIntExact(pullRequest.getPrId())));
+            publish(client, gh -> ghPullRequest.comment(commentBody));
         } catch (IOException e) {
             logger.error("Error posting comment: {}", e.getMessage(), e);
         }
@@ -99,32 +226,112 @@ public class GitHubServiceImpl implements GitHubService {
     
     @Override
     public void postReviewComment(PullRequest pullRequest, String filePath, int lineNumber, String commentBody) {
+        logger.info("Posting review comment to PR #{} on file {} line {}", 
+                pullRequest.getPrId(), filePath, lineNumber);
+        
+        submitReview(pullRequest, null, List.of(InlineComment.builder()
+                .filePath(filePath)
+                .position(lineNumber)
+                .body(commentBody)
+                .build()));
+    }
+    
+    @Override
+    public void submitReview(PullRequest pullRequest, String body, List<InlineComment> comments) {
+        List<List<InlineComment>> batches = partition(comments);
+        if (batches.isEmpty() && (body == null || body.isBlank())) {
+            return;
+        }
+        if (batches.isEmpty()) {
+            batches.add(List.of());
+        }
+        
         try {
-            logger.info("Posting review comment to PR #{} on file {} line {}", 
-                    pullRequest.getPrId(), filePath, lineNumber);
+            logger.info("Submitting {} inline comment(s) to PR #{} in {} review(s)",
+                    comments.size(), pullRequest.getPrId(), batches.size());
             
-            GitHub github = new GitHubBuilder().withOAuthToken(githubToken).build();
-            String[] repoPathParts = getRepoPathPartsFromComment(commentBody);
-            GHPullRequest ghPullRequest = github.getRepository(repoPathParts[0] + "/" + repoPathParts[1])
-                    .getPullRequest(Math.toIntExact(pullRequest.getPrId()));
+            GitHubClientProvider.Client client = clientProvider.forRepository(pullRequest.getRepository(),
+                    pullRequest.getInstallationId());
+            GHPullRequest ghPullRequest = publish(client, gh -> gh.getRepository(pullRequest.getRepository())
+                    .getPullRequest(Math.toIntExact(pullRequest.getPrId())));
             
-            // Get the latest commit in the PR for the review
-            String commitId = ghPullRequest.getHead().getSha();
+            // Positions refer to the diff of the reviewed commit, even if the PR has moved on since
+            String commitId = pullRequest.getHeadSha() != null
+                    ? pullRequest.getHeadSha()
+                    : ghPullRequest.getHead().getSha();
             
-            // Post a comment on a specific line of a file
-            ghPullRequest.createReviewComment(commentBody, commitId, filePath, lineNumber);
+            for (int i = 0; i < batches.size(); i++) {
+                List<InlineComment> batch = batches.get(i);
+                String reviewBody = i == 0 ? body : null;
+                if (batches.size() > 1) {
+                    reviewBody = (reviewBody == null ? "" : reviewBody + "\n\n")
+                            + "_Part " + (i + 1) + " of " + batches.size() + "_";
+                }
+                
+                GHPullRequestReviewBuilder review = ghPullRequest.createReview()
+                        .commitId(commitId)
+                        .event(GHPullRequestReviewEvent.COMMENT);
+                if (reviewBody != null && !reviewBody.isBlank()) {
+                    review.body(reviewBody);
+                }
+                for (InlineComment comment : batch) {
+                    review.comment(comment.getBody(), comment.getFilePath(), comment.getPosition());
+                }
+                
+                try {
+                    publish(client, gh -> review.create());
+                } catch (GitHubRateLimitException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // GitHub rejects the whole review if one position is outside the diff; keep the other batches
+                    logger.error("Error submitting review {} of {} to PR #{}: {}",
+                            i + 1, batches.size(), pullRequest.getPrId(), e.getMessage());
+                }
+            }
         } catch (IOException e) {
-            logger.error("Error posting review comment: {}", e.getMessage(), e);
+            logger.error("Error submitting review: {}", e.getMessage(), e);
         }
     }
     
     /**
-     * Extract repository owner and name from a comment
+     * Split comments into batches that fit into a single review
+     */
+    private List<List<InlineComment>> partition(List<InlineComment> comments) {
+        List<List<InlineComment>> batches = new ArrayList<>();
+        List<InlineComment> batch = new ArrayList<>();
+        int batchChars = 0;
+        for (InlineComment comment : comments) {
+            int chars = comment.getBody().length();
+            if (!batch.isEmpty() && (batch.size() >= maxCommentsPerReview || batchChars + chars > maxReviewChars)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchChars = 0;
+            }
+            batch.add(comment);
+            batchChars += chars;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+    
+    /**
+     * Make a call needed to review a pull request through the request scheduler
+     */
+    private <T> T fetch(GitHubClientProvider.Client client, GitHubRequestScheduler.GitHubCall<T> call)
+            throws IOException {
+        return requestScheduler.execute(client.credential(), client.github(),
+                GitHubRequestScheduler.Priority.FETCH, call);
+    }
+    
+    /**
+     * Make a call that publishes review results through the request scheduler
      */
-    private String[] getRepoPathPartsFromComment(String commentBody) {
-        // This is a simplified implementation - in a real app, you'd store this info
-        // For now, just return a placeholder or extract from the PR data
-        return new String[]{"owner", "repo"};
+    private <T> T publish(GitHubClientProvider.Client client, GitHubRequestScheduler.GitHubCall<T> call)
+            throws IOException {
+        return requestScheduler.execute(client.credential(), client.github(),
+                GitHubRequestScheduler.Priority.PUBLISH, call);
     }
     
     /**
@@ -2,113 +2,122 @@ package com.codecritic.service;
 
 import com.codecritic.model.GitHubWebhookEvent;
 import com.codecritic.model.PullRequest;
-import com.codecritic.model.ModifiedFile;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.scheduling.annotation.Async;
-import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
-import org.kohsuke.github.GHPullRequest;
-import org.kohsuke.github.GHPullRequestFileDetail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.time.Instant;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 public class GitHubWebhookService {
 
     private static final Logger logger = LoggerFactory.getLogger(GitHubWebhookService.class);
     
-    @Value("${github.api.token}")
-    private String githubToken;
-    
-    private final PRAnalysisService prAnalysisService;
+    private final ReviewScheduler reviewScheduler;
     private final GitHubService gitHubService;
+    private final WebhookJournal webhookJournal;
+    private final PullRequestEventCoalescer eventCoalescer;
+    private final WebhookAdmissionService admissionService;
+    private final Executor githubExecutor;
+    
+    @Value("${github.files.streaming.enabled:true}")
+    private boolean streamFiles;
     
-    public GitHubWebhookService(PRAnalysisService prAnalysisService, GitHubService gitHubService) {
-        this.prAnalysisService = prAnalysisService;
+    public GitHubWebhookService(ReviewScheduler reviewScheduler, GitHubService gitHubService,
+                                WebhookJournal webhookJournal, PullRequestEventCoalescer eventCoalescer,
+                                WebhookAdmissionService admissionService,
+                                @Qualifier("githubExecutor") Executor githubExecutor) {
+        this.reviewScheduler = reviewScheduler;
         this.gitHubService = gitHubService;
+        this.webhookJournal = webhookJournal;
+        this.eventCoalescer = eventCoalescer;
+        this.admissionService = admissionService;
+        this.githubExecutor = githubExecutor;
     }
     
     /**
      * Process a GitHub webhook event
+     * <p>
+     * Pull request events go through the coalescer, so a burst of pushes results in one review of
+     * the latest head. The journal record for the event is acknowledged once the event is settled:
+     * reviewed, failed, or superseded by a later event that carries its own journal record.
+     * The event must have been admitted by {@link WebhookAdmissionService}; its slot is released
+     * at the same point.
      */
-    @Async
+    @Async("webhookExecutor")
     public void processWebhookEvent(GitHubWebhookEvent event) {
         logger.info("Processing webhook event: {}", event.getEventType());
         
-        if ("pull_request".equals(event.getEventType())) {
-            try {
-                // Use the GitHubService to fetch pull request details
-                PullRequest pullRequest = gitHubService.fetchPullRequestDetails(
-                        event.getRepositoryName(), 
-                        event.getPullRequestId());
-                
-                prAnalysisService.analyzePullRequest(pullRequest);
-            } catch (Exception e) {
-                logger.error("Error processing pull request webhook: {}", e.getMessage(), e);
-            }
+        if (!"pull_request".equals(event.getEventType())) {
+            settle(event);
+            return;
         }
+        
+        eventCoalescer.submit(event, this::startReview)
+                .whenComplete((result, ex) -> settle(event));
     }
     
-    /**
-     * Fetch details about a pull request using the GitHub API
-     */
-    private PullRequest fetchPullRequestDetails(GitHubWebhookEvent event) throws IOException {
-        GitHub github = new GitHubBuilder().withOAuthToken(githubToken).build();
-        GHPullRequest ghPullRequest = github.getRepository(event.getRepositoryName())
-                .getPullRequest(event.getPullRequestId().intValue());
-        
-        List<ModifiedFile> modifiedFiles = ghPullRequest.listFiles().toList().stream()
-                .filter(file -> file.getFilename().endsWith(".java"))
-                .map(this::mapToModifiedFile)
-                .collect(Collectors.toList());
-        
-        return PullRequest.builder()
-                .prId(event.getPullRequestId())
-                .title(ghPullRequest.getTitle())
-                .author(ghPullRequest.getUser().getLogin())
-                .createdAt(ghPullRequest.getCreatedAt().toInstant())
-                .updatedAt(Instant.now())
-                .modifiedFiles(modifiedFiles)
-                .build();
+    private void settle(GitHubWebhookEvent event) {
+        webhookJournal.acknowledge(event.getJournalSequence());
+        admissionService.release();
     }
     
     /**
-     * Map GitHub's file representation to our domain model
+     * Fetch the pull request and queue its analysis. Cancelling the returned future aborts
+     * whichever of the two is still pending or running. With file streaming, only the pull request
+     * itself is fetched here and its files are listed while it is analyzed.
      */
-    private ModifiedFile mapToModifiedFile(GHPullRequestFileDetail fileDetail) {
-        ModifiedFile.ChangeType changeType;
+    private CompletableFuture<Void> startReview(GitHubWebhookEvent event) {
+        CompletableFuture<Void> review = new CompletableFuture<>();
         
-        switch (fileDetail.getStatus()) {
-            case "added":
-                changeType = ModifiedFile.ChangeType.ADDED;
-                break;
-            case "removed":
-                changeType = ModifiedFile.ChangeType.DELETED;
-                break;
-            default:
-                changeType = ModifiedFile.ChangeType.MODIFIED;
-        }
+        CompletableFuture<PullRequest> fetch = CancellableTasks.supply(
+                () -> streamFiles
+                        ? gitHubService.fetchPullRequestSummary(
+                                event.getRepositoryName(),
+                                event.getPullRequestId(),
+                                event.getInstallationId())
+                        : gitHubService.fetchPullRequestDetails(
+                                event.getRepositoryName(),
+                                event.getPullRequestId(),
+                                event.getInstallationId()),
+                githubExecutor);
+        review.whenComplete((r, e) -> {
+            if (review.isCancelled()) {
+                fetch.cancel(true);
+            }
+        });
         
-        return ModifiedFile.builder()
-                .fileId(fileDetail.getSha())
-                .fileName(getFileNameFromPath(fileDetail.getFilename()))
-                .filePath(fileDetail.getFilename())
-                .changeType(changeType)
-                .diffContent(fileDetail.getPatch())
-                .build();
-    }
-    
-    /**
-     * Extract the file name from a full path
-     */
-    private String getFileNameFromPath(String filePath) {
-        int lastSlashIndex = filePath.lastIndexOf('/');
-        return lastSlashIndex >= 0 ? filePath.substring(lastSlashIndex + 1) : filePath;
+        fetch.whenComplete((pullRequest, ex) -> {
+            if (ex != null) {
+                if (!fetch.isCancelled()) {
+                    logger.error("Error processing pull request webhook: {}", ex.getMessage(), ex);
+                }
+                review.completeExceptionally(ex);
+                return;
+            }
+            if (review.isDone()) {
+                return;
+            }
+            
+            CompletableFuture<Void> analysis = reviewScheduler.schedule(pullRequest);
+            review.whenComplete((r, e) -> {
+                if (review.isCancelled()) {
+                    analysis.cancel(true);
+                }
+            });
+            analysis.whenComplete((r, e) -> {
+                if (e != null) {
+                    review.completeExceptionally(e);
+                } else {
+                    review.complete(null);
+                }
+            });
+        });
+        
+        return review;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,305 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * GitHubService backend that computes pull request files from local bare mirrors of the
+ * repositories.
+ * <p>
+ * Each repository is mirrored once under {@code github.mirror.dir}. When a pull request is reviewed,
+ * its branches and {@code refs/pull/<number>/head} are fetched incrementally, unless the head and
+ * base commits are already present, and the changed files, their patches and their post-change
+ * contents are read from the mirror. Contents go straight into the {@link BlobStore}, so the review
+ * pipeline does not download them. Only the pull request's metadata, which git does not carry, and
+ * comments and reviews go through the REST API.
+ * <p>
+ * Selected with {@code github.service.backend=mirror}.
+ */
+@Service
+@ConditionalOnProperty(name = "github.service.backend", havingValue = "mirror")
+public class GitMirrorService extends GitHubServiceImpl {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitMirrorService.class);
+
+    private final GitHubClientProvider clientProvider;
+    private final BlobStore blobStore;
+    private final Path mirrorDir;
+    private final String gitUrl;
+    private final int fetchTimeoutSeconds;
+    private final Map<String, Repository> mirrors = new ConcurrentHashMap<>();
+    private final Timer fetchTimer;
+
+    public GitMirrorService(
+            GitHubClientProvider clientProvider,
+            GitHubRequestScheduler requestScheduler,
+            @Qualifier("githubExecutor") Executor githubExecutor,
+            BlobStore blobStore,
+            MeterRegistry meterRegistry,
+            @Value("${github.mirror.dir:data/mirrors}") String mirrorDir,
+            @Value("${github.mirror.git-url:https://github.com}") String gitUrl,
+            @Value("${github.mirror.fetch-timeout-seconds:120}") int fetchTimeoutSeconds,
+            @Value("${github.files.streaming.page-size:100}") int streamPageSize,
+            @Value("${github.review.max-comments-per-review:200}") int maxCommentsPerReview,
+            @Value("${github.review.max-review-chars:60000}") int maxReviewChars) {
+        super(clientProvider, requestScheduler, githubExecutor, streamPageSize,
+                maxCommentsPerReview, maxReviewChars);
+        this.clientProvider = clientProvider;
+        this.blobStore = blobStore;
+        this.mirrorDir = Path.of(mirrorDir);
+        this.gitUrl = gitUrl.replaceAll("/+$", "");
+        this.fetchTimeoutSeconds = fetchTimeoutSeconds;
+        this.fetchTimer = Timer.builder("codecritic.mirror.fetch")
+                .description("Time spent fetching pull requests into local mirrors")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public PullRequest fetchPullRequestDetails(String repoName, long prId, Long installationId) {
+        PullRequest pullRequest = fetchPullRequestSummary(repoName, prId, installationId);
+        if (pullRequest.getHeadSha() == null) {
+            // Placeholder of a pull request that does not exist, which already has its files
+            return pullRequest;
+        }
+        try {
+            List<ModifiedFile> modifiedFiles = new ArrayList<>();
+            readModifiedFiles(pullRequest, modifiedFiles::add);
+            pullRequest.setModifiedFiles(modifiedFiles);
+            return pullRequest;
+        } catch (IOException | GitAPIException e) {
+            logger.error("Error reading PR #{} from mirror: {}", prId, e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch pull request details", e);
+        }
+    }
+
+    /**
+     * Read the files from the mirror as a single page, since diffing a local repository is
+     * cheap once the pull request has been fetched into it
+     */
+    @Override
+    protected FileStream.Pages filePages(PullRequest pullRequest) {
+        return new FileStream.Pages() {
+            private boolean read;
+
+            @Override
+            public List<ModifiedFile> next() throws IOException, GitAPIException {
+                if (read) {
+                    return null;
+                }
+                read = true;
+                List<ModifiedFile> modifiedFiles = new ArrayList<>();
+                readModifiedFiles(pullRequest, modifiedFiles::add);
+                return modifiedFiles;
+            }
+        };
+    }
+
+    /**
+     * Diff the pull request's head against its merge base with the base commit, as GitHub does,
+     * and pass each changed Java file to the consumer. Contents of added and modified files are
+     * stored in the blob store first.
+     *
+     * @return the number of files passed to the consumer
+     */
+    private int readModifiedFiles(PullRequest pullRequest, Consumer<ModifiedFile> consumer)
+            throws IOException, GitAPIException {
+        Repository repository = sync(pullRequest);
+        ByteArrayOutputStream patchBuffer = new ByteArrayOutputStream();
+
+        try (RevWalk walk = new RevWalk(repository); DiffFormatter formatter = new DiffFormatter(patchBuffer)) {
+            RevCommit head = walk.parseCommit(ObjectId.fromString(pullRequest.getHeadSha()));
+            RevCommit base = walk.parseCommit(ObjectId.fromString(pullRequest.getBaseSha()));
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(head);
+            walk.markStart(base);
+            RevCommit mergeBase = walk.next();
+            if (mergeBase == null) {
+                mergeBase = base;
+            }
+
+            formatter.setRepository(repository);
+            formatter.setDetectRenames(true);
+            int fileCount = 0;
+            for (DiffEntry entry : formatter.scan(mergeBase.getTree(), head.getTree())) {
+                boolean deleted = entry.getChangeType() == DiffEntry.ChangeType.DELETE;
+                String path = deleted ? entry.getOldPath() : entry.getNewPath();
+                if (!path.endsWith(".java")) {
+                    continue;
+                }
+
+                patchBuffer.reset();
+                formatter.format(entry);
+                formatter.flush();
+                String blobSha = (deleted ? entry.getOldId() : entry.getNewId()).name();
+                if (!deleted) {
+                    storeContent(repository, blobSha);
+                }
+
+                consumer.accept(ModifiedFile.builder()
+                        .fileId(blobSha)
+                        .fileName(path.substring(path.lastIndexOf('/') + 1))
+                        .filePath(path)
+                        .changeType(mapChangeType(entry.getChangeType()))
+                        .diffContent(toPatch(patchBuffer.toString(StandardCharsets.UTF_8)))
+                        .build());
+                fileCount++;
+            }
+            return fileCount;
+        }
+    }
+
+    /**
+     * Open the repository's mirror and fetch the pull request into it unless both of its commits
+     * are already there. Fetches of one repository are serialized.
+     */
+    private Repository sync(PullRequest pullRequest) throws IOException, GitAPIException {
+        String repoName = pullRequest.getRepository();
+        Repository repository = openMirror(repoName);
+        synchronized (repository) {
+            ObjectId headId = ObjectId.fromString(pullRequest.getHeadSha());
+            ObjectId baseId = ObjectId.fromString(pullRequest.getBaseSha());
+            if (repository.getObjectDatabase().has(headId) && repository.getObjectDatabase().has(baseId)) {
+                logger.debug("PR #{} is already in the mirror of {}", pullRequest.getPrId(), repoName);
+                return repository;
+            }
+
+            GitHubClientProvider.Client client = clientProvider.forRepository(repoName,
+                    pullRequest.getInstallationId());
+            Timer.Sample sample = Timer.start();
+            try (Git git = new Git(repository)) {
+                git.fetch()
+                        .setRemote(gitUrl + "/" + repoName + ".git")
+                        .setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"),
+                                new RefSpec("+refs/pull/" + pullRequest.getPrId() + "/head:refs/pull/"
+                                        + pullRequest.getPrId() + "/head"))
+                        .setCredentialsProvider(credentials(client))
+                        .setTimeout(fetchTimeoutSeconds)
+                        .call();
+            } finally {
+                long elapsedNanos = sample.stop(fetchTimer);
+                logger.info("Fetched PR #{} into the mirror of {} in {} ms", pullRequest.getPrId(), repoName,
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            }
+
+            if (!repository.getObjectDatabase().has(headId)) {
+                throw new IOException("Head commit " + headId.name() + " of PR #" + pullRequest.getPrId()
+                        + " is missing from the mirror of " + repoName);
+            }
+            return repository;
+        }
+    }
+
+    private Repository openMirror(String repoName) throws IOException {
+        try {
+            return mirrors.computeIfAbsent(repoName, name -> {
+                try {
+                    Path directory = mirrorDir.resolve(name + ".git");
+                    Repository repository = new FileRepositoryBuilder()
+                            .setGitDir(directory.toFile())
+                            .setBare()
+                            .build();
+                    if (!Files.exists(directory.resolve("config"))) {
+                        logger.info("Creating mirror of {} in {}", name, directory);
+                        repository.create(true);
+                    }
+                    return repository;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Credentials for fetching over HTTPS with the client's token, or none for anonymous access
+     */
+    private static CredentialsProvider credentials(GitHubClientProvider.Client client) throws IOException {
+        String authorization = client.authorization().getEncodedAuthorization();
+        if (authorization == null) {
+            return null;
+        }
+        String token = authorization.substring(authorization.indexOf(' ') + 1);
+        return new UsernamePasswordCredentialsProvider("x-access-token", token);
+    }
+
+    private void storeContent(Repository repository, String blobSha) throws IOException {
+        if (blobStore.contains(blobSha)) {
+            return;
+        }
+        ObjectLoader loader = repository.open(ObjectId.fromString(blobSha), Constants.OBJ_BLOB);
+        if (loader.isLarge()) {
+            return;
+        }
+        byte[] content = loader.getCachedBytes();
+        if (!RawText.isBinary(content)) {
+            blobStore.put(blobSha, new String(content, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Strip the git headers of a formatted diff, leaving the hunks in the format of the REST files
+     * endpoint. Binary files have no hunks and no patch.
+     */
+    private static String toPatch(String diff) {
+        int hunks = diff.indexOf("\n@@");
+        return hunks >= 0 ? diff.substring(hunks + 1).stripTrailing() : null;
+    }
+
+    private static ModifiedFile.ChangeType mapChangeType(DiffEntry.ChangeType changeType) {
+        switch (changeType) {
+            case ADD:
+            case COPY:
+                return ModifiedFile.ChangeType.ADDED;
+            case DELETE:
+                return ModifiedFile.ChangeType.DELETED;
+            default:
+                return ModifiedFile.ChangeType.MODIFIED;
+        }
+    }
+
+    @PreDestroy
+    public void closeMirrors() {
+        mirrors.values().forEach(Repository::close);
+    }
+}
@@ -0,0 +1,37 @@
+package com.codecritic.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses Java sources into {@link ParsedSource}s. Every parse is recorded in the
+ * {@code codecritic.parser.parse} timer, tagged with whether the source was valid Java.
+ */
+@Component
+public class JavaSourceParser {
+
+    private final Timer parsed;
+    private final Timer invalid;
+
+    public JavaSourceParser(MeterRegistry meterRegistry) {
+        this.parsed = parses(meterRegistry, "parsed");
+        this.invalid = parses(meterRegistry, "invalid");
+    }
+
+    private static Timer parses(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("codecritic.parser.parse")
+                .description("Java sources parsed for static analysis")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public ParsedSource parse(String path, String source) {
+        long start = System.nanoTime();
+        ParsedSource parsedSource = ParsedSource.parse(path, source);
+        (parsedSource.isParsed() ? parsed : invalid).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return parsedSource;
+    }
+}
@@ -0,0 +1,133 @@
+package com.codecritic.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho–Corasick automaton finding all occurrences of a set of keywords in one pass over a text.
+ * <p>
+ * The characters of the keywords are numbered, all other characters share number 0, and the
+ * automaton is compiled into a table with a next state for every state and character number, so
+ * scanning costs one table lookup per character of the text.
+ */
+final class KeywordAutomaton {
+
+    /** Number of each ASCII character used in a keyword, 0 for the others */
+    private final int[] asciiClasses = new int[128];
+    private final Map<Character, Integer> otherClasses = new HashMap<>();
+    private final int classes;
+    private final int[] transitions;
+    /** Keywords ending at each state, including those ending at its suffixes */
+    private final int[][] outputs;
+    private final int[] lengths;
+
+    /**
+     * @param keywords keywords to find, reported by their index in this list
+     */
+    KeywordAutomaton(List<String> keywords) {
+        int classCount = 1;
+        for (String keyword : keywords) {
+            for (char c : keyword.toCharArray()) {
+                if (classOf(c) == 0) {
+                    if (c < asciiClasses.length) {
+                        asciiClasses[c] = classCount++;
+                    } else {
+                        otherClasses.put(c, classCount++);
+                    }
+                }
+            }
+        }
+        classes = classCount;
+        lengths = keywords.stream().mapToInt(String::length).toArray();
+
+        // Trie of the keywords, with -1 for a missing transition
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(emptyState());
+        ends.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            int state = 0;
+            for (char c : keywords.get(k).toCharArray()) {
+                int cls = classOf(c);
+                if (trie.get(state)[cls] < 0) {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(emptyState());
+                    ends.add(new ArrayList<>());
+                }
+                state = trie.get(state)[cls];
+            }
+            ends.get(state).add(k);
+        }
+
+        // Breadth first, so that the suffix of a state is complete before the state itself
+        int states = trie.size();
+        int[] suffix = new int[states];
+        transitions = new int[states * classes];
+        outputs = new int[states][];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int cls = 0; cls < classes; cls++) {
+            int next = trie.get(0)[cls];
+            transitions[cls] = Math.max(next, 0);
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        outputs[0] = new int[0];
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> found = new ArrayList<>(ends.get(state));
+            for (int keyword : outputs[suffix[state]]) {
+                found.add(keyword);
+            }
+            outputs[state] = found.stream().mapToInt(Integer::intValue).toArray();
+            for (int cls = 0; cls < classes; cls++) {
+                int next = trie.get(state)[cls];
+                if (next > 0) {
+                    suffix[next] = transitions[suffix[state] * classes + cls];
+                    transitions[state * classes + cls] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * classes + cls] = transitions[suffix[state] * classes + cls];
+                }
+            }
+        }
+    }
+
+    /**
+     * Report every occurrence of a keyword in a text, in the order they end
+     */
+    void scan(CharSequence text, Listener listener) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * classes + classOf(text.charAt(i))];
+            for (int keyword : outputs[state]) {
+                listener.found(keyword, i + 1 - lengths[keyword], i + 1);
+            }
+        }
+    }
+
+    private int classOf(char c) {
+        return c < asciiClasses.length ? asciiClasses[c] : otherClasses.getOrDefault(c, 0);
+    }
+
+    private int[] emptyState() {
+        int[] state = new int[classes];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    interface Listener {
+
+        /**
+         * @param keyword index of the keyword found
+         * @param start   offset of its first character in the text
+         * @param end     offset after its last character
+         */
+        void found(int keyword, int start, int end);
+    }
+}
@@ -3,148 +3,305 @@ package com.codecritic.service;
 import com.codecritic.model.PullRequest;
 import com.codecritic.model.ModifiedFile;
 import com.codecritic.model.AnalysisReport;
-import com.codecritic.model.AnalysisIssue;
 import com.codecritic.model.AIReview;
-import com.codecritic.model.ReviewComment;
+import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.InlineComment;
+import com.codecritic.pipeline.AIReviewStage;
+import com.codecritic.pipeline.DiffLineIndex;
+import com.codecritic.pipeline.ReviewPipeline;
+import com.codecritic.pipeline.StaticAnalysisStage;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Service
 public class PRAnalysisService {
 
     private static final Logger logger = LoggerFactory.getLogger(PRAnalysisService.class);
     
-    private final StaticAnalysisService staticAnalysisService;
-    private final AIReviewService aiReviewService;
+    private final ReviewPipeline reviewPipeline;
+    private final GitHubService gitHubService;
     private final GitHubCommentService gitHubCommentService;
+    private final Executor githubExecutor;
+    private final ReviewResultStore reviewResultStore;
+    private final ReviewCommentFormatter reviewCommentFormatter;
+    private final ProgressiveReviewPublisher progressivePublisher;
+    
+    @Value("${review.incremental.enabled:true}")
+    private boolean incrementalEnabled;
+    
+    @Value("${review.inline-comments.enabled:true}")
+    private boolean inlineCommentsEnabled;
+    
+    @Value("${github.files.streaming.max-in-flight-files:32}")
+    private int maxInFlightFiles;
     
     public PRAnalysisService(
-            StaticAnalysisService staticAnalysisService,
-            AIReviewService aiReviewService,
-            GitHubCommentService gitHubCommentService) {
-        this.staticAnalysisService = staticAnalysisService;
-        this.aiReviewService = aiReviewService;
+            ReviewPipeline reviewPipeline,
+            GitHubService gitHubService,
+            GitHubCommentService gitHubCommentService,
+            @Qualifier("githubExecutor") Executor githubExecutor,
+            ReviewResultStore reviewResultStore,
+            ReviewCommentFormatter reviewCommentFormatter,
+            ProgressiveReviewPublisher progressivePublisher) {
+        this.reviewPipeline = reviewPipeline;
+        this.gitHubService = gitHubService;
         this.gitHubCommentService = gitHubCommentService;
+        this.githubExecutor = githubExecutor;
+        this.reviewResultStore = reviewResultStore;
+        this.reviewCommentFormatter = reviewCommentFormatter;
+        this.progressivePublisher = progressivePublisher;
     }
     
     /**
-     * Analyze a pull request by running static analysis and AI review
+     * Analyze a pull request by running each file through the review pipeline
+     * <p>
+     * In incremental mode, files whose blob SHA was already reviewed for this PR reuse the earlier
+     * results and only changed files are analyzed again. In progressive mode, a placeholder
+     * comment is posted right away and edited as files complete. Issues on changed lines are
+     * also submitted as inline comments of a single pull request review. When the pull request comes
+     * without its files, they are streamed from GitHub and each file enters the pipeline as soon
+     * as its page arrives.
+     * 
+     * @return a future that completes once the review comment has been posted. Cancelling it
+     *         aborts the per-file analyses, including in-flight AI calls, and nothing is posted.
      */
-    public void analyzePullRequest(PullRequest pullRequest) {
+    public CompletableFuture<Void> analyzePullRequest(PullRequest pullRequest) {
         logger.info("Analyzing pull request: {} by {}", pullRequest.getTitle(), pullRequest.getAuthor());
         
-        List<CompletableFuture<AnalysisReport>> staticAnalysisFutures = new ArrayList<>();
-        List<CompletableFuture<AIReview>> aiReviewFutures = new ArrayList<>();
+        ReviewPipeline.Run run = reviewPipeline.start(pullRequest);
+        List<CompletableFuture<FileReviewResult>> fileFutures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger reused = new AtomicInteger();
+        List<ModifiedFile> modifiedFiles = pullRequest.getModifiedFiles();
         
-        // Process each modified file
-        for (ModifiedFile file : pullRequest.getModifiedFiles()) {
-            // Skip deleted files
-            if (file.getChangeType() == ModifiedFile.ChangeType.DELETED) {
-                continue;
+        // Publish each file as soon as it is done
+        ProgressiveReviewPublisher.Session session = null;
+        if (progressivePublisher.isEnabled()) {
+            if (modifiedFiles == null) {
+                session = progressivePublisher.open(pullRequest, ReviewCommentFormatter.UNKNOWN_TOTAL);
+            } else {
+                int reviewable = (int) modifiedFiles.stream()
+                        .filter(file -> file.getChangeType() != ModifiedFile.ChangeType.DELETED)
+                        .count();
+                session = reviewable > 0 ? progressivePublisher.open(pullRequest, reviewable) : null;
             }
-            
-            // Run static analysis
-            CompletableFuture<AnalysisReport> staticAnalysisFuture = 
-                    CompletableFuture.supplyAsync(() -> staticAnalysisService.analyzeFile(file));
-            staticAnalysisFutures.add(staticAnalysisFuture);
-            
-            // Generate AI review
-            CompletableFuture<AIReview> aiReviewFuture = 
-                    CompletableFuture.supplyAsync(() -> aiReviewService.generateReview(file));
-            aiReviewFutures.add(aiReviewFuture);
         }
+        ProgressiveReviewPublisher.Session progress = session;
         
-        // Wait for all analysis tasks to complete
-        CompletableFuture<Void> allAnalyses = CompletableFuture.allOf(
-                staticAnalysisFutures.toArray(new CompletableFuture[0]));
+        Function<ModifiedFile, CompletableFuture<FileReviewResult>> submitFile = file -> {
+            CompletableFuture<FileReviewResult> fileFuture = reviewFile(pullRequest, run, file, reused);
+            fileFutures.add(fileFuture);
+            if (progress != null) {
+                fileFuture.thenAccept(progress::fileCompleted);
+            }
+            return fileFuture;
+        };
+        
+        CompletableFuture<Void> allSubmitted;
+        if (modifiedFiles != null) {
+            modifiedFiles.stream()
+                    .filter(file -> file.getChangeType() != ModifiedFile.ChangeType.DELETED)
+                    .forEach(submitFile::apply);
+            allSubmitted = CompletableFuture.completedFuture(null);
+        } else {
+            allSubmitted = new CompletableFuture<>();
+            gitHubService.streamModifiedFiles(pullRequest).subscribe(new FileSubscriber(submitFile, allSubmitted));
+        }
         
-        CompletableFuture<Void> allReviews = CompletableFuture.allOf(
-                aiReviewFutures.toArray(new CompletableFuture[0]));
+        CompletableFuture<Void> result = new CompletableFuture<>();
         
-        // When all analyses are complete, combine results and post comments
-        allAnalyses.thenCombine(allReviews, (v1, v2) -> {
-            List<AnalysisReport> reports = staticAnalysisFutures.stream()
-                    .map(CompletableFuture::join)
-                    .toList();
-            
-            List<AIReview> reviews = aiReviewFutures.stream()
-                    .map(CompletableFuture::join)
-                    .toList();
-            
-            return createReviewComment(pullRequest, reports, reviews);
-        }).thenAccept(comment -> {
-            gitHubCommentService.postComment(pullRequest, comment);
-        }).exceptionally(ex -> {
-            logger.error("Error during pull request analysis: {}", ex.getMessage(), ex);
-            return null;
+        // When all files are complete, combine results and post comments
+        allSubmitted.thenCompose(v -> CompletableFuture.allOf(fileFutures.toArray(new CompletableFuture[0])))
+                .thenApply(v -> {
+                    List<FileReviewResult> results = fileFutures.stream()
+                            .map(CompletableFuture::join)
+                            .toList();
+                    
+                    if (reused.get() > 0) {
+                        logger.info("Reused results for {} unchanged file(s) of PR #{}, analyzed {}",
+                                reused.get(), pullRequest.getPrId(), results.size() - reused.get());
+                    }
+                    if (incrementalEnabled) {
+                        reviewResultStore.retainReviewed(pullRequest, results);
+                    }
+                    return results;
+                }).thenCompose(results -> {
+                    CompletableFuture<Void> summary;
+                    if (progress != null) {
+                        summary = progress.complete(results);
+                    } else {
+                        summary = CompletableFuture.runAsync(() -> {
+                            if (!result.isCancelled()) {
+                                gitHubCommentService.postComment(pullRequest,
+                                        reviewCommentFormatter.format(pullRequest, results, results.size()));
+                            }
+                        }, githubExecutor);
+                    }
+                    return inlineCommentsEnabled
+                            ? summary.thenRunAsync(() -> submitInlineComments(pullRequest, results, result), githubExecutor)
+                            : summary;
+                }).whenComplete((v, ex) -> {
+                    if (ex != null && !result.isCancelled()) {
+                        logger.error("Error during pull request analysis: {}", ex.getMessage(), ex);
+                        if (progress != null) {
+                            progress.stop("the analysis failed.");
+                        }
+                    }
+                    result.complete(null);
+                });
+        
+        // A superseded review stops listing files and its outstanding per-file work
+        result.whenComplete((v, ex) -> {
+            if (result.isCancelled()) {
+                logger.info("Analysis of PR #{} cancelled", pullRequest.getPrId());
+                allSubmitted.cancel(false);
+                run.cancel();
+                if (progress != null) {
+                    progress.stop("the pull request was updated, a review of the latest commit follows.");
+                }
+            }
         });
+        
+        return result;
     }
     
     /**
-     * Create a review comment by combining static analysis and AI review results
+     * Submit the issues found on changed lines as one batched pull request review
      */
-    private ReviewComment createReviewComment(PullRequest pullRequest, 
-                                              List<AnalysisReport> reports, 
-                                              List<AIReview> reviews) {
-        StringBuilder commentBuilder = new StringBuilder();
-        
-        commentBuilder.append("# CodeCritic-J Analysis\n\n");
-        commentBuilder.append("Analysis completed at: ").append(Instant.now()).append("\n\n");
+    private void submitInlineComments(PullRequest pullRequest, List<FileReviewResult> results,
+                                      CompletableFuture<Void> result) {
+        List<InlineComment> comments = reviewCommentFormatter.formatInlineComments(results);
+        if (comments.isEmpty() || result.isCancelled()) {
+            return;
+        }
+        gitHubService.submitReview(pullRequest,
+                "CodeCritic-J found " + comments.size() + " issue(s) on changed lines.", comments);
+    }
+    
+    /**
+     * Reuse the result of a blob that was already reviewed, or run the stages of the pipeline
+     */
+    private CompletableFuture<FileReviewResult> reviewFile(PullRequest pullRequest, ReviewPipeline.Run run,
+                                                           ModifiedFile file, AtomicInteger reused) {
+        FileReviewResult previous = incrementalEnabled ? reviewResultStore.find(pullRequest, file) : null;
+        if (previous != null) {
+            reused.incrementAndGet();
+            return CompletableFuture.completedFuture(carryOver(previous, file));
+        }
         
-        // Add static analysis summary
-        commentBuilder.append("## Static Analysis Results\n\n");
-        if (reports.isEmpty()) {
-            commentBuilder.append("No static analysis results available.\n\n");
-        } else {
-            int totalIssues = reports.stream()
-                    .map(r -> r.getIssues().size())
-                    .reduce(0, Integer::sum);
-            
-            commentBuilder.append("Found ").append(totalIssues).append(" issue(s) across ")
-                    .append(reports.size()).append(" file(s).\n\n");
-            
-            for (AnalysisReport report : reports) {
-                if (!report.getIssues().isEmpty()) {
-                    commentBuilder.append("### ").append(report.getFileId()).append("\n\n");
-                    
-                    for (AnalysisIssue issue : report.getIssues()) {
-                        commentBuilder.append("- **").append(issue.getSeverity()).append("**: ");
-                        commentBuilder.append(issue.getDescription()).append(" (Line ").append(issue.getLineNumber()).append(")\n");
-                    }
-                    commentBuilder.append("\n");
+        CompletableFuture<FileReviewResult> fileFuture = run.submit(file).thenApply(stageResults ->
+                FileReviewResult.builder()
+                        .filePath(file.getFilePath())
+                        .blobSha(file.getFileId())
+                        .report(stageResults.get(StaticAnalysisStage.NAME, AnalysisReport.class))
+                        .review(stageResults.get(AIReviewStage.NAME, AIReview.class))
+                        .build());
+        if (incrementalEnabled) {
+            fileFuture.thenAccept(result -> reviewResultStore.record(pullRequest, result));
+        }
+        return fileFuture;
+    }
+    
+    /**
+     * Reuse the result of an unchanged blob on the file's current patch. The post-change lines of
+     * its issues still hold, but after a rebase or force-push the patch differs from the one their
+     * diff positions refer to, so each issue is placed on the current patch again, and issues on
+     * lines it no longer adds are dropped. The stored result is left as it is.
+     */
+    private FileReviewResult carryOver(FileReviewResult previous, ModifiedFile file) {
+        AnalysisReport report = previous.getReport();
+        if (report != null && report.getIssues() != null) {
+            DiffLineIndex index = DiffLineIndex.parse(file.getDiffContent());
+            List<AnalysisIssue> issues = new ArrayList<>();
+            for (AnalysisIssue issue : report.getIssues()) {
+                // Issues about the whole file have no line and no position
+                Integer position = issue.getLineNumber() > 0 ? index.positionOf(issue.getLineNumber()) : null;
+                if (issue.getLineNumber() > 0 && position == null) {
+                    continue;
                 }
+                issues.add(AnalysisIssue.builder()
+                        .issueId(issue.getIssueId())
+                        .description(issue.getDescription())
+                        .severity(issue.getSeverity())
+                        .lineNumber(issue.getLineNumber())
+                        .columnNumber(issue.getColumnNumber())
+                        .diffPosition(position)
+                        .build());
             }
+            report = AnalysisReport.builder()
+                    .reportId(report.getReportId())
+                    .generatedAt(report.getGeneratedAt())
+                    .fileId(report.getFileId())
+                    .issues(issues)
+                    .failed(report.isFailed())
+                    .build();
         }
+        return FileReviewResult.builder()
+                .filePath(previous.getFilePath())
+                .blobSha(previous.getBlobSha())
+                .report(report)
+                .review(previous.getReview())
+                .carriedOver(true)
+                .build();
+    }
+    
+    /**
+     * Submits streamed files to the pipeline, keeping at most {@code maxInFlightFiles} of them
+     * requested but not yet reviewed. Completes {@code allSubmitted} once the last file has been
+     * submitted, and cancels the stream when it is cancelled.
+     */
+    private final class FileSubscriber implements Flow.Subscriber<ModifiedFile> {
+        private final Function<ModifiedFile, CompletableFuture<FileReviewResult>> submitFile;
+        private final CompletableFuture<Void> allSubmitted;
+        private Flow.Subscription subscription;
         
-        // Add AI review results
-        commentBuilder.append("## AI Code Review\n\n");
-        if (reviews.isEmpty()) {
-            commentBuilder.append("No AI reviews available.\n\n");
-        } else {
-            logger.info("Adding {} AI reviews to comment", reviews.size());
-            for (AIReview review : reviews) {
-                if (review.getAiFeedback() != null && !review.getAiFeedback().isEmpty()) {
-                    commentBuilder.append(review.getAiFeedback()).append("\n\n");
-                    logger.info("Added AI review feedback: {}", review.getAiFeedback().substring(0, 
-                        Math.min(100, review.getAiFeedback().length())) + "...");
+        private FileSubscriber(Function<ModifiedFile, CompletableFuture<FileReviewResult>> submitFile,
+                               CompletableFuture<Void> allSubmitted) {
+            this.submitFile = submitFile;
+            this.allSubmitted = allSubmitted;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            allSubmitted.whenComplete((v, ex) -> {
+                if (allSubmitted.isCancelled()) {
+                    subscription.cancel();
                 }
+            });
+            subscription.request(maxInFlightFiles);
+        }
+        
+        @Override
+        public void onNext(ModifiedFile file) {
+            // Skip deleted files
+            if (file.getChangeType() == ModifiedFile.ChangeType.DELETED) {
+                subscription.request(1);
+                return;
             }
+            submitFile.apply(file).whenComplete((r, ex) -> subscription.request(1));
         }
         
-        String content = commentBuilder.toString();
-        logger.info("Created review comment with {} characters", content.length());
+        @Override
+        public void onError(Throwable throwable) {
+            allSubmitted.completeExceptionally(throwable);
+        }
         
-        return ReviewComment.builder()
-                .commentId(UUID.randomUUID().toString())
-                .content(content)
-                .createdAt(Instant.now())
-                .build();
+        @Override
+        public void onComplete() {
+            allSubmitted.complete(null);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,328 @@
+package com.codecritic.service;
+
+import com.puppycrawl.tools.checkstyle.DetailAstImpl;
+import com.puppycrawl.tools.checkstyle.JavaParser;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.TokenTypes;
+import com.puppycrawl.tools.checkstyle.utils.TokenUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Java source parsed once and shared by every analysis of the file.
+ * <p>
+ * Holds Checkstyle's syntax tree of the source with what is derived from it: the token stream
+ * including comments, the offset of every line and an outline of the declared types, methods and
+ * constructors. A source that is not valid Java, such as a bare patch, keeps its lines and line
+ * offsets but has no tree, tokens or outline.
+ */
+public final class ParsedSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParsedSource.class);
+
+    private static final Pattern LINE_BREAK = Pattern.compile("\\r\\n|\\r|\\n");
+
+    private static final Map<Integer, Kind> DECLARATIONS = Map.of(
+            TokenTypes.CLASS_DEF, Kind.CLASS,
+            TokenTypes.INTERFACE_DEF, Kind.INTERFACE,
+            TokenTypes.ENUM_DEF, Kind.ENUM,
+            TokenTypes.RECORD_DEF, Kind.RECORD,
+            TokenTypes.ANNOTATION_DEF, Kind.ANNOTATION,
+            TokenTypes.METHOD_DEF, Kind.METHOD,
+            TokenTypes.CTOR_DEF, Kind.CONSTRUCTOR,
+            TokenTypes.COMPACT_CTOR_DEF, Kind.CONSTRUCTOR);
+
+    private final String path;
+    private final String source;
+    private final FileContents fileContents;
+    private final int[] lineOffsets;
+    private final DetailAST ast;
+    private final List<Token> tokens;
+    private final List<Declaration> outline;
+    private boolean commentNodes;
+
+    private ParsedSource(String path, String source, FileContents fileContents, int[] lineOffsets, DetailAST ast) {
+        this.path = path;
+        this.source = source;
+        this.fileContents = fileContents;
+        this.lineOffsets = lineOffsets;
+        this.ast = ast;
+        this.tokens = ast != null ? Collections.unmodifiableList(tokens(ast)) : List.of();
+        this.outline = ast != null ? Collections.unmodifiableList(outline(ast)) : List.of();
+    }
+
+    /**
+     * Parse a source; a source that is not valid Java is returned without a tree
+     *
+     * @param path path of the source, used as its file name
+     */
+    public static ParsedSource parse(String path, String source) {
+        FileText text = new FileText(new File(path), lines(source));
+        FileContents contents = new FileContents(text);
+        DetailAST ast = null;
+        try {
+            // Also reports the comments to the file contents, as Checkstyle's own parse does
+            ast = JavaParser.parse(contents);
+        } catch (CheckstyleException | RuntimeException e) {
+            logger.debug("{} is not valid Java: {}", path, e.getMessage());
+        }
+        return new ParsedSource(path, source, contents, lineOffsets(source), ast);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Whether the source is valid Java and has a syntax tree
+     */
+    public boolean isParsed() {
+        return ast != null;
+    }
+
+    /**
+     * The lines of the source with the comments found while parsing, as Checkstyle checks see them
+     */
+    public FileContents getFileContents() {
+        return fileContents;
+    }
+
+    /**
+     * Root of the syntax tree without comment nodes, or null if the source is not valid Java.
+     * Once {@link #getAstWithComments()} was called the tree contains comment nodes as well.
+     */
+    public DetailAST getAst() {
+        return ast;
+    }
+
+    /**
+     * Root of the syntax tree with comment nodes. Checkstyle adds them to the tree in place, so the
+     * first call changes the tree returned by {@link #getAst()}; walk the plain tree before.
+     */
+    public synchronized DetailAST getAstWithComments() {
+        if (ast != null && !commentNodes) {
+            JavaParser.appendHiddenCommentNodes(ast);
+            commentNodes = true;
+        }
+        return ast;
+    }
+
+    /**
+     * Whether the tree contains comment nodes already
+     */
+    public synchronized boolean hasCommentNodes() {
+        return commentNodes;
+    }
+
+    /**
+     * Tokens of the source in order, including comments
+     */
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Declared types, methods and constructors, each before the declarations it contains
+     */
+    public List<Declaration> getOutline() {
+        return outline;
+    }
+
+    /**
+     * The innermost declaration containing a line
+     *
+     * @return the declaration, or null if the line is outside all of them
+     */
+    public Declaration enclosing(int line) {
+        Declaration innermost = null;
+        for (Declaration declaration : outline) {
+            if (declaration.beginLine() <= line && line <= declaration.endLine()) {
+                innermost = declaration;
+            }
+        }
+        return innermost;
+    }
+
+    public int getLineCount() {
+        return lineOffsets.length;
+    }
+
+    /**
+     * Offset in the source of a position
+     *
+     * @param line   line number, starting at 1
+     * @param column character index in the line, starting at 0
+     */
+    public int offsetOf(int line, int column) {
+        return lineOffsets[line - 1] + column;
+    }
+
+    /**
+     * Line number, starting at 1, of an offset in the source
+     */
+    public int lineOf(int offset) {
+        int index = Arrays.binarySearch(lineOffsets, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Split a source into lines the way {@link FileText} splits a file it reads
+     */
+    static List<String> lines(String source) {
+        List<String> lines = new ArrayList<>(Arrays.asList(LINE_BREAK.split(source, -1)));
+        if (lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private static int[] lineOffsets(String source) {
+        int[] offsets = new int[16];
+        int lines = 1;
+        Matcher lineBreak = LINE_BREAK.matcher(source);
+        while (lineBreak.find()) {
+            if (lineBreak.end() == source.length()) {
+                break;
+            }
+            if (lines == offsets.length) {
+                offsets = Arrays.copyOf(offsets, lines * 2);
+            }
+            offsets[lines++] = lineBreak.end();
+        }
+        return Arrays.copyOf(offsets, lines);
+    }
+
+    /**
+     * The tokens behind the nodes of the tree and the comments hidden between them
+     */
+    private static List<Token> tokens(DetailAST root) {
+        List<Token> tokens = new ArrayList<>();
+        Set<Integer> comments = new HashSet<>();
+        Deque<DetailAST> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            DetailAST node = pending.pop();
+            if (node instanceof DetailAstImpl impl) {
+                addComments(impl.getHiddenBefore(), comments, tokens);
+                addComments(impl.getHiddenAfter(), comments, tokens);
+            }
+            // Imaginary nodes such as METHOD_DEF carry their type name instead of source text
+            if (node.getType() == TokenTypes.IDENT || !TokenUtil.getTokenName(node.getType()).equals(node.getText())) {
+                tokens.add(new Token(node.getType(), node.getText(), node.getLineNo(), node.getColumnNo()));
+            }
+            if (node.getNextSibling() != null) {
+                pending.push(node.getNextSibling());
+            }
+            if (node.getFirstChild() != null) {
+                pending.push(node.getFirstChild());
+            }
+        }
+        tokens.sort(Comparator.comparingInt(Token::line).thenComparingInt(Token::column));
+        return tokens;
+    }
+
+    private static void addComments(List<org.antlr.v4.runtime.Token> hidden, Set<Integer> seen, List<Token> tokens) {
+        if (hidden == null) {
+            return;
+        }
+        for (org.antlr.v4.runtime.Token comment : hidden) {
+            // A comment is hidden before every node that starts at the token after it
+            if (seen.add(comment.getTokenIndex())) {
+                int type = comment.getText().startsWith("//")
+                        ? TokenTypes.SINGLE_LINE_COMMENT
+                        : TokenTypes.BLOCK_COMMENT_BEGIN;
+                tokens.add(new Token(type, comment.getText(), comment.getLine(), comment.getCharPositionInLine()));
+            }
+        }
+    }
+
+    private static List<Declaration> outline(DetailAST root) {
+        List<Declaration> outline = new ArrayList<>();
+        Deque<DetailAST> nodes = new ArrayDeque<>();
+        Deque<String> prefixes = new ArrayDeque<>();
+        nodes.push(root);
+        prefixes.push("");
+        while (!nodes.isEmpty()) {
+            DetailAST node = nodes.pop();
+            String prefix = prefixes.pop();
+            if (node.getNextSibling() != null) {
+                nodes.push(node.getNextSibling());
+                prefixes.push(prefix);
+            }
+            Kind kind = DECLARATIONS.get(node.getType());
+            String childPrefix = prefix;
+            if (kind != null) {
+                DetailAST ident = node.findFirstToken(TokenTypes.IDENT);
+                String name = prefix + (ident != null ? ident.getText() : node.getText());
+                outline.add(new Declaration(kind, name, node.getLineNo(), lastLine(node)));
+                childPrefix = name + ".";
+            }
+            if (node.getFirstChild() != null) {
+                nodes.push(node.getFirstChild());
+                prefixes.push(childPrefix);
+            }
+        }
+        return outline;
+    }
+
+    private static int lastLine(DetailAST node) {
+        DetailAST last = node;
+        while (last.getLastChild() != null) {
+            last = last.getLastChild();
+        }
+        return last.getLineNo();
+    }
+
+    public enum Kind {
+        CLASS,
+        INTERFACE,
+        ENUM,
+        RECORD,
+        ANNOTATION,
+        METHOD,
+        CONSTRUCTOR
+    }
+
+    /**
+     * A token of the source
+     *
+     * @param type   Checkstyle token type, see {@link TokenTypes}
+     * @param line   line number, starting at 1
+     * @param column character index in the line, starting at 0
+     */
+    public record Token(int type, String text, int line, int column) {
+
+        public boolean isComment() {
+            return type == TokenTypes.SINGLE_LINE_COMMENT || type == TokenTypes.BLOCK_COMMENT_BEGIN;
+        }
+    }
+
+    /**
+     * A declared type, method or constructor
+     *
+     * @param name name qualified with the enclosing declarations, such as {@code Outer.Inner.run}
+     */
+    public record Declaration(Kind kind, String name, int beginLine, int endLine) {
+    }
+}
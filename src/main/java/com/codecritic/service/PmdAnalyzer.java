@@ -0,0 +1,169 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.RuleViolation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs PMD in-process with rule sets that are loaded once and reused.
+ * <p>
+ * The rule sets named by {@code static.analysis.pmd.rulesets} are parsed on first use. Each batch
+ * of files, normally all files of a pull request, is analyzed in one PMD run on
+ * {@code static.analysis.pmd.threads} threads of its own, at most one per file. The default of 0
+ * runs it on the calling thread, since batches of different pull requests already run in parallel
+ * on the cores-sized static analysis executor. PMD gives every run its own copy of the rules, so
+ * concurrent runs can share the loaded rule sets.
+ */
+@Component
+public class PmdAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PmdAnalyzer.class);
+
+    private final List<String> ruleSetPaths;
+    private final int threads;
+    private volatile List<RuleSet> ruleSets;
+    private volatile String fingerprint;
+
+    public PmdAnalyzer(
+            @Value("${static.analysis.pmd.rulesets:category/java/bestpractices.xml,category/java/errorprone.xml}")
+            List<String> ruleSetPaths,
+            @Value("${static.analysis.pmd.threads:0}") int threads) {
+        this.ruleSetPaths = ruleSetPaths;
+        this.threads = threads;
+    }
+
+    /**
+     * Analyze a batch of sources in one PMD run, without reading them from disk
+     *
+     * @param paths   path of each source, which also selects its language
+     * @param sources content of each file
+     * @return the issues of each file, in the order of {@code paths}
+     */
+    public List<List<AnalysisIssue>> analyze(List<String> paths, List<String> sources) {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(Math.min(threads, paths.size()));
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        Map<String, List<AnalysisIssue>> issuesByFile = new HashMap<>();
+        Report report;
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            pmd.addRuleSets(loadRuleSets(configuration));
+            for (int i = 0; i < paths.size(); i++) {
+                issuesByFile.put(paths.get(i), new ArrayList<>());
+                pmd.files().addSourceFile(sources.get(i), paths.get(i));
+            }
+            report = pmd.performAnalysisAndCollectReport();
+        }
+
+        for (RuleViolation violation : report.getViolations()) {
+            List<AnalysisIssue> issues = issuesByFile.get(violation.getFilename());
+            if (issues != null) {
+                issues.add(toIssue(violation));
+            }
+        }
+        for (Report.ProcessingError error : report.getProcessingErrors()) {
+            // Typically a bare patch that is not valid Java
+            logger.debug("PMD could not analyze {}: {}", error.getFile(), error.getMsg());
+        }
+
+        List<List<AnalysisIssue>> issues = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            issues.add(issuesByFile.get(path));
+        }
+        return issues;
+    }
+
+    /**
+     * Fingerprint of the configured rule sets and the PMD version. Rule sets are loaded only once,
+     * so the fingerprint does not change while the application runs.
+     */
+    public String fingerprint() {
+        String current = fingerprint;
+        if (current == null) {
+            List<byte[]> parts = new ArrayList<>();
+            parts.add(PMDVersion.VERSION.getBytes(StandardCharsets.UTF_8));
+            for (String path : ruleSetPaths) {
+                parts.add(path.getBytes(StandardCharsets.UTF_8));
+                parts.add(readRuleSet(path));
+            }
+            current = AnalysisResultCache.fingerprint(parts);
+            fingerprint = current;
+        }
+        return current;
+    }
+
+    /**
+     * Content of a rule set file or classpath resource, or nothing if PMD resolves it otherwise
+     */
+    private byte[] readRuleSet(String path) {
+        try {
+            Path file = Path.of(path);
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+                return in != null ? in.readAllBytes() : new byte[0];
+            }
+        } catch (IOException | InvalidPathException e) {
+            return new byte[0];
+        }
+    }
+
+    private List<RuleSet> loadRuleSets(PMDConfiguration configuration) {
+        List<RuleSet> loaded = ruleSets;
+        if (loaded == null) {
+            synchronized (this) {
+                if (ruleSets == null) {
+                    ruleSets = RuleSetLoader.fromPmdConfig(configuration).loadFromResources(ruleSetPaths);
+                    logger.info("Loaded PMD rule sets {}", ruleSetPaths);
+                }
+                loaded = ruleSets;
+            }
+        }
+        return loaded;
+    }
+
+    private static AnalysisIssue toIssue(RuleViolation violation) {
+        return AnalysisIssue.builder()
+                .issueId(UUID.randomUUID().toString())
+                .description(violation.getRule().getName() + ": " + violation.getDescription())
+                .severity(mapPriority(violation.getRule().getPriority()))
+                .lineNumber(violation.getBeginLine())
+                .columnNumber(violation.getBeginColumn())
+                .build();
+    }
+
+    private static AnalysisIssue.Severity mapPriority(RulePriority priority) {
+        switch (priority) {
+            case HIGH:
+                return AnalysisIssue.Severity.HIGH;
+            case MEDIUM_HIGH:
+            case MEDIUM:
+                return AnalysisIssue.Severity.MEDIUM;
+            default:
+                return AnalysisIssue.Severity.LOW;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.puppycrawl.tools.checkstyle.api.TokenTypes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First tier of static analysis: a rule pack matched in one pass over the tokens of each Java file,
+ * whose findings are reported with those of PMD and Checkstyle.
+ * <p>
+ * The keywords of all rules are compiled into one {@link KeywordAutomaton} run over the code tokens
+ * of a {@link ParsedSource}, identifiers lowercased and comments left out; a source that is not
+ * valid Java, such as a bare patch, is split into tokens by a simple lexer instead. Each keyword
+ * found is confirmed on the tokens around it.
+ * <p>
+ * PMD and Checkstyle still analyze every file: nearly all of their rules are about structure that
+ * no keyword can show absent, so a file without findings here is not known to be clean. Scan time
+ * and files by whether they were flagged are recorded in the {@code codecritic.analysis.prescreen.*}
+ * metrics.
+ */
+@Component
+public class PreScreenAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreScreenAnalyzer.class);
+
+    private static final String SECRETS = "secrets";
+    private static final String CONSOLE_OUTPUT = "console-output";
+    private static final String EMPTY_CATCH = "empty-catch";
+    private static final String BANNED_IMPORTS = "banned-imports";
+
+    private final boolean enabled;
+    private final String fingerprint;
+    private final List<String> keywords = new ArrayList<>();
+    /** Keywords as configured, for describing findings */
+    private final List<String> names = new ArrayList<>();
+    private final List<Match> matches = new ArrayList<>();
+    private final KeywordAutomaton automaton;
+
+    private final Timer scans;
+    private final Counter flaggedFiles;
+    private final Counter cleanFiles;
+
+    public PreScreenAnalyzer(
+            MeterRegistry meterRegistry,
+            @Value("${static.analysis.prescreen.enabled:true}") boolean enabled,
+            @Value("${static.analysis.prescreen.rules:secrets,console-output,empty-catch,banned-imports}") Set<String> rules,
+            @Value("${static.analysis.prescreen.secret-names:password,passwd,secret,apikey,api_key,accesskey,access_key,token}") List<String> secretNames,
+            @Value("${static.analysis.prescreen.secret-prefixes:AKIA,ghp_,github_pat_,xoxb-,xoxp-,sk_live_,-----BEGIN}") List<String> secretPrefixes,
+            @Value("${static.analysis.prescreen.console-output:System.out,System.err}") List<String> consoleOutput,
+            @Value("${static.analysis.prescreen.banned-imports:sun.,com.sun.,jdk.internal.}") List<String> bannedImports) {
+        this.enabled = enabled;
+        if (rules.contains(SECRETS)) {
+            // Identifiers are compared lowercased, string contents as they are
+            secretNames.forEach(name -> addKeyword(name.toLowerCase(Locale.ROOT), Match.SECRET_NAME, name));
+            secretPrefixes.forEach(prefix -> addKeyword(prefix, Match.SECRET_VALUE, prefix));
+        }
+        if (rules.contains(CONSOLE_OUTPUT)) {
+            consoleOutput.forEach(call -> addKeyword(call.toLowerCase(Locale.ROOT), Match.CONSOLE_OUTPUT, call));
+        }
+        if (rules.contains(EMPTY_CATCH)) {
+            addKeyword("catch", Match.EMPTY_CATCH, "catch");
+        }
+        if (rules.contains(BANNED_IMPORTS)) {
+            bannedImports.forEach(name -> addKeyword(name.toLowerCase(Locale.ROOT), Match.BANNED_IMPORT, name));
+        }
+        this.automaton = new KeywordAutomaton(keywords);
+        this.fingerprint = enabled ? "prescreen:" + String.join(",", keywords) + ":" + matches : "-";
+        if (enabled) {
+            logger.info("Static analysis pre-screen matches {} keyword(s)", keywords.size());
+        }
+
+        this.scans = Timer.builder("codecritic.analysis.prescreen.scan")
+                .description("Time spent pre-screening a file")
+                .register(meterRegistry);
+        this.flaggedFiles = files(meterRegistry, true);
+        this.cleanFiles = files(meterRegistry, false);
+    }
+
+    private static Counter files(MeterRegistry meterRegistry, boolean flagged) {
+        return Counter.builder("codecritic.analysis.prescreen.files")
+                .description("Files pre-screened, by whether the rule pack found anything in them")
+                .tag("flagged", String.valueOf(flagged))
+                .register(meterRegistry);
+    }
+
+    private void addKeyword(String keyword, Match match, String name) {
+        if (!keyword.isBlank()) {
+            keywords.add(keyword);
+            names.add(name);
+            matches.add(match);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Identifies the rule pack, for caching results produced under it
+     */
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Match the rule pack against a source
+     *
+     * @return the findings on the source, none if the pre-screen is disabled
+     */
+    public List<AnalysisIssue> screen(ParsedSource source) {
+        if (!enabled) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        TokenStream stream = source.isParsed() ? TokenStream.of(source.getTokens()) : TokenStream.lex(source.getSource());
+        List<AnalysisIssue> issues = new ArrayList<>();
+        Set<Long> reported = new HashSet<>();
+        automaton.scan(stream.text, (keyword, from, to) -> {
+            int token = stream.tokenAt(from);
+            Match match = matches.get(keyword);
+            // One finding per kind of match and token, however many keywords it contains
+            if (match.confirm(stream, token, from, to) && reported.add((long) token << 3 | match.ordinal())) {
+                issues.add(issue(match, keyword, stream, token));
+            }
+        });
+        scans.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        (issues.isEmpty() ? cleanFiles : flaggedFiles).increment();
+        return issues;
+    }
+
+    private AnalysisIssue issue(Match match, int keyword, TokenStream stream, int token) {
+        String description = switch (match) {
+            case SECRET_NAME -> "Possible hard-coded secret assigned to " + stream.texts[token];
+            case SECRET_VALUE -> "Possible hard-coded secret: string starts with " + names.get(keyword);
+            case CONSOLE_OUTPUT -> "Use a logger instead of " + names.get(keyword);
+            case EMPTY_CATCH -> "Empty catch block hides the exception";
+            case BANNED_IMPORT -> "Import from banned package " + names.get(keyword).replaceAll("\\.$", "");
+        };
+        return AnalysisIssue.builder()
+                .issueId(UUID.randomUUID().toString())
+                .description(description)
+                .severity(match.severity)
+                .lineNumber(stream.lines[token])
+                .columnNumber(stream.columns[token] + 1)
+                .build();
+    }
+
+    /**
+     * What a keyword found means, confirmed on the tokens around it
+     */
+    private enum Match {
+        /** Part of the name of a variable assigned a string literal */
+        SECRET_NAME(AnalysisIssue.Severity.HIGH) {
+            @Override
+            boolean confirm(TokenStream stream, int token, int from, int to) {
+                return stream.types[token] == TokenTypes.IDENT
+                        && "=".equals(stream.text(token + 1))
+                        && stream.isString(token + 2) && stream.texts[token + 2].length() > 2;
+            }
+        },
+        /** Start of a known credential format in a string */
+        SECRET_VALUE(AnalysisIssue.Severity.HIGH) {
+            @Override
+            boolean confirm(TokenStream stream, int token, int from, int to) {
+                return stream.isString(token)
+                        && (from == 0 || !Character.isLetterOrDigit(stream.text.charAt(from - 1)));
+            }
+        },
+        /** A whole qualified name such as {@code System.out} */
+        CONSOLE_OUTPUT(AnalysisIssue.Severity.LOW) {
+            @Override
+            boolean confirm(TokenStream stream, int token, int from, int to) {
+                return stream.types[token] == TokenTypes.IDENT && from == stream.starts[token]
+                        && (from == 0 || !Character.isJavaIdentifierPart(stream.text.charAt(from - 1)))
+                        && (to == stream.text.length() || !Character.isJavaIdentifierPart(stream.text.charAt(to)));
+            }
+        },
+        /** {@code catch (...) {}} */
+        EMPTY_CATCH(AnalysisIssue.Severity.MEDIUM) {
+            @Override
+            boolean confirm(TokenStream stream, int token, int from, int to) {
+                if (!"catch".equals(stream.texts[token]) || from != stream.starts[token]
+                        || !"(".equals(stream.text(token + 1))) {
+                    return false;
+                }
+                int depth = 0;
+                for (int i = token + 1; i < stream.count; i++) {
+                    if ("(".equals(stream.texts[i])) {
+                        depth++;
+                    } else if (")".equals(stream.texts[i]) && --depth == 0) {
+                        return "{".equals(stream.text(i + 1)) && "}".equals(stream.text(i + 2));
+                    }
+                }
+                return false;
+            }
+        },
+        /** Start of the name in an import declaration */
+        BANNED_IMPORT(AnalysisIssue.Severity.MEDIUM) {
+            @Override
+            boolean confirm(TokenStream stream, int token, int from, int to) {
+                return from == stream.starts[token]
+                        && ("import".equals(stream.text(token - 1))
+                        || "static".equals(stream.text(token - 1)) && "import".equals(stream.text(token - 2)));
+            }
+        };
+
+        private final AnalysisIssue.Severity severity;
+
+        Match(AnalysisIssue.Severity severity) {
+            this.severity = severity;
+        }
+
+        abstract boolean confirm(TokenStream stream, int token, int from, int to);
+    }
+
+    /**
+     * Code tokens of a source and the text the automaton runs over: the tokens separated by a
+     * space, except around dots so that qualified names stay whole, with identifiers lowercased
+     */
+    private static final class TokenStream {
+
+        /** Type of the lexer's tokens other than identifiers and literals */
+        private static final int OTHER = 0;
+
+        private final StringBuilder text;
+        private int count;
+        private int[] types;
+        private String[] texts;
+        private int[] lines;
+        private int[] columns;
+        private int[] starts;
+
+        private TokenStream(int capacity) {
+            text = new StringBuilder(capacity * 6);
+            types = new int[capacity];
+            texts = new String[capacity];
+            lines = new int[capacity];
+            columns = new int[capacity];
+            starts = new int[capacity];
+        }
+
+        private static TokenStream of(List<ParsedSource.Token> tokens) {
+            TokenStream stream = new TokenStream(Math.max(tokens.size(), 16));
+            for (ParsedSource.Token token : tokens) {
+                if (!token.isComment()) {
+                    stream.add(token.type(), token.text(), token.line(), token.column());
+                }
+            }
+            return stream;
+        }
+
+        /**
+         * Split a text into identifiers, string and character literals, numbers and single other
+         * characters, leaving out comments; enough to match the rules where no syntax tree exists
+         */
+        private static TokenStream lex(String source) {
+            TokenStream stream = new TokenStream(Math.max(source.length() / 4, 16));
+            int line = 1;
+            int lineStart = 0;
+            int i = 0;
+            while (i < source.length()) {
+                char c = source.charAt(i);
+                int start = i;
+                int type = OTHER;
+                if (c == '\n') {
+                    line++;
+                    lineStart = ++i;
+                    continue;
+                } else if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                } else if (source.startsWith("//", i)) {
+                    i = source.indexOf('\n', i);
+                    i = i < 0 ? source.length() : i;
+                    continue;
+                } else if (source.startsWith("/*", i)) {
+                    int end = source.indexOf("*/", i + 2);
+                    end = end < 0 ? source.length() : end + 2;
+                    for (int j = source.indexOf('\n', i); j >= 0 && j < end; j = source.indexOf('\n', j + 1)) {
+                        line++;
+                        lineStart = j + 1;
+                    }
+                    i = end;
+                    continue;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    while (i < source.length() && Character.isJavaIdentifierPart(source.charAt(i))) {
+                        i++;
+                    }
+                    type = TokenTypes.IDENT;
+                } else if (c == '"' || c == '\'') {
+                    i++;
+                    while (i < source.length() && source.charAt(i) != c && source.charAt(i) != '\n') {
+                        i += source.charAt(i) == '\\' ? 2 : 1;
+                    }
+                    i = Math.min(i + 1, source.length());
+                    type = c == '"' ? TokenTypes.STRING_LITERAL : TokenTypes.CHAR_LITERAL;
+                } else if (Character.isDigit(c)) {
+                    while (i < source.length() && Character.isLetterOrDigit(source.charAt(i))) {
+                        i++;
+                    }
+                    type = TokenTypes.NUM_INT;
+                } else {
+                    i += source.startsWith("==", i) ? 2 : 1;
+                }
+                stream.add(type, source.substring(start, i), line, start - lineStart);
+            }
+            return stream;
+        }
+
+        private void add(int type, String tokenText, int line, int column) {
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+                columns = Arrays.copyOf(columns, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            if (count > 0 && !".".equals(tokenText) && !".".equals(texts[count - 1])) {
+                text.append(' ');
+            }
+            types[count] = type;
+            texts[count] = tokenText;
+            lines[count] = line;
+            columns[count] = column;
+            starts[count] = text.length();
+            if (type == TokenTypes.IDENT) {
+                for (int i = 0; i < tokenText.length(); i++) {
+                    text.append(Character.toLowerCase(tokenText.charAt(i)));
+                }
+            } else {
+                text.append(tokenText);
+            }
+            count++;
+        }
+
+        /**
+         * Text of a token, or null past either end of the stream
+         */
+        private String text(int token) {
+            return token >= 0 && token < count ? texts[token] : null;
+        }
+
+        private boolean isString(int token) {
+            return token < count
+                    && (types[token] == TokenTypes.STRING_LITERAL || types[token] == TokenTypes.TEXT_BLOCK_CONTENT);
+        }
+
+        /**
+         * Index of the token an offset of the text falls in
+         */
+        private int tokenAt(int offset) {
+            int index = Arrays.binarySearch(starts, 0, count, offset);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.codecritic.service;
+
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.PullRequest;
+import com.codecritic.model.ReviewComment;
+import jakarta.annotation.PreDestroy;
+import org.kohsuke.github.GHIssueComment;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a review progressively while its files are still being analyzed.
+ * <p>
+ * A placeholder comment is posted as soon as the review starts and is edited in place as file
+ * results arrive. Edits are debounced so that at most {@code max-edits-per-minute} intermediate
+ * edits reach GitHub per review; results arriving in between are folded into the next edit. The
+ * final edit, which marks the review complete, is always sent. Edits of one comment are applied
+ * in order on the GitHub executor.
+ */
+@Component
+public class ProgressiveReviewPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressiveReviewPublisher.class);
+
+    private final GitHubCommentService gitHubCommentService;
+    private final ReviewCommentFormatter reviewCommentFormatter;
+    private final Executor githubExecutor;
+    private final boolean enabled;
+    private final long minEditIntervalMs;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "review-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProgressiveReviewPublisher(
+            GitHubCommentService gitHubCommentService,
+            ReviewCommentFormatter reviewCommentFormatter,
+            @Qualifier("githubExecutor") Executor githubExecutor,
+            @Value("${review.progressive.enabled:false}") boolean enabled,
+            @Value("${review.progressive.max-edits-per-minute:6}") int maxEditsPerMinute) {
+        this.gitHubCommentService = gitHubCommentService;
+        this.reviewCommentFormatter = reviewCommentFormatter;
+        this.githubExecutor = githubExecutor;
+        this.enabled = enabled;
+        this.minEditIntervalMs = TimeUnit.MINUTES.toMillis(1) / Math.max(1, maxEditsPerMinute);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start publishing a review of {@code totalFiles} files by posting the placeholder comment
+     *
+     * @param totalFiles number of files, or {@link ReviewCommentFormatter#UNKNOWN_TOTAL} while
+     *                   the files are still being listed
+     */
+    public Session open(PullRequest pullRequest, int totalFiles) {
+        return new Session(pullRequest, totalFiles);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * The comment of one review being published
+     */
+    public final class Session {
+        private final PullRequest pullRequest;
+        private final int totalFiles;
+        private final List<FileReviewResult> completed = new ArrayList<>();
+        private final CompletableFuture<GHIssueComment> placeholder;
+        private CompletableFuture<?> lastEdit;
+        private ScheduledFuture<?> scheduledEdit;
+        private long lastEditAt;
+        private boolean closed;
+
+        private Session(PullRequest pullRequest, int totalFiles) {
+            this.pullRequest = pullRequest;
+            this.totalFiles = totalFiles;
+            this.placeholder = CompletableFuture.supplyAsync(() -> gitHubCommentService.postComment(pullRequest,
+                    reviewCommentFormatter.format(pullRequest, List.of(), totalFiles)), githubExecutor);
+            this.lastEdit = placeholder;
+            this.lastEditAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Add the result of a finished file, scheduling an edit unless one is already due
+         */
+        public synchronized void fileCompleted(FileReviewResult result) {
+            if (closed) {
+                return;
+            }
+            completed.add(result);
+            if (scheduledEdit == null) {
+                long delay = Math.max(0, lastEditAt + minEditIntervalMs - System.currentTimeMillis());
+                scheduledEdit = timer.schedule(this::publishProgress, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Replace the comment with the complete review
+         *
+         * @return a future that completes once the final edit has been applied
+         */
+        public synchronized CompletableFuture<Void> complete(List<FileReviewResult> results) {
+            if (closed) {
+                return CompletableFuture.completedFuture(null);
+            }
+            close();
+            logger.info("Publishing final review of PR #{} ({} files)", pullRequest.getPrId(), results.size());
+            return edit(reviewCommentFormatter.format(pullRequest, results, results.size()), true);
+        }
+
+        /**
+         * Mark the comment as stopped, leaving no review in progress behind
+         */
+        public synchronized void stop(String reason) {
+            if (closed) {
+                return;
+            }
+            close();
+            edit(reviewCommentFormatter.formatStopped(pullRequest, reason), false);
+        }
+
+        private synchronized void publishProgress() {
+            scheduledEdit = null;
+            if (closed) {
+                return;
+            }
+            lastEditAt = System.currentTimeMillis();
+            logger.debug("Publishing progress of PR #{}: {} of {} files", pullRequest.getPrId(),
+                    completed.size(), totalFiles);
+            edit(reviewCommentFormatter.format(pullRequest, List.copyOf(completed), totalFiles), false);
+        }
+
+        private void close() {
+            closed = true;
+            if (scheduledEdit != null) {
+                scheduledEdit.cancel(false);
+                scheduledEdit = null;
+            }
+        }
+
+        /**
+         * Queue an edit behind the previous one. If the placeholder could not be posted, the complete
+         * review falls back to posting a new comment.
+         */
+        private CompletableFuture<Void> edit(ReviewComment comment, boolean postIfMissing) {
+            CompletableFuture<Void> next = lastEdit.handle((v, ex) -> null).thenCombineAsync(placeholder
+                    .exceptionally(ex -> null), (ignored, postedComment) -> {
+                        if (postedComment != null) {
+                            gitHubCommentService.updateComment(pullRequest, postedComment, comment);
+                        } else if (postIfMissing) {
+                            gitHubCommentService.postComment(pullRequest, comment);
+                        }
+                        return null;
+                    }, githubExecutor);
+            lastEdit = next;
+            return next;
+        }
+    }
+}
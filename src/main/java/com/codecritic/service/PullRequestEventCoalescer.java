@@ -0,0 +1,190 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collapses bursts of pull request events into a single review of the latest head.
+ * <p>
+ * Events are keyed by repository and PR number. Each new event restarts a quiet window and
+ * replaces the pending one; the review starts only when the window expires without further
+ * events. Redeliveries are dropped by {@code X-GitHub-Delivery} ID, and an in-flight review of
+ * a head SHA that has since been superseded is cancelled.
+ */
+@Component
+public class PullRequestEventCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PullRequestEventCoalescer.class);
+
+    private final long quietWindowMs;
+    private final Set<String> seenDeliveries;
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pr-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PullRequestEventCoalescer(
+            @Value("${review.coalesce.quiet-window-ms:5000}") long quietWindowMs,
+            @Value("${review.coalesce.delivery-cache-size:10000}") int deliveryCacheSize) {
+        this.quietWindowMs = quietWindowMs;
+        this.seenDeliveries = Collections.newSetFromMap(new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > deliveryCacheSize;
+            }
+        });
+    }
+
+    /**
+     * Submit an event for coalesced review
+     *
+     * @param event  the webhook event
+     * @param review starts the review of an event and returns a future for its completion;
+     *               cancelling that future must abort the review
+     * @return a future that completes once this event needs no further processing, either because
+     *         its review finished or because it was a duplicate or superseded by a later event
+     */
+    public synchronized CompletableFuture<Void> submit(GitHubWebhookEvent event,
+                                                       Function<GitHubWebhookEvent, CompletableFuture<?>> review) {
+        if (event.getEventId() != null && !seenDeliveries.add(event.getEventId())) {
+            logger.info("Dropping duplicate delivery {}", event.getEventId());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String key = event.getRepositoryName() + "#" + event.getPullRequestId();
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+
+        if (slot.pendingEvent != null) {
+            logger.info("Event {} for {} superseded by {}", slot.pendingEvent.getEventId(), key, event.getEventId());
+            slot.timer.cancel(false);
+            slot.pendingSettled.complete(null);
+            slot.pendingEvent = null;
+        }
+
+        CompletableFuture<?> superseded = slot.inFlight != null && !slot.inFlight.isDone() ? slot.inFlight : null;
+        if (superseded != null && event.getHeadSha() != null && Objects.equals(event.getHeadSha(), slot.inFlightSha)) {
+            logger.info("Head {} of {} is already under review, dropping event {}",
+                    event.getHeadSha(), key, event.getEventId());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        slot.pendingEvent = event;
+        slot.pendingSettled = settled;
+        slot.timer = timer.schedule(() -> dispatch(key, review), quietWindowMs, TimeUnit.MILLISECONDS);
+
+        // Only once the event is pending, so that the cancelled review's cleanup keeps the slot
+        if (superseded != null) {
+            logger.info("Cancelling in-flight review of {} at {} superseded by {}",
+                    key, slot.inFlightSha, event.getHeadSha());
+            superseded.cancel(true);
+        }
+        return settled;
+    }
+
+    /**
+     * Start the review of the pending event once its quiet window has elapsed
+     * <p>
+     * The review is started outside the lock: with a caller-runs executor it may block this
+     * thread on a fetch, which must not hold up {@link #submit}. Until it has started, a
+     * placeholder stands in for it, whose cancellation is passed on to the review.
+     */
+    private void dispatch(String key, Function<GitHubWebhookEvent, CompletableFuture<?>> review) {
+        GitHubWebhookEvent event;
+        CompletableFuture<Void> settled;
+        CompletableFuture<Object> inFlight = new CompletableFuture<>();
+
+        synchronized (this) {
+            Slot slot = slots.get(key);
+            if (slot == null || slot.pendingEvent == null) {
+                return;
+            }
+            event = slot.pendingEvent;
+            settled = slot.pendingSettled;
+            slot.pendingEvent = null;
+            slot.pendingSettled = null;
+            slot.timer = null;
+            slot.inFlight = inFlight;
+            slot.inFlightSha = event.getHeadSha();
+        }
+
+        inFlight.whenComplete((result, ex) -> {
+            if (inFlight.isCancelled()) {
+                logger.info("Review of {} at {} was cancelled", key, event.getHeadSha());
+            }
+            synchronized (this) {
+                Slot slot = slots.get(key);
+                if (slot != null && slot.inFlight == inFlight) {
+                    slot.inFlight = null;
+                    slot.inFlightSha = null;
+                    if (slot.pendingEvent == null) {
+                        slots.remove(key);
+                    }
+                }
+            }
+            settled.complete(null);
+        });
+        if (inFlight.isDone()) {
+            return;
+        }
+
+        logger.info("Quiet window elapsed for {}, reviewing head {}", key, event.getHeadSha());
+        CompletableFuture<?> started = start(review, event);
+        inFlight.whenComplete((result, ex) -> {
+            if (inFlight.isCancelled()) {
+                started.cancel(true);
+            }
+        });
+        started.whenComplete((result, ex) -> {
+            if (ex != null) {
+                inFlight.completeExceptionally(ex);
+            } else {
+                inFlight.complete(result);
+            }
+        });
+    }
+
+    private static CompletableFuture<?> start(Function<GitHubWebhookEvent, CompletableFuture<?>> review,
+                                              GitHubWebhookEvent event) {
+        try {
+            return review.apply(event);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Coalescing state for one pull request
+     */
+    private static final class Slot {
+        private GitHubWebhookEvent pendingEvent;
+        private CompletableFuture<Void> pendingSettled;
+        private ScheduledFuture<?> timer;
+        private CompletableFuture<?> inFlight;
+        private String inFlightSha;
+    }
+}
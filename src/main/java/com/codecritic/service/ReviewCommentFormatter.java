@@ -0,0 +1,157 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AIReview;
+import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.AnalysisReport;
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.InlineComment;
+import com.codecritic.model.PullRequest;
+import com.codecritic.model.ReviewComment;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Renders per-file review results into the markdown body of the PR comment and into inline
+ * comments on the diff
+ */
+@Component
+public class ReviewCommentFormatter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewCommentFormatter.class);
+    
+    /**
+     * Total to pass while the number of files in the review is not known yet
+     */
+    public static final int UNKNOWN_TOTAL = -1;
+    
+    /**
+     * Create a review comment by combining static analysis and AI review results
+     * 
+     * @param results    results of the files reviewed so far
+     * @param totalFiles number of files in the review; when more than the results or
+     *                   {@link #UNKNOWN_TOTAL}, the comment is marked as in progress
+     */
+    public ReviewComment format(PullRequest pullRequest, List<FileReviewResult> results, int totalFiles) {
+        StringBuilder commentBuilder = new StringBuilder();
+        
+        commentBuilder.append("# CodeCritic-J Analysis\n\n");
+        if (totalFiles == UNKNOWN_TOTAL) {
+            commentBuilder.append("Review in progress: ").append(results.size())
+                    .append(" file(s) reviewed so far, last updated at ")
+                    .append(Instant.now()).append("\n\n");
+        } else if (results.size() < totalFiles) {
+            commentBuilder.append("Review in progress: ").append(results.size()).append(" of ")
+                    .append(totalFiles).append(" file(s) reviewed so far, last updated at ")
+                    .append(Instant.now()).append("\n\n");
+        } else {
+            commentBuilder.append("Analysis completed at: ").append(Instant.now()).append("\n\n");
+        }
+        
+        long carriedOver = results.stream().filter(FileReviewResult::isCarriedOver).count();
+        if (carriedOver > 0) {
+            commentBuilder.append("_").append(carriedOver).append(" unchanged file(s) carried over from the previous review._\n\n");
+        }
+        
+        // Add static analysis summary
+        commentBuilder.append("## Static Analysis Results\n\n");
+        if (results.isEmpty()) {
+            commentBuilder.append("No static analysis results available.\n\n");
+        } else {
+            int totalIssues = results.stream()
+                    .filter(r -> r.getReport() != null)
+                    .map(r -> r.getReport().getIssues().size())
+                    .reduce(0, Integer::sum);
+            
+            commentBuilder.append("Found ").append(totalIssues).append(" issue(s) across ")
+                    .append(results.size()).append(" file(s).\n\n");
+            
+            for (FileReviewResult result : results) {
+                AnalysisReport report = result.getReport();
+                if (report != null && !report.getIssues().isEmpty()) {
+                    commentBuilder.append("### ").append(result.getFilePath());
+                    if (result.isCarriedOver()) {
+                        commentBuilder.append(" (unchanged)");
+                    }
+                    commentBuilder.append("\n\n");
+                    
+                    for (AnalysisIssue issue : report.getIssues()) {
+                        commentBuilder.append("- **").append(issue.getSeverity()).append("**: ");
+                        commentBuilder.append(issue.getDescription()).append(" (Line ").append(issue.getLineNumber()).append(")\n");
+                    }
+                    commentBuilder.append("\n");
+                }
+            }
+        }
+        
+        // Add AI review results
+        commentBuilder.append("## AI Code Review\n\n");
+        if (results.isEmpty()) {
+            commentBuilder.append("No AI reviews available.\n\n");
+        } else {
+            logger.debug("Adding {} AI reviews to comment", results.size());
+            for (FileReviewResult result : results) {
+                AIReview review = result.getReview();
+                if (review != null && review.getAiFeedback() != null && !review.getAiFeedback().isEmpty()) {
+                    commentBuilder.append(review.getAiFeedback()).append("\n\n");
+                    logger.debug("Added AI review feedback: {}", review.getAiFeedback().substring(0, 
+                        Math.min(100, review.getAiFeedback().length())) + "...");
+                }
+            }
+        }
+        
+        String content = commentBuilder.toString();
+        logger.debug("Created review comment with {} characters", content.length());
+        
+        return ReviewComment.builder()
+                .commentId(UUID.randomUUID().toString())
+                .content(content)
+                .createdAt(Instant.now())
+                .build();
+    }
+    
+    /**
+     * Create inline comments for the static analysis issues of freshly reviewed files. Issues
+     * outside the diff, and issues of carried-over files, which were commented on by an earlier
+     * review, only appear in the summary comment.
+     */
+    public List<InlineComment> formatInlineComments(List<FileReviewResult> results) {
+        List<InlineComment> comments = new ArrayList<>();
+        for (FileReviewResult result : results) {
+            AnalysisReport report = result.getReport();
+            if (report == null || result.isCarriedOver()) {
+                continue;
+            }
+            for (AnalysisIssue issue : report.getIssues()) {
+                if (issue.getDiffPosition() == null) {
+                    continue;
+                }
+                comments.add(InlineComment.builder()
+                        .filePath(result.getFilePath())
+                        .position(issue.getDiffPosition())
+                        .body("**" + issue.getSeverity() + "**: " + issue.getDescription())
+                        .build());
+            }
+        }
+        return comments;
+    }
+    
+    /**
+     * Create the comment that replaces a progressively published review that did not finish
+     */
+    public ReviewComment formatStopped(PullRequest pullRequest, String reason) {
+        String content = "# CodeCritic-J Analysis\n\n"
+                + "This review was stopped at " + Instant.now() + ": " + reason + "\n";
+        
+        return ReviewComment.builder()
+                .commentId(UUID.randomUUID().toString())
+                .content(content)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.codecritic.service;
+
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers per-file review results of each pull request, keyed by file path and blob SHA.
+ * <p>
+ * When a PR is updated, files whose blob SHA is unchanged can reuse the previous static analysis
+ * and AI review instead of being analyzed again. The number of pull requests remembered is
+ * bounded; the least recently reviewed ones are forgotten first.
+ */
+@Component
+public class ReviewResultStore {
+
+    private final Map<String, Map<String, FileReviewResult>> resultsByPullRequest;
+
+    public ReviewResultStore(@Value("${review.incremental.max-pull-requests:1000}") int maxPullRequests) {
+        this.resultsByPullRequest = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, FileReviewResult>> eldest) {
+                return size() > maxPullRequests;
+            }
+        };
+    }
+
+    /**
+     * Look up a reusable result for the file at its current blob SHA
+     */
+    public synchronized FileReviewResult find(PullRequest pullRequest, ModifiedFile file) {
+        if (file.getFileId() == null) {
+            return null;
+        }
+        Map<String, FileReviewResult> results = resultsByPullRequest.get(pullRequestKey(pullRequest));
+        return results == null ? null : results.get(fileKey(file.getFilePath(), file.getFileId()));
+    }
+
+    /**
+     * Record a freshly computed result as soon as it is available, so that even the finished part of
+     * a superseded review is reused
+     */
+    public synchronized void record(PullRequest pullRequest, FileReviewResult result) {
+        if (result.getBlobSha() == null || !isReusable(result)) {
+            return;
+        }
+        resultsByPullRequest.computeIfAbsent(pullRequestKey(pullRequest), k -> new HashMap<>())
+                .put(fileKey(result.getFilePath(), result.getBlobSha()), result);
+    }
+
+    /**
+     * Keep only the results that belong to the head that has just been reviewed
+     */
+    public synchronized void retainReviewed(PullRequest pullRequest, List<FileReviewResult> reviewed) {
+        Map<String, FileReviewResult> retained = new HashMap<>();
+        for (FileReviewResult result : reviewed) {
+            if (result.getBlobSha() != null && isReusable(result)) {
+                retained.put(fileKey(result.getFilePath(), result.getBlobSha()), result);
+            }
+        }
+        resultsByPullRequest.put(pullRequestKey(pullRequest), retained);
+    }
+
+    private boolean isReusable(FileReviewResult result) {
+        boolean reportOk = result.getReport() == null || !result.getReport().isFailed();
+        boolean reviewOk = result.getReview() == null
+                || !AIReviewService.FAILED_REVIEW_CONTEXT.equals(result.getReview().getContextData());
+        return reportOk && reviewOk;
+    }
+
+    private String pullRequestKey(PullRequest pullRequest) {
+        return pullRequest.getRepository() + "#" + pullRequest.getPrId();
+    }
+
+    private String fileKey(String path, String blobSha) {
+        return path + "@" + blobSha;
+    }
+}
@@ -0,0 +1,324 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Orders pull request reviews in front of {@link PRAnalysisService}.
+ * <p>
+ * Each review gets a cost estimated from its file count and total patch size. Within a
+ * repository the cheapest pending review goes first. Between repositories, capacity is shared by
+ * weighted fair queuing: a repository's next review is tagged with a virtual finish time of
+ * {@code max(virtualTime, lastFinish) + cost / weight}, and the smallest tag is dispatched. Waiting
+ * reviews are aged by {@code aging-per-second} cost units per second, so large PRs are not starved.
+ * A repository's finish tag is kept after its queue empties, until virtual time passes it, so a
+ * repository cannot reset its share by submitting reviews one at a time.
+ */
+@Service
+public class ReviewScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewScheduler.class);
+
+    /**
+     * Average patch bytes per added or deleted line, to estimate the patch size of a pull request
+     * whose files have not been listed yet
+     */
+    private static final int BYTES_PER_CHANGED_LINE = 40;
+
+    /**
+     * Coarse size classes used for reporting queue wait times
+     */
+    public enum PriorityClass {
+        SMALL,
+        MEDIUM,
+        LARGE
+    }
+
+    private final PRAnalysisService prAnalysisService;
+    private final int maxConcurrentReviews;
+    private final int patchBytesPerCostUnit;
+    private final double smallCostLimit;
+    private final double mediumCostLimit;
+    private final double agingPerSecond;
+    private final Map<String, Double> repositoryWeights = new HashMap<>();
+    private final Map<PriorityClass, Timer> waitTimers = new EnumMap<>(PriorityClass.class);
+
+    private final Map<String, RepositoryQueue> queues = new LinkedHashMap<>();
+    private double virtualTime;
+    private int running;
+
+    public ReviewScheduler(
+            PRAnalysisService prAnalysisService,
+            MeterRegistry meterRegistry,
+            @Value("${review.scheduler.max-concurrent-reviews:4}") int maxConcurrentReviews,
+            @Value("${review.scheduler.patch-bytes-per-cost-unit:4096}") int patchBytesPerCostUnit,
+            @Value("${review.scheduler.small-cost-limit:10}") double smallCostLimit,
+            @Value("${review.scheduler.medium-cost-limit:100}") double mediumCostLimit,
+            @Value("${review.scheduler.aging-per-second:1.0}") double agingPerSecond,
+            @Value("${review.scheduler.repository-weights:}") String repositoryWeights) {
+        this.prAnalysisService = prAnalysisService;
+        this.maxConcurrentReviews = maxConcurrentReviews;
+        this.patchBytesPerCostUnit = patchBytesPerCostUnit;
+        this.smallCostLimit = smallCostLimit;
+        this.mediumCostLimit = mediumCostLimit;
+        this.agingPerSecond = agingPerSecond;
+
+        for (String entry : repositoryWeights.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length == 2) {
+                this.repositoryWeights.put(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+            }
+        }
+
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            waitTimers.put(priorityClass, Timer.builder("codecritic.review.queue.wait")
+                    .description("Time a review waits in the scheduler before it starts")
+                    .tag("class", priorityClass.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Queue a review of the pull request
+     *
+     * @return a future that completes when the review finishes. Cancelling it removes a queued
+     *         review or cancels a running one.
+     */
+    public CompletableFuture<Void> schedule(PullRequest pullRequest) {
+        Job job = new Job(pullRequest, estimateCost(pullRequest), System.nanoTime());
+        job.priorityClass = classify(job.cost);
+
+        job.result.whenComplete((v, ex) -> {
+            if (job.result.isCancelled()) {
+                cancel(job);
+            }
+        });
+
+        synchronized (this) {
+            queues.computeIfAbsent(pullRequest.getRepository(), RepositoryQueue::new).jobs.add(job);
+        }
+        logger.info("Queued review of {} PR #{} with cost {} ({})", pullRequest.getRepository(),
+                pullRequest.getPrId(), String.format("%.1f", job.cost), job.priorityClass);
+
+        dispatch();
+        return job.result;
+    }
+
+    /**
+     * Estimated cost of a review: one unit per file plus one per {@code patch-bytes-per-cost-unit} of patch.
+     * When the files are streamed later, the counts GitHub reports for the pull request are used.
+     */
+    double estimateCost(PullRequest pullRequest) {
+        List<ModifiedFile> files = pullRequest.getModifiedFiles();
+        if (files == null) {
+            if (pullRequest.getChangedFiles() == null) {
+                return 1;
+            }
+            long changedLines = (long) nullToZero(pullRequest.getAdditions()) + nullToZero(pullRequest.getDeletions());
+            return Math.max(1, pullRequest.getChangedFiles()
+                    + (double) changedLines * BYTES_PER_CHANGED_LINE / patchBytesPerCostUnit);
+        }
+        long patchBytes = 0;
+        for (ModifiedFile file : files) {
+            if (file.getDiffContent() != null) {
+                patchBytes += file.getDiffContent().length();
+            }
+        }
+        return Math.max(1, files.size() + (double) patchBytes / patchBytesPerCostUnit);
+    }
+
+    private static int nullToZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Start as many queued reviews as there is capacity for
+     */
+    private void dispatch() {
+        List<Job> toStart = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (running < maxConcurrentReviews) {
+                Job next = selectNext(now);
+                if (next == null) {
+                    break;
+                }
+                running++;
+                next.started = true;
+                toStart.add(next);
+            }
+        }
+
+        for (Job job : toStart) {
+            start(job);
+        }
+    }
+
+    /**
+     * Pick the job with the smallest aged virtual finish tag across repositories
+     */
+    private Job selectNext(long now) {
+        RepositoryQueue bestQueue = null;
+        Job bestJob = null;
+        double bestTag = Double.MAX_VALUE;
+        double bestStart = 0;
+
+        for (RepositoryQueue queue : queues.values()) {
+            Job candidate = null;
+            double candidateScore = Double.MAX_VALUE;
+            for (Job job : queue.jobs) {
+                double score = job.cost - aging(job, now);
+                if (score < candidateScore) {
+                    candidate = job;
+                    candidateScore = score;
+                }
+            }
+            if (candidate == null) {
+                continue;
+            }
+
+            double start = Math.max(virtualTime, queue.lastFinish);
+            double tag = start + candidate.cost / weight(queue.repository) - aging(candidate, now);
+            if (tag < bestTag) {
+                bestTag = tag;
+                bestStart = start;
+                bestQueue = queue;
+                bestJob = candidate;
+            }
+        }
+
+        if (bestJob == null) {
+            return null;
+        }
+
+        bestQueue.jobs.remove(bestJob);
+        bestQueue.lastFinish = bestStart + bestJob.cost / weight(bestQueue.repository);
+        virtualTime = bestStart;
+        queues.values().removeIf(this::expired);
+        return bestJob;
+    }
+
+    /**
+     * Whether the queue has no pending reviews and its finish tag no longer delays the
+     * repository's next review
+     */
+    private boolean expired(RepositoryQueue queue) {
+        return queue.jobs.isEmpty() && queue.lastFinish <= virtualTime;
+    }
+
+    private void start(Job job) {
+        Duration waited = Duration.ofNanos(System.nanoTime() - job.enqueuedAt);
+        waitTimers.get(job.priorityClass).record(waited);
+        logger.info("Starting review of {} PR #{} after waiting {} ms", job.pullRequest.getRepository(),
+                job.pullRequest.getPrId(), waited.toMillis());
+
+        CompletableFuture<Void> analysis;
+        try {
+            analysis = prAnalysisService.analyzePullRequest(job.pullRequest);
+        } catch (RuntimeException e) {
+            analysis = CompletableFuture.failedFuture(e);
+        }
+
+        synchronized (this) {
+            job.analysis = analysis;
+        }
+        if (job.result.isCancelled()) {
+            analysis.cancel(true);
+        }
+
+        analysis.whenComplete((v, ex) -> {
+            synchronized (this) {
+                running--;
+            }
+            if (ex != null) {
+                job.result.completeExceptionally(ex);
+            } else {
+                job.result.complete(null);
+            }
+            dispatch();
+        });
+    }
+
+    private void cancel(Job job) {
+        CompletableFuture<Void> analysis;
+        synchronized (this) {
+            if (!job.started) {
+                RepositoryQueue queue = queues.get(job.pullRequest.getRepository());
+                if (queue != null) {
+                    queue.jobs.remove(job);
+                    if (expired(queue)) {
+                        queues.remove(queue.repository);
+                    }
+                }
+                return;
+            }
+            analysis = job.analysis;
+        }
+        if (analysis != null) {
+            analysis.cancel(true);
+        }
+    }
+
+    private double aging(Job job, long now) {
+        return agingPerSecond * (now - job.enqueuedAt) / 1_000_000_000.0;
+    }
+
+    private double weight(String repository) {
+        return repositoryWeights.getOrDefault(repository, 1.0);
+    }
+
+    private PriorityClass classify(double cost) {
+        if (cost <= smallCostLimit) {
+            return PriorityClass.SMALL;
+        }
+        return cost <= mediumCostLimit ? PriorityClass.MEDIUM : PriorityClass.LARGE;
+    }
+
+    /**
+     * Pending reviews and fair-queuing state for one repository
+     */
+    private static final class RepositoryQueue {
+        private final String repository;
+        private final List<Job> jobs = new ArrayList<>();
+        private double lastFinish;
+
+        private RepositoryQueue(String repository) {
+            this.repository = repository;
+        }
+    }
+
+    /**
+     * A queued or running review
+     */
+    private static final class Job {
+        private final PullRequest pullRequest;
+        private final double cost;
+        private final long enqueuedAt;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private PriorityClass priorityClass;
+        private boolean started;
+        private CompletableFuture<Void> analysis;
+
+        private Job(PullRequest pullRequest, double cost, long enqueuedAt) {
+            this.pullRequest = pullRequest;
+            this.cost = cost;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.codecritic.service;
+
+import com.puppycrawl.tools.checkstyle.AbstractAutomaticBean;
+import com.puppycrawl.tools.checkstyle.DefaultContext;
+import com.puppycrawl.tools.checkstyle.ModuleFactory;
+import com.puppycrawl.tools.checkstyle.TreeWalkerAuditEvent;
+import com.puppycrawl.tools.checkstyle.TreeWalkerFilter;
+import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.AbstractFileSetCheck;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import com.puppycrawl.tools.checkstyle.api.Context;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import com.puppycrawl.tools.checkstyle.utils.TokenUtil;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Checkstyle's {@code TreeWalker} over the syntax tree of a {@link ParsedSource}, so that checking
+ * a file does not parse it again.
+ * <p>
+ * {@link CheckstyleAnalyzer} configures this module in place of {@code TreeWalker}. It sets up the
+ * checks and filters configured below it the way {@code TreeWalker} does, walks the plain tree for
+ * ordinary checks and the tree with comment nodes for checks that need them, and passes their
+ * violations through the filters. Files without a tree, which are not valid Java, are skipped.
+ */
+public class SharedAstTreeWalker extends AbstractFileSetCheck {
+
+    private final Map<Integer, Set<AbstractCheck>> tokenToOrdinaryChecks = new HashMap<>();
+    private final Map<Integer, Set<AbstractCheck>> tokenToCommentChecks = new HashMap<>();
+    private final Set<AbstractCheck> ordinaryChecks = checkSet();
+    private final Set<AbstractCheck> commentChecks = checkSet();
+    private final Set<TreeWalkerFilter> filters = new LinkedHashSet<>();
+    private final SortedSet<Violation> violations = new TreeSet<>();
+    private Context childContext;
+    private ModuleFactory moduleFactory;
+    private ParsedSource parsedSource;
+
+    public SharedAstTreeWalker() {
+        setFileExtensions("java");
+    }
+
+    /**
+     * Set by the checker, which creates the checks and filters of this module
+     */
+    public void setModuleFactory(ModuleFactory moduleFactory) {
+        this.moduleFactory = moduleFactory;
+    }
+
+    /**
+     * The parsed source of the file processed next
+     */
+    void setParsedSource(ParsedSource parsedSource) {
+        this.parsedSource = parsedSource;
+    }
+
+    @Override
+    public void finishLocalSetup() {
+        DefaultContext checkContext = new DefaultContext();
+        checkContext.add("severity", getSeverity());
+        checkContext.add("tabWidth", String.valueOf(getTabWidth()));
+        childContext = checkContext;
+    }
+
+    @Override
+    public void setupChild(Configuration childConf) throws CheckstyleException {
+        String name = childConf.getName();
+        Object module;
+        try {
+            module = moduleFactory.createModule(name);
+            if (module instanceof AbstractAutomaticBean bean) {
+                bean.contextualize(childContext);
+                bean.configure(childConf);
+            }
+        } catch (CheckstyleException e) {
+            throw new CheckstyleException("cannot initialize module " + name + " - " + e.getMessage(), e);
+        }
+        if (module instanceof AbstractCheck check) {
+            check.init();
+            registerCheck(check);
+        } else if (module instanceof TreeWalkerFilter filter) {
+            filters.add(filter);
+        } else {
+            throw new CheckstyleException("TreeWalker is not allowed as a parent of " + name);
+        }
+    }
+
+    @Override
+    protected void processFiltered(File file, FileText fileText) {
+        ParsedSource parsed = parsedSource;
+        if (parsed == null || !parsed.isParsed() || (ordinaryChecks.isEmpty() && commentChecks.isEmpty())) {
+            return;
+        }
+        if (parsed.hasCommentNodes()) {
+            // Walked before, so the plain tree is gone
+            parsed = ParsedSource.parse(parsed.getPath(), parsed.getSource());
+        }
+
+        FileContents contents = parsed.getFileContents();
+        DetailAST root = parsed.getAst();
+        if (!ordinaryChecks.isEmpty()) {
+            walk(root, contents, ordinaryChecks, tokenToOrdinaryChecks);
+        }
+        if (!commentChecks.isEmpty()) {
+            walk(parsed.getAstWithComments(), contents, commentChecks, tokenToCommentChecks);
+        }
+        addViolations(filters.isEmpty() ? violations : filter(file.getAbsolutePath(), contents, root));
+        violations.clear();
+    }
+
+    @Override
+    public void destroy() {
+        ordinaryChecks.forEach(AbstractCheck::destroy);
+        commentChecks.forEach(AbstractCheck::destroy);
+        super.destroy();
+    }
+
+    private void registerCheck(AbstractCheck check) throws CheckstyleException {
+        int[] tokens;
+        Set<String> tokenNames = check.getTokenNames();
+        if (tokenNames.isEmpty()) {
+            tokens = check.getDefaultTokens();
+        } else {
+            tokens = check.getRequiredTokens();
+            int[] acceptable = check.getAcceptableTokens();
+            Arrays.sort(acceptable);
+            for (String tokenName : tokenNames) {
+                int token = TokenUtil.getTokenId(tokenName);
+                if (Arrays.binarySearch(acceptable, token) < 0) {
+                    throw new CheckstyleException("Token \"" + tokenName + "\" was not found in "
+                            + "Acceptable tokens list in check " + check.getClass().getName());
+                }
+                registerCheck(token, check);
+            }
+        }
+        for (int token : tokens) {
+            registerCheck(token, check);
+        }
+        if (check.isCommentNodesRequired()) {
+            commentChecks.add(check);
+        } else {
+            ordinaryChecks.add(check);
+        }
+    }
+
+    private void registerCheck(int token, AbstractCheck check) throws CheckstyleException {
+        if (check.isCommentNodesRequired()) {
+            tokenToCommentChecks.computeIfAbsent(token, t -> checkSet()).add(check);
+        } else if (TokenUtil.isCommentType(token)) {
+            throw new CheckstyleException("Check '" + check.getClass().getName() + "' waits for comment type "
+                    + "token ('" + TokenUtil.getTokenName(token) + "') and should override "
+                    + "'isCommentNodesRequired()' method to return 'true'");
+        } else {
+            tokenToOrdinaryChecks.computeIfAbsent(token, t -> checkSet()).add(check);
+        }
+    }
+
+    private void walk(DetailAST root, FileContents contents, Set<AbstractCheck> checks,
+                      Map<Integer, Set<AbstractCheck>> tokenToChecks) {
+        for (AbstractCheck check : checks) {
+            check.setFileContents(contents);
+            check.clearViolations();
+            check.beginTree(root);
+        }
+
+        DetailAST node = root;
+        while (node != null) {
+            for (AbstractCheck check : tokenToChecks.getOrDefault(node.getType(), Set.of())) {
+                check.visitToken(node);
+            }
+            DetailAST next = node.getFirstChild();
+            while (node != null && next == null) {
+                for (AbstractCheck check : tokenToChecks.getOrDefault(node.getType(), Set.of())) {
+                    check.leaveToken(node);
+                }
+                next = node.getNextSibling();
+                node = node.getParent();
+            }
+            node = next;
+        }
+
+        for (AbstractCheck check : checks) {
+            check.finishTree(root);
+            violations.addAll(check.getViolations());
+        }
+    }
+
+    private SortedSet<Violation> filter(String fileName, FileContents contents, DetailAST root) {
+        SortedSet<Violation> accepted = new TreeSet<>();
+        for (Violation violation : violations) {
+            TreeWalkerAuditEvent event = new TreeWalkerAuditEvent(contents, fileName, violation, root);
+            if (filters.stream().allMatch(filter -> filter.accept(event))) {
+                accepted.add(violation);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Checks in a fixed order, so that their violations do not depend on registration order
+     */
+    private static Set<AbstractCheck> checkSet() {
+        return new TreeSet<>(Comparator.<AbstractCheck, String>comparing(check -> check.getClass().getName())
+                .thenComparing(AbstractCheck::getId, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparingInt(AbstractCheck::hashCode));
+    }
+}
@@ -3,36 +3,49 @@ package com.codecritic.service;
 import com.codecritic.model.ModifiedFile;
 import com.codecritic.model.AnalysisReport;
 import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.sourceforge.pmd.PMD;
-import net.sourceforge.pmd.PMDConfiguration;
-import net.sourceforge.pmd.Report;
-import net.sourceforge.pmd.RuleViolation;
-
-import com.puppycrawl.tools.checkstyle.Checker;
-import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
 import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
-import com.puppycrawl.tools.checkstyle.api.Configuration;
-import com.puppycrawl.tools.checkstyle.api.AuditEvent;
-import com.puppycrawl.tools.checkstyle.api.AuditListener;
-import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
-
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs PMD and Checkstyle on the sources of changed files.
+ * <p>
+ * Each Java file is first matched against the rule pack of {@link PreScreenAnalyzer}, whose
+ * findings are reported with the others, and then analyzed by PMD and Checkstyle. The time each
+ * tier takes per batch is recorded in the {@code codecritic.analysis.tier} metric.
+ * <p>
+ * Files of the same pull request head are collected into one batch until none has been submitted
+ * for {@code static.analysis.batch-window-ms}, then analyzed together on the static analysis
+ * executor, sharing one PMD run and one Checkstyle run. Files arrive as they are fetched, so the
+ * window restarts with each one and a PR's files end up in one batch unless fetching pauses for
+ * longer. {@code static.analysis.max-batch-size} bounds a batch, a full one being analyzed at
+ * once; 0, the default, leaves batches unbounded, one per PR. Results are cached by
+ * content in {@link AnalysisResultCache}, so a source analyzed before under the same rules is not
+ * analyzed again.
+ */
 @Service
 public class StaticAnalysisService {
 
@@ -44,169 +57,365 @@ public class StaticAnalysisService {
     @Value("${static.analysis.checkstyle.enabled:true}")
     private boolean checkstyleEnabled;
     
+    private final CheckstyleAnalyzer checkstyleAnalyzer;
+    private final PmdAnalyzer pmdAnalyzer;
+    private final JavaSourceParser javaSourceParser;
+    private final PreScreenAnalyzer preScreenAnalyzer;
+    private final AnalysisResultCache resultCache;
+    private final Timer pmdRuns;
+    private final Timer checkstyleRuns;
+    private final Executor staticAnalysisExecutor;
+    private final long batchWindowMs;
+    private final int maxBatchSize;
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final ScheduledExecutorService batchTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "static-analysis-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    public StaticAnalysisService(
+            CheckstyleAnalyzer checkstyleAnalyzer,
+            PmdAnalyzer pmdAnalyzer,
+            JavaSourceParser javaSourceParser,
+            PreScreenAnalyzer preScreenAnalyzer,
+            AnalysisResultCache resultCache,
+            MeterRegistry meterRegistry,
+            @Qualifier("staticAnalysisExecutor") Executor staticAnalysisExecutor,
+            @Value("${static.analysis.batch-window-ms:50}") long batchWindowMs,
+            @Value("${static.analysis.max-batch-size:0}") int maxBatchSize) {
+        this.checkstyleAnalyzer = checkstyleAnalyzer;
+        this.pmdAnalyzer = pmdAnalyzer;
+        this.javaSourceParser = javaSourceParser;
+        this.preScreenAnalyzer = preScreenAnalyzer;
+        this.resultCache = resultCache;
+        this.pmdRuns = tierRuns(meterRegistry, "pmd");
+        this.checkstyleRuns = tierRuns(meterRegistry, "checkstyle");
+        this.staticAnalysisExecutor = staticAnalysisExecutor;
+        this.batchWindowMs = batchWindowMs;
+        this.maxBatchSize = maxBatchSize;
+    }
+    
+    private static Timer tierRuns(MeterRegistry meterRegistry, String tier) {
+        return Timer.builder("codecritic.analysis.tier")
+                .description("Time an analysis tier took on a batch of files")
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+    
     /**
      * Analyzes a file using static analysis tools and returns a report
      */
     public AnalysisReport analyzeFile(ModifiedFile file) {
-        List<AnalysisIssue> issues = new ArrayList<>();
+        return analyzeFile(file, file.getDiffContent());
+    }
+    
+    /**
+     * Analyzes the given source of a file, such as its full post-change content
+     */
+    public AnalysisReport analyzeFile(ModifiedFile file, String source) {
+        return analyzeFiles(List.of(file), List.of(source)).get(0);
+    }
+    
+    /**
+     * Queue the given source of a file for analysis in a batch with other files of the same pull
+     * request
+     * 
+     * @param parsedSource the source parsed already, or null to parse it when it is analyzed
+     * @return a future with the file's report, already complete if the result was cached;
+     *         cancelling it drops the file from its batch
+     */
+    public CompletableFuture<AnalysisReport> submit(PullRequest pullRequest, ModifiedFile file, String source,
+                                                    ParsedSource parsedSource) {
+        AnalysisReport cached = cachedReport(rulesFingerprint(), file, source);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
         
-        try {
-            // Create a temporary file with the content
-            Path tempFilePath = createTempFile(file);
-            
-            // Run PMD analysis if enabled
-            if (pmdEnabled && file.getFilePath().endsWith(".java")) {
-                List<AnalysisIssue> pmdIssues = runPMDAnalysis(tempFilePath.toFile());
-                issues.addAll(pmdIssues);
+        CompletableFuture<AnalysisReport> report = new CompletableFuture<>();
+        if (batchWindowMs <= 0 || maxBatchSize == 1) {
+            runBatch(Batch.of(file, source, parsedSource, report));
+            return report;
+        }
+        
+        String key = pullRequest.getRepository() + "#" + pullRequest.getPrId() + "@" + pullRequest.getHeadSha();
+        Batch full = null;
+        synchronized (batches) {
+            Batch batch = batches.computeIfAbsent(key, k -> new Batch());
+            batch.add(file, source, parsedSource, report);
+            if (batch.flush != null) {
+                batch.flush.cancel(false);
             }
-            
-            // Run Checkstyle analysis if enabled
-            if (checkstyleEnabled && file.getFilePath().endsWith(".java")) {
-                List<AnalysisIssue> checkstyleIssues = runCheckstyleAnalysis(tempFilePath.toFile());
-                issues.addAll(checkstyleIssues);
+            if (maxBatchSize > 0 && batch.files.size() >= maxBatchSize) {
+                batches.remove(key);
+                full = batch;
+            } else {
+                batch.flush = batchTimer.schedule(() -> flush(key, batch), batchWindowMs, TimeUnit.MILLISECONDS);
             }
-            
-            // Clean up temp file
-            Files.deleteIfExists(tempFilePath);
-            
-        } catch (Exception e) {
-            logger.error("Error during static analysis of file {}: {}", 
-                    file.getFileName(), e.getMessage(), e);
-            
-            // Add an error message as an issue
-            issues.add(AnalysisIssue.builder()
-                    .issueId(UUID.randomUUID().toString())
-                    .description("Error analyzing file: " + e.getMessage())
-                    .severity(AnalysisIssue.Severity.HIGH)
-                    .lineNumber(0)
-                    .build());
         }
-        
-        return AnalysisReport.builder()
-                .reportId(UUID.randomUUID().toString())
-                .fileId(file.getFileId())
-                .generatedAt(Instant.now())
-                .issues(issues)
-                .build();
+        if (full != null) {
+            runBatch(full);
+        }
+        return report;
+    }
+    
+    private void flush(String key, Batch batch) {
+        synchronized (batches) {
+            if (!batches.remove(key, batch)) {
+                return;
+            }
+        }
+        runBatch(batch);
     }
     
     /**
-     * Creates a temporary file with the diff content
+     * Analyze a batch on the static analysis executor, skipping files whose report was cancelled
      */
-    private Path createTempFile(ModifiedFile file) throws IOException {
-        Path tempFilePath = Files.createTempFile("codecritic_", "_" + file.getFileName());
-        try (FileWriter writer = new FileWriter(tempFilePath.toFile())) {
-            writer.write(file.getDiffContent());
+    private void runBatch(Batch batch) {
+        try {
+            staticAnalysisExecutor.execute(() -> {
+                Batch pending = batch.withoutCancelled();
+                if (pending.files.isEmpty()) {
+                    return;
+                }
+                logger.debug("Analyzing a batch of {} file(s)", pending.files.size());
+                try {
+                    List<AnalysisReport> reports = analyzeUncached(pending.files, pending.sources, pending.parsedSources);
+                    for (int i = 0; i < reports.size(); i++) {
+                        pending.reports.get(i).complete(reports.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    pending.reports.forEach(report -> report.completeExceptionally(e));
+                }
+            });
+        } catch (RuntimeException e) {
+            batch.reports.forEach(report -> report.completeExceptionally(e));
         }
-        return tempFilePath;
     }
     
     /**
-     * Runs PMD analysis on a file
+     * Analyzes the sources of several files together, in one PMD run and one Checkstyle run for the
+     * files whose results are not cached
+     * 
+     * @return a report for each file, in the order of {@code files}
      */
-    private List<AnalysisIssue> runPMDAnalysis(File file) {
-        List<AnalysisIssue> issues = new ArrayList<>();
+    public List<AnalysisReport> analyzeFiles(List<ModifiedFile> files, List<String> sources) {
+        String fingerprint = rulesFingerprint();
+        List<AnalysisReport> reports = new ArrayList<>();
+        List<ModifiedFile> missedFiles = new ArrayList<>();
+        List<String> missedSources = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            AnalysisReport cached = cachedReport(fingerprint, files.get(i), sources.get(i));
+            reports.add(cached);
+            if (cached == null) {
+                missedFiles.add(files.get(i));
+                missedSources.add(sources.get(i));
+            }
+        }
+        if (missedFiles.isEmpty()) {
+            return reports;
+        }
         
+        List<ParsedSource> unparsed = new ArrayList<>(Collections.nCopies(missedFiles.size(), null));
+        Iterator<AnalysisReport> analyzed = analyzeUncached(missedFiles, missedSources, unparsed).iterator();
+        for (int i = 0; i < reports.size(); i++) {
+            if (reports.get(i) == null) {
+                reports.set(i, analyzed.next());
+            }
+        }
+        return reports;
+    }
+    
+    /**
+     * Fingerprint of the rules of the enabled analyzers, or null if results cannot be cached
+     */
+    private String rulesFingerprint() {
+        if (!resultCache.isEnabled()) {
+            return null;
+        }
         try {
-            // Configure PMD
-            PMDConfiguration config = new PMDConfiguration();
-            config.setInputFilePath(file.getAbsolutePath());
-            config.setRuleSets("category/java/bestpractices.xml,category/java/errorprone.xml");
-            
-            // Use the current non-deprecated API
-            PMD.runPmd(config);
-            
-            // In a real implementation, we would capture violations
-            
-        } catch (Exception e) {
-            logger.error("PMD analysis error: {}", e.getMessage(), e);
+            return (pmdEnabled ? pmdAnalyzer.fingerprint() : "-") + "/"
+                    + (checkstyleEnabled ? checkstyleAnalyzer.fingerprint() : "-") + "/"
+                    + preScreenAnalyzer.fingerprint();
+        } catch (CheckstyleException e) {
+            logger.warn("Not caching static analysis results: {}", e.getMessage());
+            return null;
         }
-        
-        return issues;
     }
     
     /**
-     * Runs Checkstyle analysis on a file
+     * The cached report of a Java file's source, or null if it has to be analyzed
+     */
+    private AnalysisReport cachedReport(String fingerprint, ModifiedFile file, String source) {
+        if (fingerprint == null || !file.getFilePath().endsWith(".java")) {
+            return null;
+        }
+        List<AnalysisIssue> issues = resultCache.get(
+                AnalysisResultCache.key(fingerprint, file.getFilePath(), source));
+        return issues != null ? report(file, issues, false) : null;
+    }
+    
+    /**
+     * Analyzes the sources of several files together, in memory under their repository paths, and
+     * caches the results of the files that were analyzed completely. A file that an analyzer failed
+     * on gets a failed report, which is neither cached nor carried over to later reviews. Java sources that were not
+     * parsed yet are parsed once here and pre-screened, then go to PMD and Checkstyle; sources that
+     * are not valid Java go only to Checkstyle's line-based checks.
+     * 
+     * @param parsedSources the parsed source of each file, or null where it still has to be parsed
+     * @return a report for each file, in the order of {@code files}
      */
-    private List<AnalysisIssue> runCheckstyleAnalysis(File file) {
-        List<AnalysisIssue> issues = new ArrayList<>();
+    private List<AnalysisReport> analyzeUncached(List<ModifiedFile> files, List<String> sources,
+                                                 List<ParsedSource> parsedSources) {
+        String fingerprint = rulesFingerprint();
+        List<List<AnalysisIssue>> issues = new ArrayList<>();
+        boolean[] failed = new boolean[files.size()];
         
-        try {
-            // Load Checkstyle configuration
-            Properties properties = new Properties();
-            
-            // Create a property resolver for Checkstyle
-            com.puppycrawl.tools.checkstyle.PropertyResolver resolver = 
-                propertyName -> properties.getProperty(propertyName);
-            
-            // Use our custom configuration file
-            Configuration config = ConfigurationLoader.loadConfiguration(
-                    getClass().getClassLoader().getResource("checkstyle.xml").toExternalForm(),
-                    resolver);
-            
-            Checker checker = new Checker();
-            checker.setModuleClassLoader(getClass().getClassLoader());
-            checker.configure(config);
-            
-            // Create a listener for violations
-            List<AuditEvent> events = new ArrayList<>();
-            checker.addListener(new AuditListener() {
-                @Override
-                public void auditStarted(AuditEvent event) {}
-                
-                @Override
-                public void auditFinished(AuditEvent event) {}
-                
-                @Override
-                public void fileStarted(AuditEvent event) {}
-                
-                @Override
-                public void fileFinished(AuditEvent event) {}
-                
-                @Override
-                public void addError(AuditEvent event) {
-                    events.add(event);
+        List<ParsedSource> javaSources = new ArrayList<>();
+        List<Integer> javaIndexes = new ArrayList<>();
+        List<String> validPaths = new ArrayList<>();
+        List<String> validSources = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            issues.add(new ArrayList<>());
+            String path = files.get(i).getFilePath();
+            if (path.endsWith(".java")) {
+                ParsedSource parsed = parsedSources.get(i) != null
+                        ? parsedSources.get(i)
+                        : javaSourceParser.parse(path, sources.get(i));
+                issues.get(i).addAll(preScreenAnalyzer.screen(parsed));
+                javaSources.add(parsed);
+                javaIndexes.add(i);
+                if (parsed.isParsed()) {
+                    validPaths.add(path);
+                    validSources.add(sources.get(i));
+                    validIndexes.add(i);
                 }
-                
-                @Override
-                public void addException(AuditEvent event, Throwable throwable) {
-                    logger.error("Checkstyle exception: {}", throwable.getMessage());
+            }
+        }
+        
+        // Run PMD analysis if enabled; it could not parse the sources that are not valid Java either
+        if (pmdEnabled && !validPaths.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                List<List<AnalysisIssue>> pmdIssues = pmdAnalyzer.analyze(validPaths, validSources);
+                for (int j = 0; j < validIndexes.size(); j++) {
+                    issues.get(validIndexes.get(j)).addAll(pmdIssues.get(j));
                 }
-            });
-            
-            // Run Checkstyle
-            List<File> files = new ArrayList<>();
-            files.add(file);
-            checker.process(files);
-            
-            // Convert Checkstyle violations to analysis issues
-            for (AuditEvent event : events) {
-                SeverityLevel severityLevel = event.getSeverityLevel();
-                AnalysisIssue.Severity severity;
-                
-                if (severityLevel == SeverityLevel.ERROR) {
-                    severity = AnalysisIssue.Severity.MEDIUM;
-                } else if (severityLevel == SeverityLevel.WARNING) {
-                    severity = AnalysisIssue.Severity.LOW;
-                } else {
-                    severity = AnalysisIssue.Severity.LOW;
+            } catch (RuntimeException e) {
+                for (int i : validIndexes) {
+                    failed[i] = true;
+                    issues.get(i).add(errorIssue(files.get(i), e));
                 }
-                
-                issues.add(AnalysisIssue.builder()
-                        .issueId(UUID.randomUUID().toString())
-                        .description(event.getMessage())
-                        .severity(severity)
-                        .lineNumber(event.getLine())
-                        .columnNumber(event.getColumn())
-                        .build());
+            } finally {
+                pmdRuns.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
-            
-            checker.destroy();
-            
-        } catch (CheckstyleException e) {
-            logger.error("Checkstyle analysis error: {}", e.getMessage(), e);
         }
         
-        return issues;
+        // Run Checkstyle analysis if enabled
+        if (checkstyleEnabled && !javaSources.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                List<List<AnalysisIssue>> checkstyleIssues = checkstyleAnalyzer.check(javaSources);
+                for (int j = 0; j < javaIndexes.size(); j++) {
+                    int i = javaIndexes.get(j);
+                    if (checkstyleIssues.get(j) != null) {
+                        issues.get(i).addAll(checkstyleIssues.get(j));
+                    } else {
+                        failed[i] = true;
+                        issues.get(i).add(errorIssue("Checkstyle failed on this file"));
+                    }
+                }
+            } catch (CheckstyleException | RuntimeException e) {
+                for (int i : javaIndexes) {
+                    failed[i] = true;
+                    issues.get(i).add(errorIssue(files.get(i), e));
+                }
+            } finally {
+                checkstyleRuns.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        
+        // Results are only cached under the rules they were produced with
+        boolean cacheable = fingerprint != null && fingerprint.equals(rulesFingerprint());
+        List<AnalysisReport> reports = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String path = files.get(i).getFilePath();
+            if (cacheable && !failed[i] && path.endsWith(".java")) {
+                resultCache.put(AnalysisResultCache.key(fingerprint, path, sources.get(i)), issues.get(i));
+            }
+            reports.add(report(files.get(i), issues.get(i), failed[i]));
+        }
+        return reports;
+    }
+    
+    private static AnalysisReport report(ModifiedFile file, List<AnalysisIssue> issues, boolean failed) {
+        return AnalysisReport.builder()
+                .reportId(UUID.randomUUID().toString())
+                .fileId(file.getFileId())
+                .generatedAt(Instant.now())
+                .issues(issues)
+                .failed(failed)
+                .build();
+    }
+    
+    private AnalysisIssue errorIssue(ModifiedFile file, Exception e) {
+        logger.error("Error during static analysis of file {}: {}", 
+                file.getFileName(), e.getMessage(), e);
+        return errorIssue(e.getMessage());
+    }
+    
+    /**
+     * An issue about the whole file, reporting that it could not be analyzed
+     */
+    private static AnalysisIssue errorIssue(String message) {
+        return AnalysisIssue.builder()
+                .issueId(UUID.randomUUID().toString())
+                .description("Error analyzing file: " + message)
+                .severity(AnalysisIssue.Severity.HIGH)
+                .lineNumber(0)
+                .build();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        batchTimer.shutdownNow();
+    }
+    
+    /**
+     * Files of one pull request waiting to be analyzed together
+     */
+    private static final class Batch {
+        private final List<ModifiedFile> files = new ArrayList<>();
+        private final List<String> sources = new ArrayList<>();
+        private final List<ParsedSource> parsedSources = new ArrayList<>();
+        private final List<CompletableFuture<AnalysisReport>> reports = new ArrayList<>();
+        /** Analyzes the batch once no file has been added for the window */
+        private ScheduledFuture<?> flush;
+        
+        private static Batch of(ModifiedFile file, String source, ParsedSource parsedSource,
+                                CompletableFuture<AnalysisReport> report) {
+            Batch batch = new Batch();
+            batch.add(file, source, parsedSource, report);
+            return batch;
+        }
+        
+        private void add(ModifiedFile file, String source, ParsedSource parsedSource,
+                         CompletableFuture<AnalysisReport> report) {
+            files.add(file);
+            sources.add(source);
+            parsedSources.add(parsedSource);
+            reports.add(report);
+        }
+        
+        private Batch withoutCancelled() {
+            Batch pending = new Batch();
+            for (int i = 0; i < files.size(); i++) {
+                if (!reports.get(i).isDone()) {
+                    pending.add(files.get(i), sources.get(i), parsedSources.get(i), reports.get(i));
+                }
+            }
+            return pending;
+        }
     }
-} 
\ No newline at end of file
+}
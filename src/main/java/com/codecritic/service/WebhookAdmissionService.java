@@ -0,0 +1,125 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded admission in front of webhook processing.
+ * <p>
+ * Tracks how many accepted events are still unsettled (queue depth) and how many static-analysis
+ * and AI tasks are running. Once either passes the shed threshold, low-priority events (drafts,
+ * bot senders, actions other than opened/synchronize) are rejected. At full capacity every event
+ * is rejected, and the caller answers 429 so the delivery is retried later.
+ */
+@Service
+public class WebhookAdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookAdmissionService.class);
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger inFlightWork = new AtomicInteger();
+
+    private final int maxQueueDepth;
+    private final int maxInFlightWork;
+    private final double shedThreshold;
+    private final int retryAfterSeconds;
+
+    private final Counter admitted;
+    private final Counter rejectedSaturated;
+    private final Counter rejectedShed;
+
+    public WebhookAdmissionService(
+            MeterRegistry meterRegistry,
+            @Value("${webhook.admission.max-queue-depth:100}") int maxQueueDepth,
+            @Value("${webhook.admission.max-in-flight-work:64}") int maxInFlightWork,
+            @Value("${webhook.admission.shed-threshold:0.75}") double shedThreshold,
+            @Value("${webhook.admission.retry-after-seconds:60}") int retryAfterSeconds) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxInFlightWork = maxInFlightWork;
+        this.shedThreshold = shedThreshold;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("codecritic.webhook.queue.depth", queueDepth, AtomicInteger::get)
+                .description("Accepted webhook events that are not settled yet")
+                .register(meterRegistry);
+        Gauge.builder("codecritic.webhook.work.in-flight", inFlightWork, AtomicInteger::get)
+                .description("Running static-analysis and AI review tasks")
+                .register(meterRegistry);
+        this.admitted = Counter.builder("codecritic.webhook.admitted").register(meterRegistry);
+        this.rejectedSaturated = Counter.builder("codecritic.webhook.rejected")
+                .tag("reason", "saturated").register(meterRegistry);
+        this.rejectedShed = Counter.builder("codecritic.webhook.rejected")
+                .tag("reason", "shed").register(meterRegistry);
+    }
+
+    /**
+     * Try to admit an event. An admitted event must later be passed to {@link #release()}.
+     */
+    public boolean tryAdmit(GitHubWebhookEvent event) {
+        while (true) {
+            int depth = queueDepth.get();
+            int work = inFlightWork.get();
+
+            if (depth >= maxQueueDepth || work >= maxInFlightWork) {
+                rejectedSaturated.increment();
+                logger.warn("Rejecting event {} for {}: saturated (queue {}, in-flight work {})",
+                        event.getEventId(), event.getRepositoryName(), depth, work);
+                return false;
+            }
+
+            boolean pressured = depth >= maxQueueDepth * shedThreshold || work >= maxInFlightWork * shedThreshold;
+            if (pressured && isLowPriority(event)) {
+                rejectedShed.increment();
+                logger.info("Shedding low-priority event {} for {} (action {}, draft {}, sender {})",
+                        event.getEventId(), event.getRepositoryName(), event.getAction(),
+                        event.isDraft(), event.getSenderType());
+                return false;
+            }
+
+            if (queueDepth.compareAndSet(depth, depth + 1)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Count an event that bypasses admission, such as one replayed from the journal
+     */
+    public void forceAdmit() {
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Release the slot held by an admitted event once it is settled
+     */
+    public void release() {
+        queueDepth.decrementAndGet();
+    }
+
+    public void workStarted() {
+        inFlightWork.incrementAndGet();
+    }
+
+    public void workFinished() {
+        inFlightWork.decrementAndGet();
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    private boolean isLowPriority(GitHubWebhookEvent event) {
+        return event.isDraft()
+                || "Bot".equalsIgnoreCase(event.getSenderType())
+                || !("opened".equals(event.getAction()) || "synchronize".equals(event.getAction()));
+    }
+}
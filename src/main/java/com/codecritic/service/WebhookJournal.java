@@ -0,0 +1,320 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of accepted webhook events.
+ * <p>
+ * Events are written into a pre-allocated mapped segment before the webhook is acknowledged,
+ * so they survive a process restart or OOM. Dirty segments and the consumer checkpoint are
+ * forced to disk by a background flusher every {@code journal.flush-interval-ms}, which batches
+ * many appends into a single fsync. Records are laid out as {@code [length][crc32][json]} and a
+ * zero length marks the end of the written data.
+ */
+@Component
+public class WebhookJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${journal.dir:data/journal}")
+    private String journalDir;
+
+    @Value("${journal.segment-size-bytes:67108864}")
+    private int segmentSize;
+
+    @Value("${journal.flush-interval-ms:10}")
+    private long flushIntervalMs;
+
+    private Path directory;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+    private final List<GitHubWebhookEvent> replay = new ArrayList<>();
+    private final TreeSet<Long> acknowledged = new TreeSet<>();
+    private ScheduledExecutorService flusher;
+
+    private Segment active;
+    private long nextSequence;
+    private boolean dirty;
+
+    private MappedByteBuffer checkpointBuffer;
+    private long checkpoint = -1;
+    private boolean checkpointDirty;
+
+    public WebhookJournal(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            logger.info("Webhook journal is disabled");
+            return;
+        }
+
+        directory = Paths.get(journalDir);
+        Files.createDirectories(directory);
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean fresh = channel.size() < Long.BYTES;
+            checkpointBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            if (fresh) {
+                checkpointBuffer.putLong(0, -1);
+            }
+            checkpoint = checkpointBuffer.getLong(0);
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path file : files) {
+            recover(file);
+        }
+
+        if (active == null) {
+            roll(checkpoint + 1, segmentSize);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        logger.info("Webhook journal opened at {} with {} segment(s), checkpoint {}, {} event(s) to replay",
+                directory.toAbsolutePath(), segments.size(), checkpoint, replay.size());
+    }
+
+    /**
+     * Append an event to the journal and return its sequence number, or -1 when disabled
+     */
+    public long append(GitHubWebhookEvent event) throws IOException {
+        if (!enabled) {
+            return -1;
+        }
+
+        byte[] payload = objectMapper.writeValueAsBytes(event);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (this) {
+            int required = HEADER_BYTES + payload.length + Integer.BYTES;
+            if (active.buffer.remaining() < required) {
+                retired.add(active.buffer);
+                roll(nextSequence, Math.max(segmentSize, required));
+            }
+
+            MappedByteBuffer buffer = active.buffer;
+            int position = buffer.position();
+            buffer.position(position + Integer.BYTES);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(payload);
+            // Publish the length last so a partially written record is never read back
+            buffer.putInt(buffer.position(), 0);
+            buffer.putInt(position, payload.length);
+
+            dirty = true;
+            long sequence = nextSequence++;
+            event.setJournalSequence(sequence);
+            return sequence;
+        }
+    }
+
+    /**
+     * Mark an event as consumed. The checkpoint advances over the contiguous acknowledged prefix.
+     */
+    public synchronized void acknowledge(Long sequence) {
+        if (!enabled || sequence == null || sequence <= checkpoint) {
+            return;
+        }
+        acknowledged.add(sequence);
+        advanceCheckpoint();
+    }
+
+    /**
+     * Events that were journaled but not acknowledged before the last shutdown. Drained once.
+     */
+    public synchronized List<GitHubWebhookEvent> drainReplay() {
+        List<GitHubWebhookEvent> events = new ArrayList<>(replay);
+        replay.clear();
+        return events;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Group commit: force every segment written since the last flush plus the checkpoint
+     */
+    private void flush() {
+        List<MappedByteBuffer> toForce;
+        Long checkpointToWrite = null;
+        List<Segment> obsolete = new ArrayList<>();
+
+        synchronized (this) {
+            toForce = new ArrayList<>(retired);
+            retired.clear();
+            if (dirty) {
+                toForce.add(active.buffer);
+                dirty = false;
+            }
+            if (checkpointDirty) {
+                checkpointToWrite = checkpoint;
+                checkpointDirty = false;
+                // A segment is obsolete once the next segment starts at or before the checkpoint
+                while (segments.size() > 1) {
+                    Segment oldest = segments.pollFirst();
+                    if (segments.peekFirst().baseSequence <= checkpoint + 1) {
+                        obsolete.add(oldest);
+                    } else {
+                        segments.addFirst(oldest);
+                        break;
+                    }
+                }
+            }
+        }
+
+        try {
+            for (MappedByteBuffer buffer : toForce) {
+                buffer.force();
+            }
+            if (checkpointToWrite != null) {
+                checkpointBuffer.putLong(0, checkpointToWrite);
+                checkpointBuffer.force();
+            }
+            for (Segment segment : obsolete) {
+                Files.deleteIfExists(segment.path);
+                logger.debug("Deleted fully consumed journal segment {}", segment.path.getFileName());
+            }
+        } catch (Exception e) {
+            logger.error("Error flushing webhook journal: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create and map a new segment starting at the given sequence
+     */
+    private void roll(long baseSequence, int size) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", baseSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            active = new Segment(baseSequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+        segments.addLast(active);
+        nextSequence = baseSequence;
+        logger.debug("Rolled webhook journal to segment {}", path.getFileName());
+    }
+
+    /**
+     * Scan an existing segment, queue unconsumed events for replay and position after the last valid record
+     */
+    private void recover(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long baseSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+
+        long sequence = baseSequence;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int position = buffer.position();
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.remaining() - HEADER_BYTES) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                logger.warn("Torn record at offset {} in journal segment {}, truncating", position, name);
+                break;
+            }
+
+            if (sequence > checkpoint) {
+                try {
+                    GitHubWebhookEvent event = objectMapper.readValue(payload, GitHubWebhookEvent.class);
+                    event.setJournalSequence(sequence);
+                    replay.add(event);
+                } catch (IOException e) {
+                    logger.error("Skipping unreadable journal record {}: {}", sequence, e.getMessage());
+                    acknowledged.add(sequence);
+                }
+            }
+
+            buffer.position(position + HEADER_BYTES + length);
+            sequence++;
+        }
+
+        if (buffer.remaining() >= Integer.BYTES) {
+            buffer.putInt(buffer.position(), 0);
+        }
+
+        active = new Segment(baseSequence, path, buffer);
+        segments.addLast(active);
+        nextSequence = sequence;
+        advanceCheckpoint();
+    }
+
+    private void advanceCheckpoint() {
+        while (!acknowledged.isEmpty() && acknowledged.first() == checkpoint + 1) {
+            checkpoint = acknowledged.pollFirst();
+            checkpointDirty = true;
+        }
+    }
+
+    private record Segment(long baseSequence, Path path, MappedByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Re-submits journaled webhook events that were not fully processed before the last shutdown.
+ * <p>
+ * Events are handed to the webhook executor only as fast as its queue takes them, so a long
+ * journal does not overrun it. An event the executor still rejects is acknowledged and dropped,
+ * as the controller does, since an unacknowledged record would hold the checkpoint back.
+ */
+@Component
+public class WebhookJournalReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookJournalReplayer.class);
+
+    /** How long to wait for room in the webhook executor's queue before handing an event off anyway */
+    private static final Duration CAPACITY_WAIT = Duration.ofSeconds(30);
+    private static final long CAPACITY_POLL_MS = 10;
+
+    private final WebhookJournal webhookJournal;
+    private final GitHubWebhookService githubWebhookService;
+    private final WebhookAdmissionService admissionService;
+    private final ThreadPoolTaskExecutor webhookExecutor;
+
+    public WebhookJournalReplayer(WebhookJournal webhookJournal, GitHubWebhookService githubWebhookService,
+                                  WebhookAdmissionService admissionService,
+                                  @Qualifier("webhookExecutor") ThreadPoolTaskExecutor webhookExecutor) {
+        this.webhookJournal = webhookJournal;
+        this.githubWebhookService = githubWebhookService;
+        this.admissionService = admissionService;
+        this.webhookExecutor = webhookExecutor;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replay() {
+        List<GitHubWebhookEvent> events = webhookJournal.drainReplay();
+        if (events.isEmpty()) {
+            return;
+        }
+
+        logger.info("Replaying {} unprocessed webhook event(s) from the journal", events.size());
+        int dropped = 0;
+        for (GitHubWebhookEvent event : events) {
+            awaitCapacity();
+            // These were admitted before the restart, so they are not subject to shedding
+            admissionService.forceAdmit();
+            try {
+                githubWebhookService.processWebhookEvent(event);
+            } catch (RuntimeException e) {
+                logger.error("Could not replay webhook event {}: {}", event.getJournalSequence(), e.getMessage(), e);
+                webhookJournal.acknowledge(event.getJournalSequence());
+                admissionService.release();
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            logger.warn("Dropped {} of {} replayed webhook event(s)", dropped, events.size());
+        }
+    }
+
+    /**
+     * Wait until the webhook executor's queue has room for another event, up to {@link #CAPACITY_WAIT}
+     */
+    private void awaitCapacity() {
+        BlockingQueue<Runnable> queue = webhookExecutor.getThreadPoolExecutor().getQueue();
+        long deadline = System.nanoTime() + CAPACITY_WAIT.toNanos();
+        while (queue.remainingCapacity() == 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(CAPACITY_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
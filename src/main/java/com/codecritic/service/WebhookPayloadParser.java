@@ -0,0 +1,163 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Pulls the few fields the review pipeline needs out of a webhook payload in a single
+ * streaming pass. Subtrees that are not needed are skipped without being materialized.
+ */
+@Component
+public class WebhookPayloadParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookPayloadParser.class);
+
+    private final JsonFactory jsonFactory;
+
+    @Value("${github.webhook.reviewable-actions:opened,reopened,synchronize,ready_for_review}")
+    private Set<String> reviewableActions;
+
+    public WebhookPayloadParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Populate the builder with the fields extracted from the payload
+     */
+    public GitHubWebhookEvent.GitHubWebhookEventBuilder parse(byte[] payload,
+                                                              GitHubWebhookEvent.GitHubWebhookEventBuilder builder)
+            throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Webhook payload is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "action" -> builder.action(parser.getValueAsString());
+                    case "number" -> builder.pullRequestId(parser.getValueAsLong());
+                    case "repository" -> parseRepository(parser, value, builder);
+                    case "pull_request" -> parsePullRequest(parser, value, builder);
+                    case "sender" -> parseSender(parser, value, builder);
+                    case "installation" -> parseInstallation(parser, value, builder);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Whether the action of a pull request event warrants a review
+     */
+    public boolean isReviewable(GitHubWebhookEvent event) {
+        boolean reviewable = event.getAction() != null && reviewableActions.contains(event.getAction())
+                && event.getPullRequestId() != null && event.getRepositoryName() != null;
+        if (!reviewable) {
+            logger.debug("Ignoring pull_request action '{}' for {}", event.getAction(), event.getRepositoryName());
+        }
+        return reviewable;
+    }
+
+    private void parseRepository(JsonParser parser, JsonToken value,
+                                 GitHubWebhookEvent.GitHubWebhookEventBuilder builder) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("full_name".equals(field)) {
+                builder.repositoryName(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parsePullRequest(JsonParser parser, JsonToken value,
+                                  GitHubWebhookEvent.GitHubWebhookEventBuilder builder) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            switch (field) {
+                case "draft" -> builder.draft(parser.getValueAsBoolean());
+                case "head" -> builder.headSha(readNestedText(parser, fieldValue, "sha"));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseSender(JsonParser parser, JsonToken value,
+                             GitHubWebhookEvent.GitHubWebhookEventBuilder builder) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "login" -> builder.senderLogin(parser.getValueAsString());
+                case "type" -> builder.senderType(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseInstallation(JsonParser parser, JsonToken value,
+                                   GitHubWebhookEvent.GitHubWebhookEventBuilder builder) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                builder.installationId(parser.getValueAsLong());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Read a single text field from the object the parser is positioned on, skipping the rest
+     */
+    private String readNestedText(JsonParser parser, JsonToken value, String wanted) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (wanted.equals(field)) {
+                result = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+}
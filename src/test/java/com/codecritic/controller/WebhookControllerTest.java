@@ -0,0 +1,97 @@
+package com.codecritic.controller;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import com.codecritic.service.GitHubWebhookService;
+import com.codecritic.service.WebhookAdmissionService;
+import com.codecritic.service.WebhookJournal;
+import com.codecritic.service.WebhookPayloadParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookControllerTest {
+
+    private static final byte[] PAYLOAD = ("{\"action\":\"opened\",\"number\":7,"
+            + "\"repository\":{\"full_name\":\"o/r\"},\"pull_request\":{\"head\":{\"sha\":\"abc\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final GitHubWebhookService webhookService = mock(GitHubWebhookService.class);
+    private final WebhookAdmissionService admissionService = mock(WebhookAdmissionService.class);
+    private WebhookJournal journal;
+    private WebhookController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journal = openJournal();
+        WebhookPayloadParser parser = new WebhookPayloadParser(objectMapper);
+        ReflectionTestUtils.setField(parser, "reviewableActions", Set.of("opened"));
+        when(admissionService.tryAdmit(any())).thenReturn(true);
+        controller = new WebhookController(webhookService, parser, journal, admissionService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void failedHandoffAcknowledgesTheJournalRecord() throws Exception {
+        doThrow(new TaskRejectedException("webhookExecutor is full"))
+                .when(webhookService).processWebhookEvent(any());
+
+        ResponseEntity<String> response = controller.handleGitHubWebhook(PAYLOAD, "pull_request", "d1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        verify(admissionService).release();
+
+        // A later event acknowledged as usual must move the checkpoint past the failed one
+        GitHubWebhookEvent later = GitHubWebhookEvent.builder().eventId("d2").eventType("pull_request").build();
+        journal.acknowledge(journal.append(later));
+        journal.close();
+
+        journal = openJournal();
+        assertThat(journal.drainReplay()).isEmpty();
+    }
+
+    @Test
+    void successfulHandoffLeavesTheRecordToTheService() throws Exception {
+        ResponseEntity<String> response = controller.handleGitHubWebhook(PAYLOAD, "pull_request", "d1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        journal.close();
+
+        journal = openJournal();
+        assertThat(journal.drainReplay()).extracting(GitHubWebhookEvent::getEventId).containsExactly("d1");
+    }
+
+    private WebhookJournal openJournal() throws Exception {
+        WebhookJournal opened = new WebhookJournal(objectMapper);
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "journalDir", directory.toString());
+        ReflectionTestUtils.setField(opened, "segmentSize", 64 * 1024);
+        ReflectionTestUtils.setField(opened, "flushIntervalMs", 10L);
+        opened.open();
+        return opened;
+    }
+}
@@ -0,0 +1,207 @@
+package com.codecritic.filter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Formatter;
+import java.util.HexFormat;
+
+/**
+ * Measures the time {@link WebhookSignatureFilter} takes to read and verify a delivery, for
+ * payload sizes typical of pull request events up to large pushes, and to reject an oversized one.
+ * Each size is also run through the verification the controller did before the filter: the body
+ * read into a String and the HMAC hex-formatted with a new Mac per request. Allocated bytes per
+ * operation are from the JVM's per-thread allocation counter, and include the mock request and
+ * response both paths build.
+ * <p>
+ * Not run by the build; run it from the test classpath:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.codecritic.filter.WebhookSignatureFilterBenchmark
+ * </pre>
+ */
+public final class WebhookSignatureFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret";
+    private static final int MAX_BODY_BYTES = 25 * 1024 * 1024;
+    private static final int[] PAYLOAD_SIZES = {2 * 1024, 64 * 1024, 1024 * 1024};
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 3_000_000_000L;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private WebhookSignatureFilterBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        WebhookSignatureFilter filter = new WebhookSignatureFilter(SECRET, MAX_BODY_BYTES);
+
+        for (int size : PAYLOAD_SIZES) {
+            byte[] body = payload(size);
+            String signature = sign(body);
+            Result result = measure(() -> {
+                MockHttpServletRequest request = new BufferedRequest(body);
+                request.addHeader("X-Hub-Signature-256", signature);
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                filter.doFilter(request, response, new MockFilterChain());
+                return response.getStatus();
+            });
+            print("verify", size, result);
+
+            Result previous = measure(() -> {
+                MockHttpServletRequest request = new BufferedRequest(body);
+                request.addHeader("X-Hub-Signature-256", signature);
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                String payload = StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+                response.setStatus(isValidSignature(payload, request.getHeader("X-Hub-Signature-256")) ? 200 : 401);
+                return response.getStatus();
+            });
+            print("string", size, previous);
+        }
+
+        // Rejected from its declared length, so the cost must not depend on the body size
+        byte[] oversized = new byte[MAX_BODY_BYTES + 1];
+        Result rejected = measure(() -> {
+            MockHttpServletRequest request = new BufferedRequest(oversized);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain());
+            return response.getStatus();
+        });
+        System.out.printf("reject %8d B: %10.1f us/op %10d B/op (status %d)%n", oversized.length,
+                rejected.nanosPerOp / 1000, Math.round(rejected.bytesPerOp), rejected.status);
+    }
+
+    private static void print(String path, int size, Result result) {
+        System.out.printf("%s %8d B: %10.1f us/op %8.1f MB/s %10d B/op (status %d)%n", path, size,
+                result.nanosPerOp / 1000, size / result.nanosPerOp * 1e9 / (1024 * 1024),
+                Math.round(result.bytesPerOp), result.status);
+    }
+
+    /**
+     * Verification as WebhookController did it before {@link WebhookSignatureFilter}, without its logging
+     */
+    private static boolean isValidSignature(String payload, String signature) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hexString = new StringBuilder();
+        try (Formatter formatter = new Formatter(hexString)) {
+            for (byte b : digest) {
+                formatter.format("%02x", b);
+            }
+        }
+        return ("sha256=" + hexString).equals(signature);
+    }
+
+    private static Result measure(Delivery delivery) throws Exception {
+        int status = 0;
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            status = delivery.send();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long ops = 0;
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        long now;
+        do {
+            status = delivery.send();
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new Result((double) (now - start) / ops, (double) allocated / ops, status);
+    }
+
+    /**
+     * JSON-like payload of the given size
+     */
+    private static byte[] payload(int size) {
+        byte[] body = new byte[size];
+        byte[] pattern = "{\"action\":\"synchronize\",\"number\":42,\"title\":\"Refactor\"},"
+                .getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i++) {
+            body[i] = pattern[i % pattern.length];
+        }
+        return body;
+    }
+
+    private static String sign(byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return "sha256=" + HexFormat.of().formatHex(mac.doFinal(body));
+    }
+
+    /**
+     * Request whose input stream reads in bulk, as a servlet container's does; the mock request
+     * reads one byte at a time, which would dominate the measurement
+     */
+    private static final class BufferedRequest extends MockHttpServletRequest {
+        private final byte[] body;
+
+        private BufferedRequest(byte[] body) {
+            super("POST", "/api/webhook/github");
+            this.body = body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    @FunctionalInterface
+    private interface Delivery {
+        int send() throws Exception;
+    }
+
+    private record Result(double nanosPerOp, double bytesPerOp, int status) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.codecritic.filter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookSignatureFilterTest {
+
+    private static final String SECRET = "webhook-secret";
+    private static final int MAX_BODY_BYTES = 1024;
+
+    private final WebhookSignatureFilter filter = new WebhookSignatureFilter(SECRET, MAX_BODY_BYTES);
+
+    @Test
+    void passesSignedBodyToTheChain() throws Exception {
+        byte[] body = "{\"action\":\"opened\"}".getBytes(StandardCharsets.UTF_8);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(signed(new MockHttpServletRequest("POST", "/api/webhook/github"), body), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        HttpServletRequest passed = (HttpServletRequest) chain.getRequest();
+        assertThat(passed.getAttribute(WebhookSignatureFilter.RAW_BODY_ATTRIBUTE)).isEqualTo(body);
+        assertThat(passed.getInputStream().readAllBytes()).isEqualTo(body);
+    }
+
+    @Test
+    void rejectsInvalidSignature() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/webhook/github");
+        request.setContent("{}".getBytes(StandardCharsets.UTF_8));
+        request.addHeader("X-Hub-Signature-256", "sha256=" + "0".repeat(64));
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void rejectsDeclaredLengthAboveMaximumWithoutReading() throws Exception {
+        AtomicBoolean read = new AtomicBoolean();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/webhook/github") {
+            @Override
+            public ServletInputStream getInputStream() {
+                read.set(true);
+                return super.getInputStream();
+            }
+        };
+        signed(request, new byte[MAX_BODY_BYTES + 1]);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(read).isFalse();
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void rejectsUndeclaredLengthOnceItExceedsMaximum() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(signed(new ChunkedRequest(), new byte[MAX_BODY_BYTES + 1]), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void acceptsUndeclaredLengthAtMaximum() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(signed(new ChunkedRequest(), new byte[MAX_BODY_BYTES]), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(((HttpServletRequest) chain.getRequest()).getContentLength()).isEqualTo(MAX_BODY_BYTES);
+    }
+
+    @Test
+    void servesBufferedBodyToReadListener() throws Exception {
+        byte[] body = "{\"action\":\"synchronize\"}".getBytes(StandardCharsets.UTF_8);
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(signed(new MockHttpServletRequest("POST", "/api/webhook/github"), body),
+                new MockHttpServletResponse(), chain);
+
+        ServletInputStream in = chain.getRequest().getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicBoolean allRead = new AtomicBoolean();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                // Read a few bytes at a time, as an asynchronous reader would
+                byte[] chunk = new byte[5];
+                if (in.isReady()) {
+                    int n = in.read(chunk);
+                    if (n > 0) {
+                        received.write(chunk, 0, n);
+                    }
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                allRead.set(true);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+        });
+
+        assertThat(allRead).isTrue();
+        assertThat(received.toByteArray()).isEqualTo(body);
+        assertThat(in.isFinished()).isTrue();
+    }
+
+    private static MockHttpServletRequest signed(MockHttpServletRequest request, byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        request.setContent(body);
+        request.addHeader("X-Hub-Signature-256", "sha256=" + HexFormat.of().formatHex(mac.doFinal(body)));
+        return request;
+    }
+
+    /**
+     * A request sent with chunked transfer encoding, which declares no length
+     */
+    private static final class ChunkedRequest extends MockHttpServletRequest {
+
+        private ChunkedRequest() {
+            super("POST", "/api/webhook/github");
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+    }
+}
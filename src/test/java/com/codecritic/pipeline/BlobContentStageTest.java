@@ -0,0 +1,58 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.codecritic.service.BlobStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlobContentStageTest {
+
+    private static final String SHA = "b".repeat(40);
+
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final BlobContentStage stage = new BlobContentStage(blobStore, Runnable::run);
+    private final PullRequest pullRequest = PullRequest.builder().repository("octo/app").prId(7L).build();
+    private final ModifiedFile file = ModifiedFile.builder()
+            .fileId(SHA)
+            .filePath("src/A.java")
+            .changeType(ModifiedFile.ChangeType.MODIFIED)
+            .build();
+    private final CompletableFuture<String> download = new CompletableFuture<>();
+
+    @Test
+    void completesWithTheBlobWithoutWaitingForIt() {
+        when(blobStore.get(pullRequest, SHA)).thenReturn(download);
+
+        CompletableFuture<String> content = stage.submit(file, new StageResults(pullRequest));
+
+        assertThat(content).isNotDone();
+        download.complete("class A {}");
+        assertThat(content).isCompletedWithValue("class A {}");
+    }
+
+    @Test
+    void fallsBackToThePatchWhenTheBlobCannotBeLoaded() {
+        when(blobStore.get(pullRequest, SHA)).thenReturn(download);
+
+        CompletableFuture<String> content = stage.submit(file, new StageResults(pullRequest));
+        download.completeExceptionally(new IOException("rate limited"));
+
+        assertThat(content).isCompletedWithValue(null);
+    }
+
+    @Test
+    void cancellingLeavesTheSharedDownloadRunning() {
+        when(blobStore.get(pullRequest, SHA)).thenReturn(download);
+
+        stage.submit(file, new StageResults(pullRequest)).cancel(true);
+
+        assertThat(download).isNotDone();
+    }
+}
@@ -0,0 +1,163 @@
+package com.codecritic.pipeline;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.codecritic.service.WebhookAdmissionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ReviewPipelineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ModifiedFile file = ModifiedFile.builder().filePath("src/A.java").build();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void returnsOnlyResultsNoStageConsumes() throws Exception {
+        ReviewPipeline pipeline = pipeline((file, inputs) -> "review of " + inputs.get("tree", String.class));
+        ReviewPipeline.Run run = pipeline.start(PullRequest.builder().prId(1L).build());
+
+        StageResults results = run.submit(file).get(5, TimeUnit.SECONDS);
+
+        assertThat(results.get("report", String.class)).isEqualTo("report of content, tree of content");
+        assertThat(results.get("review", String.class)).isEqualTo("review of tree of content");
+        assertThat(results.contains("content")).isFalse();
+        assertThat(results.contains("tree")).isFalse();
+        awaitPendingTasks(run, 0);
+    }
+
+    @Test
+    void keepsResultUntilItsLastConsumerFinishes() throws Exception {
+        CountDownLatch reviewStarted = new CountDownLatch(1);
+        CountDownLatch reviewMayFinish = new CountDownLatch(1);
+        AtomicReference<StageResults> reviewInputs = new AtomicReference<>();
+        ReviewPipeline pipeline = pipeline((file, inputs) -> {
+            reviewInputs.set(inputs);
+            reviewStarted.countDown();
+            await(reviewMayFinish);
+            return "review";
+        });
+        ReviewPipeline.Run run = pipeline.start(PullRequest.builder().prId(1L).build());
+
+        CompletableFuture<StageResults> future = run.submit(file);
+        assertThat(reviewStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitPendingTasks(run, 1);
+
+        // The content's consumers are done, the tree's last consumer is still running
+        assertThat(reviewInputs.get().contains("content")).isFalse();
+        assertThat(reviewInputs.get().contains("tree")).isTrue();
+
+        reviewMayFinish.countDown();
+        StageResults results = future.get(5, TimeUnit.SECONDS);
+        assertThat(results.contains("tree")).isFalse();
+        awaitPendingTasks(run, 0);
+    }
+
+    @Test
+    void cancelInterruptsPendingTasksOnly() throws Exception {
+        CountDownLatch reviewStarted = new CountDownLatch(1);
+        CountDownLatch reviewInterrupted = new CountDownLatch(1);
+        ReviewPipeline pipeline = pipeline((file, inputs) -> {
+            reviewStarted.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                reviewInterrupted.countDown();
+            }
+            return "review";
+        });
+        ReviewPipeline.Run run = pipeline.start(PullRequest.builder().prId(1L).build());
+
+        CompletableFuture<StageResults> future = run.submit(file);
+        assertThat(reviewStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitPendingTasks(run, 1);
+
+        run.cancel();
+
+        assertThat(reviewInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(future).isCompletedExceptionally();
+        awaitPendingTasks(run, 0);
+    }
+
+    /**
+     * Pipeline in which {@code tree} consumes {@code content}, {@code report} consumes both, and
+     * {@code review} consumes {@code tree}
+     */
+    private ReviewPipeline pipeline(BiFunction<ModifiedFile, StageResults, String> review) {
+        List<ReviewStage<?>> stages = List.of(
+                stage("review", List.of("tree"), review),
+                stage("content", List.of(), (file, inputs) -> "content"),
+                stage("tree", List.of("content"), (file, inputs) -> "tree of " + inputs.get("content", String.class)),
+                stage("report", List.of("content", "tree"), (file, inputs) -> "report of "
+                        + inputs.get("content", String.class) + ", " + inputs.get("tree", String.class)));
+        return new ReviewPipeline(stages, new SimpleMeterRegistry(), mock(WebhookAdmissionService.class), Set.of());
+    }
+
+    private ReviewStage<String> stage(String name, List<String> inputs,
+                                      BiFunction<ModifiedFile, StageResults, String> process) {
+        return new ReviewStage<>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public List<String> getInputs() {
+                return inputs;
+            }
+
+            @Override
+            public Executor getExecutor() {
+                return executor;
+            }
+
+            @Override
+            public String process(ModifiedFile file, StageResults results) {
+                return process.apply(file, results);
+            }
+        };
+    }
+
+    private static Collection<?> pendingTasks(ReviewPipeline.Run run) {
+        synchronized (run) {
+            return List.copyOf((Collection<?>) ReflectionTestUtils.getField(run, "tasks"));
+        }
+    }
+
+    private static void awaitPendingTasks(ReviewPipeline.Run run, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pendingTasks(run).size() != count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pendingTasks(run)).hasSize(count);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
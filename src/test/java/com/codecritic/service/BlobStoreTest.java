@@ -0,0 +1,97 @@
+package com.codecritic.service;
+
+import com.codecritic.model.PullRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobStoreTest {
+
+    private static final String SHA = "a".repeat(40);
+    private static final PullRequest PULL_REQUEST = PullRequest.builder()
+            .repository("octo/app")
+            .prId(7L)
+            .installationId(1L)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GitHubClientProvider clientProvider = mock(GitHubClientProvider.class);
+    private final GitHubGraphQLClient graphQLClient = mock(GitHubGraphQLClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<BlobStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(clientProvider.forRepository("octo/app", 1L))
+                .thenReturn(new GitHubClientProvider.Client("token", null, null));
+        when(graphQLClient.repositoryVariables("octo/app")).thenAnswer(invocation -> objectMapper.createObjectNode());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(BlobStore::shutdown);
+    }
+
+    @Test
+    void fetchesAMissOnceAndServesHitsFromDisk() throws Exception {
+        answerQuery("{\"repository\": {\"b0\": {\"text\": \"class A {}\", \"isBinary\": false, \"isTruncated\": false}}}");
+        BlobStore store = store();
+
+        assertThat(store.get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isEqualTo("class A {}");
+        assertThat(store.get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isEqualTo("class A {}");
+        // Blobs stay stored across restarts
+        assertThat(store().get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isEqualTo("class A {}");
+
+        verify(graphQLClient, times(1)).query(any(), any(), anyString(), any());
+        assertThat(requests("miss")).isEqualTo(1);
+        assertThat(requests("hit")).isEqualTo(2);
+    }
+
+    @Test
+    void recordsBinaryBlobsSoThatTheyAreNotFetchedAgain() throws Exception {
+        answerQuery("{\"repository\": {\"b0\": {\"text\": null, \"isBinary\": true, \"isTruncated\": false}}}");
+        BlobStore store = store();
+
+        assertThat(store.get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(store.get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(store().get(PULL_REQUEST, SHA).get(5, TimeUnit.SECONDS)).isNull();
+
+        verify(graphQLClient, times(1)).query(any(), any(), anyString(), any());
+        assertThat(store.contains(SHA)).isTrue();
+        assertThat(requests("hit")).isEqualTo(2);
+    }
+
+    private void answerQuery(String data) throws Exception {
+        when(graphQLClient.query(any(), any(), anyString(), any())).thenReturn(objectMapper.readTree(data));
+    }
+
+    private BlobStore store() throws Exception {
+        BlobStore store = new BlobStore(clientProvider, graphQLClient, meterRegistry, directory.toString(),
+                1, 1, 50, 1);
+        stores.add(store);
+        return store;
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("codecritic.blobs.requests").tag("result", result).counter().count();
+    }
+}
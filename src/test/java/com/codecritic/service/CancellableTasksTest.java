@@ -0,0 +1,58 @@
+package com.codecritic.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CancellableTasksTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepsTheCallersInterruptWhenRunOnIt() {
+        Thread.currentThread().interrupt();
+        try {
+            CompletableFuture<String> future = CancellableTasks.supply(() -> "done", Runnable::run);
+
+            assertThat(future).isCompletedWithValue("done");
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void interruptsACancelledTaskWithoutLeakingIntoTheNext() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> future = CancellableTasks.supply(() -> {
+            running.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            // Interrupted again, as a call that restores the interrupt status would leave it
+            Thread.currentThread().interrupt();
+            return "late";
+        }, executor);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        future.cancel(true);
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.submit(() -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS)).isFalse();
+    }
+}
@@ -0,0 +1,48 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CheckstyleAnalyzerTest {
+
+    private static final String CONFIG = """
+            <?xml version="1.0"?>
+            <!DOCTYPE module PUBLIC
+                      "-//Checkstyle//DTD Checkstyle Configuration 1.3//EN"
+                      "https://checkstyle.org/dtds/configuration_1_3.dtd">
+            <module name="Checker">
+                <module name="TreeWalker">
+                    <module name="MemberName"/>
+                    <module name="com.codecritic.service.FailingCheck"/>
+                </module>
+            </module>
+            """;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void reportsFileThatACheckFailedOnAsUnknown() throws Exception {
+        Path config = temp.resolve("checkstyle.xml");
+        Files.writeString(config, CONFIG);
+        CheckstyleAnalyzer analyzer = new CheckstyleAnalyzer(config.toString());
+
+        List<List<AnalysisIssue>> issues = analyzer.check(List.of(
+                ParsedSource.parse("src/Good.java", "class Good {\n    int Bad_name;\n}\n"),
+                ParsedSource.parse("src/Fail.java", "class Fail {\n    int Bad_name;\n}\n")));
+
+        assertThat(issues.get(0)).extracting(AnalysisIssue::getLineNumber).containsExactly(2);
+        assertThat(issues.get(1)).isNull();
+
+        // The failure is not carried into the next run
+        assertThat(analyzer.check(List.of(ParsedSource.parse("src/Good.java", "class Good {\n}\n"))).get(0))
+                .isEmpty();
+    }
+}
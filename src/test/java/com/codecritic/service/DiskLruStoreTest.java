@@ -0,0 +1,110 @@
+package com.codecritic.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiskLruStoreTest {
+
+    private static final String A = "aa01";
+    private static final String B = "bb02";
+    private static final String C = "cc03";
+
+    @TempDir
+    Path directory;
+
+    private final Counter evictions = new SimpleMeterRegistry().counter("evictions");
+
+    @Test
+    void readsWhatWasWritten() throws Exception {
+        DiskLruStore store = new DiskLruStore(directory, 1024, "entry", evictions);
+
+        store.write(A, bytes("first"));
+        store.write(A, bytes("second"));
+
+        assertThat(store.read(A)).isEqualTo(bytes("second"));
+        assertThat(store.read(B)).isNull();
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.getStoredBytes()).isEqualTo(6);
+        assertThat(Files.exists(directory.resolve("aa").resolve(A))).isTrue();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverBound() throws Exception {
+        DiskLruStore store = new DiskLruStore(directory, 20, "entry", evictions);
+
+        store.write(A, new byte[8]);
+        store.write(B, new byte[8]);
+        // Reading A makes B the least recently used
+        assertThat(store.read(A)).isNotNull();
+        store.write(C, new byte[8]);
+
+        assertThat(store.contains(A)).isTrue();
+        assertThat(store.contains(B)).isFalse();
+        assertThat(store.contains(C)).isTrue();
+        assertThat(store.getStoredBytes()).isEqualTo(16);
+        assertThat(Files.exists(directory.resolve("bb").resolve(B))).isFalse();
+        assertThat(evictions.count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsAnEntryLargerThanTheBound() throws Exception {
+        DiskLruStore store = new DiskLruStore(directory, 4, "entry", evictions);
+
+        store.write(A, new byte[2]);
+        store.write(B, new byte[8]);
+
+        assertThat(store.contains(A)).isFalse();
+        assertThat(store.read(B)).hasSize(8);
+    }
+
+    @Test
+    void reloadsEntriesInAccessOrder() throws Exception {
+        DiskLruStore store = new DiskLruStore(directory, 1024, "entry", evictions);
+        store.write(A, new byte[8]);
+        store.write(B, new byte[8]);
+        store.write(C, new byte[8]);
+        touch(A, 3000);
+        touch(B, 1000);
+        touch(C, 2000);
+
+        DiskLruStore reopened = new DiskLruStore(directory, 20, "entry", evictions);
+
+        // Over the lowered bound, the oldest access is evicted on startup
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.contains(B)).isFalse();
+        assertThat(reopened.getStoredBytes()).isEqualTo(16);
+        assertThat(Files.exists(directory.resolve("bb").resolve(B))).isFalse();
+
+        reopened.write(B, new byte[8]);
+        assertThat(reopened.contains(C)).isFalse();
+        assertThat(reopened.contains(A)).isTrue();
+    }
+
+    @Test
+    void ignoresTemporaryFilesOnReload() throws Exception {
+        Files.createDirectories(directory.resolve("aa"));
+        Files.write(directory.resolve("aa").resolve(A + "123.tmp"), new byte[8]);
+
+        DiskLruStore store = new DiskLruStore(directory, 1024, "entry", evictions);
+
+        assertThat(store.size()).isZero();
+        assertThat(store.getStoredBytes()).isZero();
+    }
+
+    private void touch(String key, long millis) throws Exception {
+        Files.setLastModifiedTime(directory.resolve(key.substring(0, 2)).resolve(key), FileTime.fromMillis(millis));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
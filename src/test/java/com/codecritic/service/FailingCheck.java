@@ -0,0 +1,33 @@
+package com.codecritic.service;
+
+import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.TokenTypes;
+
+/**
+ * Fails on classes named Fail, as a buggy check would
+ */
+public class FailingCheck extends AbstractCheck {
+
+    @Override
+    public int[] getDefaultTokens() {
+        return getRequiredTokens();
+    }
+
+    @Override
+    public int[] getAcceptableTokens() {
+        return getRequiredTokens();
+    }
+
+    @Override
+    public int[] getRequiredTokens() {
+        return new int[]{TokenTypes.CLASS_DEF};
+    }
+
+    @Override
+    public void visitToken(DetailAST ast) {
+        if ("Fail".equals(ast.findFirstToken(TokenTypes.IDENT).getText())) {
+            throw new IllegalStateException("check failed");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.codecritic.service;
+
+import com.codecritic.config.GitHubClientFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GitHub;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Authenticates as a GitHub App against a local stub of the App and installation endpoints
+ */
+class GitHubClientProviderTest {
+
+    private static final String APP_ID = "1234";
+    private static final long INSTALLATION = 42;
+    private static final String TOKENS = "/app/installations/" + INSTALLATION + "/access_tokens";
+
+    private static KeyPair keyPair;
+
+    /** Lifetimes of the tokens to mint, in seconds, one per request */
+    private final Queue<Long> tokenLifetimes = new ConcurrentLinkedQueue<>();
+    private GitHubStubServer server;
+    private GitHubClientProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        if (keyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        }
+
+        server = new GitHubStubServer()
+                .route("/app/installations/", this::installation)
+                .route("/app", request -> GitHubStubServer.Reply.json(
+                        "{\"id\":" + APP_ID + ",\"slug\":\"codecritic\",\"owner\":{\"login\":\"octo\"}}"))
+                .route("/repos/octo/app/installation", request -> GitHubStubServer.Reply.json(
+                        installationJson()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            provider.shutdown();
+        }
+        server.close();
+    }
+
+    @Test
+    void signsJwtWithPkcs1Key() throws Exception {
+        GitHubAppJwtSigner signer = new GitHubAppJwtSigner(APP_ID, pkcs1Pem());
+
+        String[] jwt = signer.createJwt().split("\\.");
+
+        assertThat(decode(jwt[0])).isEqualTo("{\"alg\":\"RS256\",\"typ\":\"JWT\"}");
+        assertThat(decode(jwt[1])).contains("\"iss\":\"" + APP_ID + "\"");
+        assertThat(verifies(keyPair.getPublic(), jwt)).isTrue();
+    }
+
+    @Test
+    void signsJwtWithPkcs8Key() throws Exception {
+        GitHubAppJwtSigner signer = new GitHubAppJwtSigner(APP_ID, pkcs8Pem());
+
+        assertThat(verifies(keyPair.getPublic(), signer.createJwt().split("\\."))).isTrue();
+    }
+
+    @Test
+    void reusesAppClientAndJwtAcrossTokenRequests() throws Exception {
+        tokenLifetimes.add(3600L);
+        provider = provider(300);
+
+        GitHubClientProvider.Client client = provider.forRepository("octo/app", null);
+        // JWTs are issued at a whole second, so a JWT signed again would differ from the first
+        Thread.sleep(1100);
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t1");
+        assertThat(provider.forRepository("octo/app", INSTALLATION)).isSameAs(client);
+
+        // Looking up the installation and minting its token are signed with the same JWT
+        List<String> appAuthorizations = server.received("/app").stream()
+                .map(request -> request.header("Authorization"))
+                .distinct()
+                .toList();
+        assertThat(appAuthorizations).hasSize(1);
+        assertThat(appAuthorizations.get(0)).startsWith("Bearer ");
+        assertThat(verifies(keyPair.getPublic(), appAuthorizations.get(0).substring(7).split("\\."))).isTrue();
+        assertThat(server.received("/repos/octo/app/installation")).hasSize(1);
+        assertThat(server.received(TOKENS)).hasSize(1);
+    }
+
+    @Test
+    void refreshesTokenInlineWhenAboutToExpire() throws Exception {
+        // Within the guard against using a token that expires mid-request
+        tokenLifetimes.add(10L);
+        tokenLifetimes.add(3600L);
+        provider = provider(300);
+
+        GitHubClientProvider.Client client = provider.forRepository("octo/app", INSTALLATION);
+
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t1");
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t2");
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t2");
+        assertThat(server.received(TOKENS)).hasSize(2);
+    }
+
+    @Test
+    void refreshesTokenInBackgroundBeforeExpiry() throws Exception {
+        // Still valid, but within the refresh margin
+        tokenLifetimes.add(120L);
+        tokenLifetimes.add(3600L);
+        provider = provider(300);
+
+        GitHubClientProvider.Client client = provider.forRepository("octo/app", INSTALLATION);
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t1");
+
+        ReflectionTestUtils.invokeMethod(provider, "refreshExpiringTokens");
+        assertThat(server.received(TOKENS)).hasSize(2);
+        assertThat(client.authorization().getEncodedAuthorization()).isEqualTo("token t2");
+
+        // Nothing is minted while the token is outside the margin
+        ReflectionTestUtils.invokeMethod(provider, "refreshExpiringTokens");
+        assertThat(server.received(TOKENS)).hasSize(2);
+    }
+
+    private GitHubClientProvider provider(long refreshMarginSeconds) throws Exception {
+        GitHubClientFactory clientFactory = new GitHubClientFactory(server.url(), new OkHttpClient());
+        return new GitHubClientProvider(mock(GitHub.class), clientFactory, new SimpleMeterRegistry(), "",
+                APP_ID, pkcs1Pem().replace("\n", "\\n"), "", refreshMarginSeconds);
+    }
+
+    private GitHubStubServer.Reply installation(GitHubStubServer.Received request) {
+        if (!request.path().equals(TOKENS)) {
+            return GitHubStubServer.Reply.json(installationJson());
+        }
+        int minted = server.received(TOKENS).size();
+        Long lifetime = tokenLifetimes.poll();
+        Instant expiresAt = Instant.now().plusSeconds(lifetime != null ? lifetime : 3600);
+        return new GitHubStubServer.Reply(201, Map.of("Content-Type", "application/json"),
+                "{\"token\":\"t" + minted + "\",\"expires_at\":\"" + expiresAt + "\"}");
+    }
+
+    private static String installationJson() {
+        return "{\"id\":" + INSTALLATION + ",\"app_id\":" + APP_ID + ",\"account\":{\"login\":\"octo\"},"
+                + "\"access_tokens_url\":\"/app/installations/" + INSTALLATION + "/access_tokens\"}";
+    }
+
+    private static boolean verifies(PublicKey publicKey, String[] jwt) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initVerify(publicKey);
+        signature.update((jwt[0] + "." + jwt[1]).getBytes(StandardCharsets.US_ASCII));
+        return signature.verify(Base64.getUrlDecoder().decode(jwt[2]));
+    }
+
+    private static String decode(String part) {
+        return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+    }
+
+    private static String pkcs8Pem() {
+        return pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+    }
+
+    /**
+     * The key as GitHub issues it: the RSAPrivateKey inside the PKCS#8 PrivateKeyInfo
+     */
+    private static String pkcs1Pem() {
+        byte[] der = keyPair.getPrivate().getEncoded();
+        // Skip the outer SEQUENCE header, the version INTEGER and the AlgorithmIdentifier
+        int offset = 2 + longFormBytes(der[1]) + 3 + 15;
+        // Skip the OCTET STRING header
+        offset += 2 + longFormBytes(der[offset + 1]);
+        return pem("RSA PRIVATE KEY", Arrays.copyOfRange(der, offset, der.length));
+    }
+
+    private static int longFormBytes(byte length) {
+        return (length & 0x80) != 0 ? length & 0x7f : 0;
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+}
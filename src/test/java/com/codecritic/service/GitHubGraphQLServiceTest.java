@@ -0,0 +1,257 @@
+package com.codecritic.service;
+
+import com.codecritic.config.GitHubClientFactory;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the GraphQL backend against a local stub of the GraphQL and REST endpoints
+ */
+class GitHubGraphQLServiceTest {
+
+    private static final String REPO = "octo/app";
+    private static final long PR = 7;
+
+    private static final String DIFF = """
+            diff --git a/src/A.java b/src/A.java
+            index 1111111..2222222 100644
+            --- a/src/A.java
+            +++ b/src/A.java
+            @@ -1,2 +1,3 @@
+             class A {
+            +    int x;
+             }
+            diff --git a/src/B.java b/src/B.java
+            new file mode 100644
+            index 0000000..3333333
+            --- /dev/null
+            +++ b/src/B.java
+            @@ -0,0 +1 @@
+            +class B {}
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService githubExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger rateLimitedResponses = new AtomicInteger();
+    private final AtomicInteger errorResponses = new AtomicInteger();
+    private GitHubStubServer server;
+    private GitHubGraphQLService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new GitHubStubServer()
+                .route("/graphql", this::graphql)
+                .route("/repos/" + REPO + "/pulls/" + PR, request -> new GitHubStubServer.Reply(200, Map.of(), DIFF));
+
+        GitHubRequestScheduler scheduler = new GitHubRequestScheduler(meterRegistry, 5000, 5, 900, 0.05, 0.25);
+        GitHubClientFactory clientFactory = new GitHubClientFactory(server.url(), new OkHttpClient());
+        GitHubGraphQLClient graphQLClient = new GitHubGraphQLClient(scheduler, new OkHttpClient(), clientFactory,
+                objectMapper);
+        GitHubClientProvider clientProvider = mock(GitHubClientProvider.class);
+        when(clientProvider.forRepository(REPO, null))
+                .thenReturn(new GitHubClientProvider.Client("default", null, () -> "token test"));
+
+        // A page size of two puts the files on two pages
+        service = new GitHubGraphQLService(clientProvider, scheduler, githubExecutor, graphQLClient,
+                2, 200, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        githubExecutor.shutdownNow();
+    }
+
+    @Test
+    void fetchesPullRequestAndPagedFiles() {
+        PullRequest pullRequest = service.fetchPullRequestDetails(REPO, PR, null);
+
+        assertThat(pullRequest.getTitle()).isEqualTo("Add B");
+        assertThat(pullRequest.getAuthor()).isEqualTo("octocat");
+        assertThat(pullRequest.getHeadSha()).isEqualTo("head1");
+        assertThat(pullRequest.getBaseSha()).isEqualTo("base1");
+        assertThat(pullRequest.getDraft()).isTrue();
+        assertThat(pullRequest.getChangedFiles()).isEqualTo(4);
+        assertThat(pullRequest.getModifiedFiles())
+                .extracting(ModifiedFile::getFilePath, ModifiedFile::getChangeType, ModifiedFile::getFileId)
+                .containsExactly(
+                        tuple("src/A.java", ModifiedFile.ChangeType.MODIFIED, "blob:head1:src/A.java"),
+                        tuple("src/B.java", ModifiedFile.ChangeType.ADDED, "blob:head1:src/B.java"),
+                        tuple("src/Old.java", ModifiedFile.ChangeType.DELETED, null));
+        assertThat(pullRequest.getModifiedFiles().get(0).getDiffContent())
+                .isEqualTo("@@ -1,2 +1,3 @@\n class A {\n+    int x;\n }");
+        assertThat(pullRequest.getModifiedFiles().get(1).getDiffContent()).isEqualTo("@@ -0,0 +1 @@\n+class B {}");
+
+        // Metadata with the first page, the second page with the first page's blobs, then the last blobs
+        assertThat(server.received("/graphql")).hasSize(3);
+        assertThat(server.received("/repos/")).singleElement()
+                .satisfies(request -> {
+                    assertThat(request.header("Accept")).isEqualTo("application/vnd.github.diff");
+                    assertThat(request.header("Authorization")).isEqualTo("token test");
+                });
+    }
+
+    @Test
+    void retriesQueryRejectedWithRateLimitedError() {
+        rateLimitedResponses.set(1);
+
+        PullRequest pullRequest = service.fetchPullRequestDetails(REPO, PR, null);
+
+        assertThat(pullRequest.getModifiedFiles()).hasSize(3);
+        assertThat(server.received("/graphql")).hasSize(4);
+        assertThat(meterRegistry.get("codecritic.github.requests.retried")
+                .tag("credential", "default/graphql").tag("limit", "primary").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void failsOnOtherGraphQLErrorsWithoutRetrying() {
+        errorResponses.set(1);
+
+        assertThatThrownBy(() -> service.fetchPullRequestDetails(REPO, PR, null))
+                .hasRootCauseMessage("GraphQL error: Resource not accessible by integration");
+        assertThat(server.received("/graphql")).hasSize(1);
+    }
+
+    @Test
+    void streamsPagesAsTheyAreRequested() throws Exception {
+        PullRequest pullRequest = service.fetchPullRequestSummary(REPO, PR, null);
+        List<ModifiedFile> files = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        service.streamModifiedFiles(pullRequest).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ModifiedFile file) {
+                files.add(file);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get(5, TimeUnit.SECONDS);
+
+        assertThat(files)
+                .extracting(ModifiedFile::getFilePath, ModifiedFile::getFileId)
+                .containsExactly(
+                        tuple("src/A.java", "blob:head1:src/A.java"),
+                        tuple("src/B.java", "blob:head1:src/B.java"),
+                        tuple("src/Old.java", null));
+        // The summary, then the first page with the diff, the second page, and the last blobs
+        assertThat(server.received("/graphql")).hasSize(4);
+    }
+
+    @Test
+    void fetchesSummaryInOneQuery() {
+        PullRequest pullRequest = service.fetchPullRequestSummary(REPO, PR, null);
+
+        assertThat(pullRequest.getTitle()).isEqualTo("Add B");
+        assertThat(pullRequest.getModifiedFiles()).isNull();
+        assertThat(server.received("/graphql")).hasSize(1);
+        assertThat(server.received("/repos/")).isEmpty();
+    }
+
+    /**
+     * Answer a query for a pull request with four files, two per page, and for blob objects
+     * named {@code b<i>} with a variable {@code e<i>}
+     */
+    private GitHubStubServer.Reply graphql(GitHubStubServer.Received request) throws Exception {
+        if (rateLimitedResponses.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            // GitHub reports an exhausted GraphQL budget with status 200
+            return new GitHubStubServer.Reply(200, Map.of(
+                    "Content-Type", "application/json",
+                    "X-RateLimit-Remaining", "0",
+                    "X-RateLimit-Reset", String.valueOf(Instant.now().getEpochSecond() + 1)),
+                    "{\"errors\":[{\"type\":\"RATE_LIMITED\",\"message\":\"API rate limit exceeded\"}]}");
+        }
+        if (errorResponses.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            return GitHubStubServer.Reply.json("{\"errors\":[{\"type\":\"FORBIDDEN\","
+                    + "\"message\":\"Resource not accessible by integration\"}]}");
+        }
+
+        JsonNode payload = objectMapper.readTree(request.body());
+        String query = payload.path("query").asText();
+        JsonNode variables = payload.path("variables");
+        assertThat(variables.path("owner").asText()).isEqualTo("octo");
+        assertThat(variables.path("name").asText()).isEqualTo("app");
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode repository = response.putObject("data").putObject("repository");
+        if (query.contains("pullRequest(number: $number)")) {
+            ObjectNode pullRequest = repository.putObject("pullRequest");
+            if (query.contains("title")) {
+                pullRequest.put("title", "Add B")
+                        .put("isDraft", true)
+                        .put("createdAt", "2024-01-02T03:04:05Z")
+                        .put("headRefOid", "head1")
+                        .put("baseRefOid", "base1")
+                        .put("changedFiles", 4)
+                        .put("additions", 2)
+                        .put("deletions", 5);
+                pullRequest.putObject("author").put("login", "octocat");
+            }
+            if (query.contains("files(")) {
+                boolean firstPage = variables.path("after").isNull();
+                ObjectNode files = pullRequest.putObject("files");
+                files.putObject("pageInfo")
+                        .put("hasNextPage", firstPage)
+                        .put("endCursor", firstPage ? "c1" : "c2");
+                ArrayNode nodes = files.putArray("nodes");
+                if (firstPage) {
+                    nodes.addObject().put("path", "src/A.java").put("changeType", "MODIFIED");
+                    nodes.addObject().put("path", "README.md").put("changeType", "MODIFIED");
+                } else {
+                    nodes.addObject().put("path", "src/B.java").put("changeType", "ADDED");
+                    nodes.addObject().put("path", "src/Old.java").put("changeType", "DELETED");
+                }
+            }
+        }
+        for (Iterator<String> names = variables.fieldNames(); names.hasNext(); ) {
+            String name = names.next();
+            if (name.matches("e\\d+")) {
+                repository.putObject("b" + name.substring(1))
+                        .put("oid", "blob:" + variables.path(name).asText());
+            }
+        }
+        return GitHubStubServer.Reply.json(objectMapper.writeValueAsString(response));
+    }
+}
@@ -0,0 +1,200 @@
+package com.codecritic.service;
+
+import com.codecritic.config.GitHubClientFactory;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Streams the files of a pull request from a local stub of the REST API
+ */
+class GitHubServiceImplTest {
+
+    private static final String REPO = "octo/app";
+    private static final long PR = 7;
+    private static final String PULL = "/repos/" + REPO + "/pulls/" + PR;
+
+    /** One thread, so a thread held by the stream would block every other GitHub task */
+    private final ThreadPoolExecutor githubExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+    private final ExecutorService subscriberExecutor = Executors.newSingleThreadExecutor();
+    private GitHubStubServer server;
+    private GitHubServiceImpl service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new GitHubStubServer()
+                .route("/repos/" + REPO, request -> GitHubStubServer.Reply.json(
+                        "{\"name\":\"app\",\"full_name\":\"octo/app\",\"owner\":{\"login\":\"octo\"}}"))
+                .route(PULL, request -> GitHubStubServer.Reply.json(pullRequestJson()))
+                .route(PULL + "/files", this::files);
+
+        GitHubRequestScheduler scheduler = new GitHubRequestScheduler(new SimpleMeterRegistry(), 5000, 5, 900,
+                0.05, 0.25);
+        GitHubClientFactory clientFactory = new GitHubClientFactory(server.url(), new OkHttpClient());
+        GitHubClientProvider clientProvider = mock(GitHubClientProvider.class);
+        when(clientProvider.forRepository(REPO, null)).thenReturn(
+                new GitHubClientProvider.Client("default", clientFactory.create(() -> "token test"), () -> "token test"));
+
+        // Two files per page, each page with one Java file and a file that is not Java
+        service = new GitHubServiceImpl(clientProvider, scheduler, githubExecutor, 2, 200, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        githubExecutor.shutdownNow();
+        subscriberExecutor.shutdownNow();
+    }
+
+    @Test
+    void fetchesNextPageOnlyWhenFilesAreRequested() throws Exception {
+        PullRequest pullRequest = service.fetchPullRequestSummary(REPO, PR, null);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.streamModifiedFiles(pullRequest).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitFiles(1);
+        idle();
+        assertThat(server.received(PULL + "/files")).hasSize(1);
+        // No thread is parked waiting for demand, so other GitHub work still runs
+        assertThat(githubExecutor.getActiveCount()).isZero();
+        assertThat(CompletableFuture.supplyAsync(() -> true, githubExecutor).get(5, TimeUnit.SECONDS)).isTrue();
+
+        subscriber.request(1);
+        subscriber.awaitFiles(2);
+        idle();
+        assertThat(server.received(PULL + "/files")).hasSize(2);
+
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.completed.get(5, TimeUnit.SECONDS);
+        assertThat(subscriber.files)
+                .extracting(ModifiedFile::getFilePath)
+                .containsExactly("src/F1.java", "src/F2.java", "src/F3.java");
+        assertThat(server.received(PULL + "/files")).hasSize(3);
+
+        // The pull request fetched for the summary was reused to list the files
+        assertThat(server.received().stream().filter(request -> request.path().equals(PULL))).hasSize(1);
+    }
+
+    @Test
+    void stopsFetchingOnceCancelled() throws Exception {
+        PullRequest pullRequest = service.fetchPullRequestSummary(REPO, PR, null);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.streamModifiedFiles(pullRequest).subscribe(subscriber);
+
+        subscriber.request(1);
+        subscriber.awaitFiles(1);
+        subscriber.cancel();
+        subscriber.request(10);
+        idle();
+
+        assertThat(subscriber.files).hasSize(1);
+        assertThat(subscriber.completed).isNotDone();
+        assertThat(server.received(PULL + "/files")).hasSize(1);
+    }
+
+    /**
+     * Wait until no page is being fetched
+     */
+    private void idle() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (githubExecutor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Give a fetch that should not happen the time to show up
+        Thread.sleep(200);
+        assertThat(githubExecutor.getActiveCount()).isZero();
+    }
+
+    private String pullRequestJson() {
+        return "{\"number\":7,\"title\":\"Add files\",\"draft\":false,\"state\":\"open\","
+                + "\"mergeable_state\":\"clean\",\"created_at\":\"2024-01-02T03:04:05Z\","
+                + "\"url\":\"" + server.url() + PULL + "\","
+                + "\"head\":{\"sha\":\"head1\",\"ref\":\"feature\"},\"base\":{\"sha\":\"base1\",\"ref\":\"main\"},"
+                + "\"user\":{\"login\":\"octocat\"},\"changed_files\":6,\"additions\":6,\"deletions\":0}";
+    }
+
+    /**
+     * Three pages linked with {@code Link} headers, as GitHub paginates
+     */
+    private GitHubStubServer.Reply files(GitHubStubServer.Received request) {
+        String path = request.path();
+        int page = path.matches(".*[?&]page=\\d+.*")
+                ? Integer.parseInt(path.replaceAll(".*[?&]page=(\\d+).*", "$1"))
+                : 1;
+        String body = "[{\"sha\":\"s" + page + "\",\"filename\":\"src/F" + page + ".java\",\"status\":\"modified\","
+                + "\"patch\":\"@@ -1 +1 @@\\n-a\\n+b\"},"
+                + "{\"sha\":\"r" + page + "\",\"filename\":\"docs/R" + page + ".md\",\"status\":\"modified\"}]";
+        if (page == 3) {
+            return GitHubStubServer.Reply.json(body);
+        }
+        return new GitHubStubServer.Reply(200, Map.of(
+                "Content-Type", "application/json",
+                "Link", "<" + server.url() + PULL + "/files?per_page=2&page=" + (page + 1) + ">; rel=\"next\""),
+                body);
+    }
+
+    /**
+     * Requests files only when told to, from another thread, like a subscriber whose reviews
+     * finish later
+     */
+    private final class RecordingSubscriber implements Flow.Subscriber<ModifiedFile> {
+        private final List<ModifiedFile> files = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<Void> completed = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ModifiedFile file) {
+            files.add(file);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.complete(null);
+        }
+
+        void request(long n) {
+            subscriberExecutor.execute(() -> subscription.request(n));
+        }
+
+        void cancel() throws Exception {
+            subscriberExecutor.submit(() -> subscription.cancel()).get(5, TimeUnit.SECONDS);
+        }
+
+        void awaitFiles(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (files.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(files).hasSize(count);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.codecritic.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server standing in for the GitHub API in tests. Each route answers requests whose
+ * path starts with its prefix, and every request is recorded.
+ */
+class GitHubStubServer implements AutoCloseable {
+
+    /**
+     * A request the server received
+     */
+    record Received(String method, String path, Map<String, List<String>> headers, String body) {
+
+        String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+
+    /**
+     * A response to send
+     */
+    record Reply(int status, Map<String, String> headers, String body) {
+
+        static Reply json(String body) {
+            return new Reply(200, Map.of("Content-Type", "application/json"), body);
+        }
+    }
+
+    @FunctionalInterface
+    interface Route {
+        Reply handle(Received request) throws Exception;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+
+    GitHubStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    GitHubStubServer route(String pathPrefix, Route route) {
+        server.createContext(pathPrefix, exchange -> handle(exchange, route));
+        return this;
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    List<Received> received() {
+        return received;
+    }
+
+    List<Received> received(String pathPrefix) {
+        return received.stream().filter(request -> request.path().startsWith(pathPrefix)).toList();
+    }
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Received request = new Received(exchange.getRequestMethod(), exchange.getRequestURI().toString(),
+                    exchange.getRequestHeaders(), body);
+            received.add(request);
+
+            Reply reply;
+            try {
+                reply = route.handle(request);
+            } catch (Exception e) {
+                reply = new Reply(500, Map.of(), String.valueOf(e));
+            }
+            reply.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            byte[] content = reply.body().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(reply.status(), content.length == 0 ? -1 : content.length);
+            if (content.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,243 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kohsuke.github.authorization.AuthorizationProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reads pull requests from a mirror of a bare repository built on disk, standing in for GitHub
+ */
+class GitMirrorServiceTest {
+
+    private static final String REPO = "octo/app";
+    private static final long PR = 7;
+
+    @TempDir
+    Path temp;
+
+    private final ExecutorService githubExecutor = Executors.newSingleThreadExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private Git work;
+    private GitMirrorService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path remotes = temp.resolve("remotes");
+        Path upstream = remotes.resolve(REPO + ".git");
+        Git.init().setBare(true).setDirectory(upstream.toFile()).call().close();
+        work = Git.cloneRepository()
+                .setURI(upstream.toUri().toString())
+                .setDirectory(temp.resolve("work").toFile())
+                .call();
+
+        GitHubClientProvider clientProvider = mock(GitHubClientProvider.class);
+        when(clientProvider.forRepository(REPO, null)).thenReturn(
+                new GitHubClientProvider.Client("default", null, AuthorizationProvider.ANONYMOUS));
+        GitHubRequestScheduler scheduler = new GitHubRequestScheduler(meterRegistry, 5000, 5, 900, 0.05, 0.25);
+        service = new GitMirrorService(clientProvider, scheduler, githubExecutor, blobStore, meterRegistry,
+                temp.resolve("mirrors").toString(), remotes.toUri().toString(), 30, 100, 200, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.closeMirrors();
+        work.close();
+        githubExecutor.shutdownNow();
+    }
+
+    @Test
+    void diffsHeadAgainstMergeBaseWithRenames() throws Exception {
+        write("src/Old.java", javaClass("Old", 0));
+        write("src/Keep.java", javaClass("Keep", 0));
+        write("src/Gone.java", javaClass("Gone", 0));
+        write("README.md", "readme\n");
+        RevCommit root = commit("Initial");
+        String main = work.getRepository().getBranch();
+        push("refs/heads/main");
+
+        work.checkout().setCreateBranch(true).setName("feature").setStartPoint(root).call();
+        move("src/Old.java", "src/New.java", javaClass("Old", 1));
+        write("src/Keep.java", javaClass("Keep", 2));
+        write("src/Added.java", javaClass("Added", 0));
+        work.rm().addFilepattern("src/Gone.java").call();
+        write("README.md", "changed readme\n");
+        RevCommit head = commit("Feature");
+        push("refs/heads/feature");
+        push("refs/pull/" + PR + "/head");
+
+        // The base moves on after the branch was cut; its change is not part of the PR
+        work.checkout().setName(main).call();
+        write("src/Other.java", javaClass("Other", 0));
+        RevCommit base = commit("Unrelated");
+        push("refs/heads/main");
+
+        List<ModifiedFile> files = service.filePages(pullRequest(head, base)).next();
+
+        assertThat(files)
+                .extracting(ModifiedFile::getFilePath, ModifiedFile::getChangeType)
+                .containsExactlyInAnyOrder(
+                        tuple("src/New.java", ModifiedFile.ChangeType.MODIFIED),
+                        tuple("src/Keep.java", ModifiedFile.ChangeType.MODIFIED),
+                        tuple("src/Added.java", ModifiedFile.ChangeType.ADDED),
+                        tuple("src/Gone.java", ModifiedFile.ChangeType.DELETED));
+
+        // A rename with a small edit has a patch of that edit only, in the REST files format
+        ModifiedFile renamed = file(files, "src/New.java");
+        assertThat(renamed.getDiffContent())
+                .startsWith("@@ ")
+                .contains("-    int value = 0;", "+    int value = 1;")
+                .doesNotContain("diff --git");
+        assertThat(renamed.getFileName()).isEqualTo("New.java");
+
+        ModifiedFile added = file(files, "src/Added.java");
+        assertThat(added.getFileId()).isEqualTo(blobId(head, "src/Added.java"));
+        verify(blobStore).put(added.getFileId(), javaClass("Added", 0));
+        verify(blobStore, never()).put(file(files, "src/Gone.java").getFileId(), javaClass("Gone", 0));
+    }
+
+    @Test
+    void fetchesHeadOnlyReachableFromPullRef() throws Exception {
+        write("src/Main.java", javaClass("Main", 0));
+        RevCommit base = commit("Initial");
+        push("refs/heads/main");
+
+        // A commit from a fork is on no branch of the repository, only on the pull request's ref
+        write("src/Main.java", javaClass("Main", 1));
+        RevCommit head = commit("From fork");
+        push("refs/pull/" + PR + "/head");
+
+        List<ModifiedFile> files = service.filePages(pullRequest(head, base)).next();
+
+        assertThat(files).extracting(ModifiedFile::getFilePath).containsExactly("src/Main.java");
+        assertThat(file(files, "src/Main.java").getDiffContent()).contains("+    int value = 1;");
+        assertThat(Files.exists(temp.resolve("mirrors").resolve(REPO + ".git").resolve("config"))).isTrue();
+    }
+
+    @Test
+    void fetchesOnlyWhenCommitsAreMissing() throws Exception {
+        write("src/Main.java", javaClass("Main", 0));
+        RevCommit base = commit("Initial");
+        push("refs/heads/main");
+        write("src/Main.java", javaClass("Main", 1));
+        RevCommit head = commit("Change");
+        push("refs/pull/" + PR + "/head");
+
+        service.filePages(pullRequest(head, base)).next();
+        service.filePages(pullRequest(head, base)).next();
+        assertThat(fetches()).isEqualTo(1);
+
+        // A force-push replaces the head with a commit the mirror does not have yet
+        work.reset().setMode(ResetCommand.ResetType.HARD).setRef(base.name()).call();
+        write("src/Main.java", javaClass("Main", 2));
+        RevCommit forced = commit("Rewritten");
+        push("refs/pull/" + PR + "/head");
+
+        List<ModifiedFile> files = service.filePages(pullRequest(forced, base)).next();
+        assertThat(fetches()).isEqualTo(2);
+        assertThat(file(files, "src/Main.java").getDiffContent()).contains("+    int value = 2;");
+    }
+
+    @Test
+    void failsWhenHeadIsNotUpstream() throws Exception {
+        write("src/Main.java", javaClass("Main", 0));
+        RevCommit base = commit("Initial");
+        push("refs/heads/main");
+        write("src/Main.java", javaClass("Main", 1));
+        RevCommit unpushed = commit("Never pushed");
+        // The pull request's ref exists but does not hold the head, as before GitHub updates it
+        push(base.name(), "refs/pull/" + PR + "/head");
+
+        assertThatThrownBy(() -> service.filePages(pullRequest(unpushed, base)).next())
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(unpushed.name());
+    }
+
+    private PullRequest pullRequest(RevCommit head, RevCommit base) {
+        return PullRequest.builder()
+                .prId(PR)
+                .repository(REPO)
+                .headSha(head.name())
+                .baseSha(base.name())
+                .build();
+    }
+
+    private long fetches() {
+        return meterRegistry.get("codecritic.mirror.fetch").timer().count();
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = work.getRepository().getWorkTree().toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        work.add().addFilepattern(path).call();
+    }
+
+    private void move(String from, String to, String content) throws Exception {
+        work.rm().addFilepattern(from).call();
+        write(to, content);
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        return work.commit().setMessage(message).setAuthor("dev", "dev@example.com")
+                .setCommitter("dev", "dev@example.com").call();
+    }
+
+    private void push(String ref) throws Exception {
+        push("HEAD", ref);
+    }
+
+    private void push(String source, String ref) throws Exception {
+        work.push().setRefSpecs(new RefSpec("+" + source + ":" + ref)).call();
+    }
+
+    private String blobId(RevCommit commit, String path) throws Exception {
+        try (TreeWalk walk = TreeWalk.forPath(
+                work.getRepository(), path, commit.getTree())) {
+            return walk.getObjectId(0).name();
+        }
+    }
+
+    private static ModifiedFile file(List<ModifiedFile> files, String path) {
+        return files.stream().filter(file -> file.getFilePath().equals(path)).findFirst().orElseThrow();
+    }
+
+    /**
+     * A class long enough for a one-line edit to keep it similar enough to be detected as a rename
+     */
+    private static String javaClass(String name, int value) {
+        return "package demo;\n\npublic class " + name + " {\n    int value = " + value + ";\n"
+                + IntStream.range(0, 12)
+                        .mapToObj(i -> "    int field" + i + " = " + i + ";\n")
+                        .collect(Collectors.joining())
+                + "}\n";
+    }
+}
@@ -0,0 +1,265 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Compares static analysis of sources written to temporary files, as it was done before sources
+ * were analyzed in memory, with the in-memory analysis of {@link PmdAnalyzer},
+ * {@link CheckstyleAnalyzer} and {@link StaticAnalysisService}.
+ * <p>
+ * The temp-file path writes each source with a {@link FileWriter} to {@code Files.createTempFile},
+ * runs PMD on the files and a stock Checkstyle {@link Checker} on them, and deletes them again.
+ * The in-memory Checkstyle time includes parsing, which the Checker does itself. Both paths use
+ * the bundled rule sets and configuration and go through the corpus in batches of
+ * {@value #BATCH_SIZE} files; the issues each finds in the corpus are printed to compare them.
+ * <p>
+ * The corpus is the Java files under the first argument, or under {@code src/main/java}; temporary
+ * files go to the directory given as second argument, or to {@code java.io.tmpdir}, so that the
+ * filesystem of a container's {@code /tmp} can be measured. Not run by the build; run it from the
+ * test classpath:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.codecritic.service.InMemoryAnalysisBenchmark
+ * </pre>
+ */
+public final class InMemoryAnalysisBenchmark {
+
+    private static final List<String> RULE_SETS =
+            List.of("category/java/bestpractices.xml", "category/java/errorprone.xml");
+    private static final int BATCH_SIZE = 20;
+    private static final long WARMUP_NANOS = 5_000_000_000L;
+    private static final long MEASURE_NANOS = 10_000_000_000L;
+    /** PMD's dataflow pass logs every method it gives up on, which would bury the results */
+    private static final Logger PMD_LOGGER = Logger.getLogger("net.sourceforge.pmd");
+
+    private InMemoryAnalysisBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Path.of(args.length > 0 ? args[0] : "src/main/java");
+        Path tempDirectory = Path.of(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        PMD_LOGGER.setLevel(Level.OFF);
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.filter(path -> path.toString().endsWith(".java")).toList();
+        }
+        List<ModifiedFile> files = new ArrayList<>(paths.size());
+        List<String> sources = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            String repositoryPath = root.relativize(path).toString();
+            files.add(ModifiedFile.builder()
+                    .fileId(repositoryPath)
+                    .fileName(path.getFileName().toString())
+                    .filePath(repositoryPath)
+                    .changeType(ModifiedFile.ChangeType.MODIFIED)
+                    .build());
+            sources.add(Files.readString(path));
+        }
+        System.out.printf("corpus: %d files, temporary files in %s%n", files.size(), tempDirectory);
+
+        TempFileAnalysis tempFiles = new TempFileAnalysis(tempDirectory);
+        PmdAnalyzer pmdAnalyzer = new PmdAnalyzer(RULE_SETS, 0);
+        CheckstyleAnalyzer checkstyleAnalyzer = new CheckstyleAnalyzer("");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StaticAnalysisService service = new StaticAnalysisService(checkstyleAnalyzer, pmdAnalyzer,
+                new JavaSourceParser(meterRegistry),
+                new PreScreenAnalyzer(meterRegistry, false, Set.of(), List.of(), List.of(), List.of(), List.of()),
+                new AnalysisResultCache(new ObjectMapper(), meterRegistry, false, "", 0, 0),
+                meterRegistry, Runnable::run, 0, 1);
+        ReflectionTestUtils.setField(service, "pmdEnabled", true);
+        ReflectionTestUtils.setField(service, "checkstyleEnabled", true);
+
+        Batches batches = new Batches(files, sources);
+        print("PMD, temp files", files.size(), batches.measure((f, s) -> tempFiles.analyze(s, true, false)));
+        print("PMD, in memory", files.size(), batches.measure((f, s) -> count(pmdAnalyzer.analyze(paths(f), s))));
+        print("Checkstyle, temp files", files.size(), batches.measure((f, s) -> tempFiles.analyze(s, false, true)));
+        print("Checkstyle, in memory", files.size(), batches.measure((f, s) -> {
+            List<ParsedSource> parsed = new ArrayList<>(f.size());
+            for (int i = 0; i < f.size(); i++) {
+                parsed.add(ParsedSource.parse(f.get(i).getFilePath(), s.get(i)));
+            }
+            return count(checkstyleAnalyzer.check(parsed));
+        }));
+        print("service, temp files", files.size(), batches.measure((f, s) -> tempFiles.analyze(s, true, true)));
+        print("service, in memory", files.size(), batches.measure((f, s) -> service.analyzeFiles(f, s).stream()
+                .mapToInt(report -> report.getIssues().size()).sum()));
+        tempFiles.close();
+        service.shutdown();
+    }
+
+    private static void print(String path, int files, Result result) {
+        System.out.printf("%-24s %8.1f files/s (%d issues)%n", path, files / result.nanosPerRound * 1e9,
+                result.issues);
+    }
+
+    private static List<String> paths(List<ModifiedFile> files) {
+        return files.stream().map(ModifiedFile::getFilePath).toList();
+    }
+
+    private static int count(List<? extends List<?>> issues) {
+        return issues.stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Analysis as it was before sources were analyzed in memory: each source written to a
+     * temporary file, analyzed from disk and deleted
+     */
+    private static final class TempFileAnalysis {
+        private final Path directory;
+        private final List<RuleSet> ruleSets;
+        private final Checker checker = new Checker();
+        private final CountingListener listener = new CountingListener();
+
+        private TempFileAnalysis(Path directory) throws Exception {
+            this.directory = directory;
+            this.ruleSets = RuleSetLoader.fromPmdConfig(new PMDConfiguration()).loadFromResources(RULE_SETS);
+            checker.setModuleClassLoader(InMemoryAnalysisBenchmark.class.getClassLoader());
+            checker.setHaltOnException(false);
+            checker.configure(ConfigurationLoader.loadConfiguration(
+                    InMemoryAnalysisBenchmark.class.getClassLoader().getResource("checkstyle.xml").toExternalForm(),
+                    new PropertiesExpander(new Properties())));
+            checker.addListener(listener);
+        }
+
+        private int analyze(List<String> sources, boolean pmd, boolean checkstyle) throws Exception {
+            List<Path> files = new ArrayList<>(sources.size());
+            try {
+                for (String source : sources) {
+                    Path file = Files.createTempFile(directory, "analysis-", ".java");
+                    files.add(file);
+                    try (Writer writer = new FileWriter(file.toFile())) {
+                        writer.write(source);
+                    }
+                }
+                int issues = 0;
+                if (pmd) {
+                    PMDConfiguration configuration = new PMDConfiguration();
+                    configuration.setThreads(0);
+                    configuration.setIgnoreIncrementalAnalysis(true);
+                    try (PmdAnalysis analysis = PmdAnalysis.create(configuration)) {
+                        analysis.addRuleSets(ruleSets);
+                        files.forEach(analysis.files()::addFile);
+                        issues += analysis.performAnalysisAndCollectReport().getViolations().size();
+                    }
+                }
+                if (checkstyle) {
+                    listener.count = 0;
+                    checker.process(files.stream().map(Path::toFile).toList());
+                    issues += listener.count;
+                }
+                return issues;
+            } finally {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        private void close() {
+            checker.destroy();
+        }
+    }
+
+    /**
+     * The corpus, analyzed batch by batch in each round
+     */
+    private record Batches(List<ModifiedFile> files, List<String> sources) {
+
+        /**
+         * Mean time of a round over the whole corpus, after a warm-up
+         */
+        private Result measure(Analysis analysis) throws Exception {
+            int issues = 0;
+            long end = System.nanoTime() + WARMUP_NANOS;
+            while (System.nanoTime() < end) {
+                issues = round(analysis);
+            }
+
+            long rounds = 0;
+            long start = System.nanoTime();
+            end = start + MEASURE_NANOS;
+            long now;
+            do {
+                issues = round(analysis);
+                rounds++;
+                now = System.nanoTime();
+            } while (now < end);
+            return new Result((double) (now - start) / rounds, issues);
+        }
+
+        private int round(Analysis analysis) throws Exception {
+            int issues = 0;
+            for (int from = 0; from < files.size(); from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, files.size());
+                issues += analysis.analyze(files.subList(from, to), sources.subList(from, to));
+            }
+            return issues;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Analysis {
+        /**
+         * Analyze a batch and return the number of issues found
+         */
+        int analyze(List<ModifiedFile> files, List<String> sources) throws Exception;
+    }
+
+    private record Result(double nanosPerRound, int issues) {
+    }
+
+    private static final class CountingListener implements AuditListener {
+        private int count;
+
+        @Override
+        public void auditStarted(AuditEvent event) {
+        }
+
+        @Override
+        public void auditFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void fileStarted(AuditEvent event) {
+        }
+
+        @Override
+        public void fileFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void addError(AuditEvent event) {
+            count++;
+        }
+
+        @Override
+        public void addException(AuditEvent event, Throwable throwable) {
+        }
+    }
+}
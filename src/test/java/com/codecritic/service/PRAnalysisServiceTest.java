@@ -0,0 +1,140 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.AnalysisReport;
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.codecritic.pipeline.ReviewPipeline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reuses the results of unchanged files across reviews of a pull request
+ */
+class PRAnalysisServiceTest {
+
+    private static final String PATH = "src/Main.java";
+    private static final String BLOB = "b".repeat(40);
+
+    /** Adds lines 3 and 4 of the file at positions 3 and 4 */
+    private static final String FIRST_PATCH = "@@ -1,2 +1,4 @@\n a\n b\n+c\n+d";
+
+    /**
+     * The same blob diffed against a base that was rebased onto: line 3 is on the base now, and
+     * line 4 is added at position 3
+     */
+    private static final String REBASED_PATCH = "@@ -2,2 +2,3 @@\n b\n c\n+d";
+
+    private final ReviewPipeline reviewPipeline = mock(ReviewPipeline.class);
+    private final GitHubService gitHubService = mock(GitHubService.class);
+    private final GitHubCommentService commentService = mock(GitHubCommentService.class);
+    private final ProgressiveReviewPublisher publisher = mock(ProgressiveReviewPublisher.class);
+    private final ReviewResultStore resultStore = new ReviewResultStore(10);
+    private PRAnalysisService service;
+
+    @BeforeEach
+    void setUp() {
+        when(reviewPipeline.start(any())).thenReturn(mock(ReviewPipeline.Run.class));
+        service = new PRAnalysisService(reviewPipeline, gitHubService, commentService, Runnable::run,
+                resultStore, new ReviewCommentFormatter(), publisher);
+        ReflectionTestUtils.setField(service, "incrementalEnabled", true);
+        ReflectionTestUtils.setField(service, "inlineCommentsEnabled", true);
+    }
+
+    @Test
+    void placesCarriedOverIssuesOnCurrentPatch() throws Exception {
+        FileReviewResult previous = FileReviewResult.builder()
+                .filePath(PATH)
+                .blobSha(BLOB)
+                .report(AnalysisReport.builder()
+                        .issues(List.of(
+                                issue("on a line no longer added", 3, 3),
+                                issue("on a line still added", 4, 4),
+                                issue("about the whole file", 0, null)))
+                        .build())
+                .build();
+        PullRequest pullRequest = pullRequest(REBASED_PATCH);
+        resultStore.record(pullRequest, previous);
+
+        service.analyzePullRequest(pullRequest).get(5, TimeUnit.SECONDS);
+
+        FileReviewResult carried = resultStore.find(pullRequest, pullRequest.getModifiedFiles().get(0));
+        assertThat(carried.isCarriedOver()).isTrue();
+        assertThat(carried.getReport().getIssues())
+                .extracting(AnalysisIssue::getDescription, AnalysisIssue::getLineNumber, AnalysisIssue::getDiffPosition)
+                .containsExactly(
+                        tuple("on a line still added", 4, 3),
+                        tuple("about the whole file", 0, null));
+        // The stored result is not changed in place
+        assertThat(previous.getReport().getIssues())
+                .extracting(AnalysisIssue::getDiffPosition)
+                .containsExactly(3, 4, null);
+        verify(reviewPipeline.start(pullRequest), never()).submit(any());
+        // Comments were posted on these issues by the review that found them
+        verify(gitHubService, never()).submitReview(any(), anyString(), anyList());
+    }
+
+    @Test
+    void keepsPositionsOnUnchangedPatch() throws Exception {
+        PullRequest pullRequest = pullRequest(FIRST_PATCH);
+        resultStore.record(pullRequest, FileReviewResult.builder()
+                .filePath(PATH)
+                .blobSha(BLOB)
+                .report(AnalysisReport.builder()
+                        .issues(List.of(issue("first", 3, 3), issue("second", 4, 4)))
+                        .build())
+                .build());
+
+        service.analyzePullRequest(pullRequest).get(5, TimeUnit.SECONDS);
+
+        assertThat(resultStore.find(pullRequest, pullRequest.getModifiedFiles().get(0)).getReport().getIssues())
+                .extracting(AnalysisIssue::getLineNumber, AnalysisIssue::getDiffPosition)
+                .containsExactly(tuple(3, 3), tuple(4, 4));
+    }
+
+    private static PullRequest pullRequest(String patch) {
+        List<ModifiedFile> files = new ArrayList<>();
+        files.add(ModifiedFile.builder()
+                .fileId(BLOB)
+                .fileName("Main.java")
+                .filePath(PATH)
+                .changeType(ModifiedFile.ChangeType.MODIFIED)
+                .diffContent(patch)
+                .build());
+        return PullRequest.builder()
+                .prId(7L)
+                .repository("octo/app")
+                .title("Change")
+                .author("octocat")
+                .headSha("h".repeat(40))
+                .baseSha("a".repeat(40))
+                .modifiedFiles(files)
+                .build();
+    }
+
+    private static AnalysisIssue issue(String description, int line, Integer position) {
+        return AnalysisIssue.builder()
+                .issueId(description)
+                .description(description)
+                .severity(AnalysisIssue.Severity.LOW)
+                .lineNumber(line)
+                .diffPosition(position)
+                .build();
+    }
+}
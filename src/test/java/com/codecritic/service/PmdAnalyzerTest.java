@@ -0,0 +1,102 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mockStatic;
+
+class PmdAnalyzerTest {
+
+    private static final String SOURCE = """
+            package demo;
+
+            public class Sample {
+                public void run(String value) {
+                    try {
+                        System.out.println(value.length());
+                    } catch (Exception e) {
+                    }
+                    if (value == "x") {
+                        return;
+                    }
+                }
+            }
+            """;
+
+    private static final List<String> RULE_SETS =
+            List.of("category/java/bestpractices.xml", "category/java/errorprone.xml");
+
+    private final PmdAnalyzer analyzer = new PmdAnalyzer(RULE_SETS, 0);
+
+    @Test
+    void analyzesBatchOnCallingThreadByDefault() {
+        List<List<AnalysisIssue>> issues;
+        PMDConfiguration configuration;
+        try (MockedStatic<PmdAnalysis> pmd = mockStatic(PmdAnalysis.class, CALLS_REAL_METHODS)) {
+            issues = analyzer.analyze(List.of("src/A.java", "src/B.java"), List.of(SOURCE, SOURCE));
+            configuration = configurationOf(pmd);
+        }
+
+        assertThat(configuration.getThreads()).isZero();
+        assertThat(issues).hasSize(2);
+        assertThat(describe(issues.get(0)))
+                .isNotEmpty()
+                .isEqualTo(describe(issues.get(1)));
+    }
+
+    @Test
+    void analyzesBatchOnConfiguredThreadsUpToOnePerFile() {
+        PmdAnalyzer threaded = new PmdAnalyzer(RULE_SETS, 4);
+        List<String> expected = describe(analyzer.analyze(List.of("src/A.java"), List.of(SOURCE)).get(0));
+
+        try (MockedStatic<PmdAnalysis> pmd = mockStatic(PmdAnalysis.class, CALLS_REAL_METHODS)) {
+            List<List<AnalysisIssue>> issues = threaded.analyze(List.of("src/A.java", "src/B.java"),
+                    List.of(SOURCE, SOURCE));
+
+            assertThat(configurationOf(pmd).getThreads()).isEqualTo(2);
+            assertThat(issues).extracting(PmdAnalyzerTest::describe).containsExactly(expected, expected);
+        }
+    }
+
+    @Test
+    void concurrentRunsShareRuleSets() throws Exception {
+        List<String> expected = describe(analyzer.analyze(List.of("src/A.java"), List.of(SOURCE)).get(0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<List<AnalysisIssue>>>> runs = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String path = "src/C" + i + ".java";
+                runs.add(executor.submit(() -> analyzer.analyze(List.of(path), List.of(SOURCE))));
+            }
+            for (Future<List<List<AnalysisIssue>>> run : runs) {
+                assertThat(describe(run.get(30, TimeUnit.SECONDS).get(0))).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PMDConfiguration configurationOf(MockedStatic<PmdAnalysis> pmd) {
+        ArgumentCaptor<PMDConfiguration> configuration = ArgumentCaptor.forClass(PMDConfiguration.class);
+        pmd.verify(() -> PmdAnalysis.create(configuration.capture()));
+        return configuration.getValue();
+    }
+
+    private static List<String> describe(List<AnalysisIssue> issues) {
+        return issues.stream().map(issue -> issue.getLineNumber() + " " + issue.getDescription()).sorted().toList();
+    }
+}
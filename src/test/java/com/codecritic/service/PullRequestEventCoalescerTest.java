@@ -0,0 +1,76 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PullRequestEventCoalescerTest {
+
+    private final PullRequestEventCoalescer coalescer = new PullRequestEventCoalescer(10, 100);
+    private final CountDownLatch reviewStarting = new CountDownLatch(1);
+    private final CountDownLatch fetched = new CountDownLatch(1);
+    private final CompletableFuture<Void> firstReview = new CompletableFuture<>();
+
+    /** Blocks on a fetch in the first review, as a caller-runs executor does on the timer thread */
+    private final Function<GitHubWebhookEvent, CompletableFuture<?>> review = event -> {
+        if (!"sha-1".equals(event.getHeadSha())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        reviewStarting.countDown();
+        try {
+            fetched.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return firstReview;
+    };
+
+    @AfterEach
+    void tearDown() {
+        fetched.countDown();
+        coalescer.shutdown();
+    }
+
+    @Test
+    void submitsWhileAReviewIsStarting() throws Exception {
+        coalescer.submit(event("d1", 1, "sha-1"), review);
+        assertThat(reviewStarting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Void> other = CompletableFuture.supplyAsync(
+                () -> coalescer.submit(event("d2", 2, "sha-2"), review)).get(5, TimeUnit.SECONDS);
+        fetched.countDown();
+
+        other.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void cancelsAReviewSupersededWhileStarting() throws Exception {
+        CompletableFuture<Void> first = coalescer.submit(event("d1", 1, "sha-1"), review);
+        assertThat(reviewStarting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Void> second = CompletableFuture.supplyAsync(
+                () -> coalescer.submit(event("d2", 1, "sha-2"), review)).get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        fetched.countDown();
+
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(firstReview).isCancelled();
+    }
+
+    private static GitHubWebhookEvent event(String deliveryId, int pullRequest, String headSha) {
+        return GitHubWebhookEvent.builder()
+                .eventId(deliveryId)
+                .eventType("pull_request")
+                .repositoryName("octo/app")
+                .pullRequestId((long) pullRequest)
+                .headSha(headSha)
+                .build();
+    }
+}
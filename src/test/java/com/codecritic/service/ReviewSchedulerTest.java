@@ -0,0 +1,105 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReviewSchedulerTest {
+
+    private final PRAnalysisService prAnalysisService = mock(PRAnalysisService.class);
+    private final List<Long> started = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Long, CompletableFuture<Void>> analyses = new ConcurrentHashMap<>();
+    private ReviewScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        when(prAnalysisService.analyzePullRequest(any())).thenAnswer(invocation -> {
+            long prId = invocation.<PullRequest>getArgument(0).getPrId();
+            started.add(prId);
+            return analyses.computeIfAbsent(prId, id -> new CompletableFuture<>());
+        });
+        // One review at a time and no aging, so the order depends on the finish tags alone
+        scheduler = new ReviewScheduler(prAnalysisService, new SimpleMeterRegistry(), 1, 4096, 10, 100, 0, "");
+    }
+
+    @Test
+    void repositoryKeepsItsFinishTagAfterItsQueueEmpties() {
+        scheduler.schedule(pullRequest("octo/a", 1, 50));
+        scheduler.schedule(pullRequest("octo/a", 2, 5));
+        scheduler.schedule(pullRequest("octo/b", 3, 5));
+
+        finish(1);
+
+        // The first review of octo/a still counts against it although its queue was empty
+        assertThat(started).containsExactly(1L, 3L);
+        finish(3);
+        assertThat(started).containsExactly(1L, 3L, 2L);
+    }
+
+    @Test
+    void finishTagExpiresOnceVirtualTimePassesIt() {
+        scheduler.schedule(pullRequest("octo/a", 1, 1));
+        assertThat(queuedRepositories()).containsExactly("octo/a");
+
+        scheduler.schedule(pullRequest("octo/b", 2, 5));
+        scheduler.schedule(pullRequest("octo/b", 3, 5));
+        finish(1);
+        // Virtual time is still 0, below the tag of octo/a
+        assertThat(queuedRepositories()).containsExactlyInAnyOrder("octo/a", "octo/b");
+
+        finish(2);
+        // Starting the second review of octo/b moved virtual time to 5
+        assertThat(started).containsExactly(1L, 2L, 3L);
+        assertThat(queuedRepositories()).containsExactly("octo/b");
+    }
+
+    @Test
+    void cancelledReviewLeavesTheFinishTag() {
+        scheduler.schedule(pullRequest("octo/a", 1, 50));
+        CompletableFuture<Void> queued = scheduler.schedule(pullRequest("octo/b", 2, 5));
+
+        queued.cancel(true);
+
+        assertThat(queuedRepositories()).containsExactly("octo/a");
+    }
+
+    private void finish(long prId) {
+        analyses.get(prId).complete(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> queuedRepositories() {
+        synchronized (scheduler) {
+            return List.copyOf(((Map<String, ?>) ReflectionTestUtils.getField(scheduler, "queues")).keySet());
+        }
+    }
+
+    /**
+     * Pull request whose review costs one unit per file
+     */
+    private static PullRequest pullRequest(String repository, long prId, int files) {
+        return PullRequest.builder()
+                .repository(repository)
+                .prId(prId)
+                .modifiedFiles(IntStream.range(0, files)
+                        .mapToObj(i -> ModifiedFile.builder().filePath("F" + i + ".java").build())
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.codecritic.service;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time to check a corpus of Java files with the bundled Checkstyle configuration,
+ * with Checkstyle's own TreeWalker reading and parsing each file, and with
+ * {@link SharedAstTreeWalker} walking trees parsed once by the {@code parse} stage. The time to
+ * parse is reported separately, since the parse stage shares it with PMD and the pre-screen.
+ * <p>
+ * The corpus is the Java files under the given directory, or under {@code src/main/java}. Not run
+ * by the build; run it from the test classpath:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.codecritic.service.SharedAstTreeWalkerBenchmark
+ * </pre>
+ */
+public final class SharedAstTreeWalkerBenchmark {
+
+    private static final long WARMUP_NANOS = 5_000_000_000L;
+    private static final long MEASURE_NANOS = 10_000_000_000L;
+
+    private SharedAstTreeWalkerBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Path.of(args.length > 0 ? args[0] : "src/main/java");
+        List<File> files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(path -> path.toString().endsWith(".java")).map(Path::toFile).toList();
+        }
+        List<String> sources = new ArrayList<>(files.size());
+        long bytes = 0;
+        for (File file : files) {
+            String source = Files.readString(file.toPath());
+            sources.add(source);
+            bytes += source.length();
+        }
+        System.out.printf("corpus: %d files, %d KB%n", files.size(), bytes / 1024);
+
+        Checker checker = new Checker();
+        checker.setModuleClassLoader(SharedAstTreeWalkerBenchmark.class.getClassLoader());
+        checker.configure(ConfigurationLoader.loadConfiguration(
+                SharedAstTreeWalkerBenchmark.class.getClassLoader().getResource("checkstyle.xml").toExternalForm(),
+                new PropertiesExpander(new Properties())));
+        CountingListener listener = new CountingListener();
+        checker.addListener(listener);
+
+        CheckstyleAnalyzer analyzer = new CheckstyleAnalyzer("");
+        int[] sharedViolations = new int[1];
+
+        double treeWalker = measure(() -> {
+            listener.count = 0;
+            checker.process(files);
+        });
+        // Trees carry comment nodes once checked, so every round checks freshly parsed sources
+        double[] parseNanos = new double[1];
+        double total = measure(() -> {
+            long start = System.nanoTime();
+            List<ParsedSource> parsed = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                parsed.add(ParsedSource.parse(files.get(i).getAbsolutePath(), sources.get(i)));
+            }
+            parseNanos[0] += System.nanoTime() - start;
+            sharedViolations[0] = analyzer.check(parsed).stream().mapToInt(List::size).sum();
+        }, parseNanos);
+        checker.destroy();
+
+        System.out.printf("TreeWalker, parse + check: %8.1f ms/run (%d violations)%n",
+                treeWalker / 1e6, listener.count);
+        System.out.printf("parse stage:               %8.1f ms/run%n", parseNanos[0] / 1e6);
+        System.out.printf("SharedAstTreeWalker check: %8.1f ms/run (%d violations)%n",
+                (total - parseNanos[0]) / 1e6, sharedViolations[0]);
+    }
+
+    /**
+     * Mean time of a round, after a warm-up
+     *
+     * @param perRound accumulators that the round adds to, turned into means of the measured rounds
+     */
+    private static double measure(Round round, double[]... perRound) throws Exception {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            round.run();
+        }
+        for (double[] accumulator : perRound) {
+            accumulator[0] = 0;
+        }
+
+        long rounds = 0;
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        long now;
+        do {
+            round.run();
+            rounds++;
+            now = System.nanoTime();
+        } while (now < end);
+        for (double[] accumulator : perRound) {
+            accumulator[0] /= rounds;
+        }
+        return (double) (now - start) / rounds;
+    }
+
+    @FunctionalInterface
+    private interface Round {
+        void run() throws Exception;
+    }
+
+    private static final class CountingListener implements AuditListener {
+        private int count;
+
+        @Override
+        public void auditStarted(AuditEvent event) {
+        }
+
+        @Override
+        public void auditFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void fileStarted(AuditEvent event) {
+        }
+
+        @Override
+        public void fileFinished(AuditEvent event) {
+        }
+
+        @Override
+        public void addError(AuditEvent event) {
+            count++;
+        }
+
+        @Override
+        public void addException(AuditEvent event, Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+}
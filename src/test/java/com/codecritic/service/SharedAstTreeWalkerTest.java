@@ -0,0 +1,274 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks sources with {@link SharedAstTreeWalker}, through {@link CheckstyleAnalyzer}, and with
+ * Checkstyle's own {@code TreeWalker} reading the same sources from disk, and expects the same
+ * violations from both.
+ */
+class SharedAstTreeWalkerTest {
+
+    /**
+     * Ordinary checks, checks on comment nodes, checks reading comments from the file contents,
+     * a check outside the tree walker, filters below the tree walker and a filter of the checker.
+     * XPath filters are left out: they need a newer Saxon than the one PMD puts on the classpath.
+     */
+    private static final String CONFIG = """
+            <?xml version="1.0"?>
+            <!DOCTYPE module PUBLIC
+                      "-//Checkstyle//DTD Checkstyle Configuration 1.3//EN"
+                      "https://checkstyle.org/dtds/configuration_1_3.dtd">
+            <module name="Checker">
+                <property name="severity" value="warning"/>
+                <module name="FileTabCharacter">
+                    <property name="eachLine" value="true"/>
+                </module>
+                <module name="SuppressWarningsFilter"/>
+                <module name="TreeWalker">
+                    <module name="ConstantName">
+                        <property name="severity" value="error"/>
+                    </module>
+                    <module name="MemberName"/>
+                    <module name="LocalVariableName"/>
+                    <module name="NeedBraces"/>
+                    <module name="WhitespaceAround"/>
+                    <module name="UnusedImports"/>
+                    <module name="AvoidStarImport"/>
+                    <module name="MissingJavadocMethod">
+                        <property name="scope" value="public"/>
+                    </module>
+                    <module name="TodoComment"/>
+                    <module name="TrailingComment"/>
+                    <module name="CommentsIndentation"/>
+                    <module name="JavadocStyle"/>
+                    <module name="JavadocMethod"/>
+                    <module name="SuppressWarningsHolder"/>
+                    <module name="SuppressionCommentFilter"/>
+                    <module name="SuppressWithNearbyCommentFilter"/>
+                </module>
+            </module>
+            """;
+
+    private static final String SAMPLE = """
+            package demo;
+
+            import java.util.*;
+            import java.io.File;
+            import java.util.function.Supplier;
+
+            /**
+             * Sample with violations of every kind of check.
+             */
+            public class Sample {
+                private static final int bad_constant = 1;
+                private int Member;
+                // CHECKSTYLE:OFF
+                private static final int hidden_constant = 2;
+                // CHECKSTYLE:ON
+                private static final int nearby_constant = 3; // SUPPRESS CHECKSTYLE ConstantName
+                @SuppressWarnings("checkstyle:constantname")
+                private static final int annotated_constant = 4;
+
+                // TODO: remove this
+                /** Missing the period */
+                public int compute(int a) {
+                    if (a > 0) return a;
+                    int Bad_local=a;
+                    return Bad_local; /* trailing */
+                }
+
+                /**
+                 * Runs.
+                 *
+                 * @param unknown not a parameter
+                 * @see Supplier
+                 */
+                public void run(int value) {
+            \t    int tabbed = value;
+                      // misplaced comment
+                    System.out.println(tabbed);
+                }
+
+                public void undocumented() {
+                }
+            }
+            """;
+
+    private static final String LEGACY = """
+            package demo;
+
+            class Legacy {
+                // CHECKSTYLE:OFF
+                static final int legacy_constant = 1;
+                // CHECKSTYLE:ON
+
+                class Inner {
+                    static final int inner_constant = 2; // TODO: rename
+                }
+            }
+            """;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void reportsSameViolationsAsTreeWalker() throws Exception {
+        Path config = write("checkstyle.xml", CONFIG);
+        Path sample = write("demo/Sample.java", SAMPLE);
+        Path legacy = write("demo/Legacy.java", LEGACY);
+
+        Map<String, List<String>> expected = treeWalker(config, sample, legacy);
+        Map<String, List<String>> actual = sharedWalker(config, parse(sample), parse(legacy));
+
+        assertThat(actual).isEqualTo(expected);
+        // Each kind of check reported something, and each filter suppressed something
+        assertThat(expected.get(sample.toString()))
+                .anyMatch(violation -> violation.contains("'bad_constant'"))
+                .anyMatch(violation -> violation.contains("TODO"))
+                .anyMatch(violation -> violation.contains("First sentence should end with a period"))
+                .anyMatch(violation -> violation.contains("Unused import"))
+                .anyMatch(violation -> violation.contains("tab"))
+                .noneMatch(violation -> violation.contains("hidden_constant"))
+                .noneMatch(violation -> violation.contains("nearby_constant"))
+                .noneMatch(violation -> violation.contains("annotated_constant"));
+        assertThat(expected.get(legacy.toString()))
+                .anyMatch(violation -> violation.contains("inner_constant"))
+                .noneMatch(violation -> violation.contains("legacy_constant"));
+    }
+
+    @Test
+    void reparsesSourceWhoseTreeHasCommentNodes() throws Exception {
+        Path config = write("checkstyle.xml", CONFIG);
+        Path sample = write("demo/Sample.java", SAMPLE);
+        Map<String, List<String>> expected = treeWalker(config, sample);
+
+        // Another stage walked the tree with comments first, so it is no longer the plain tree
+        ParsedSource walked = parse(sample);
+        walked.getAstWithComments();
+        assertThat(walked.hasCommentNodes()).isTrue();
+        assertThat(sharedWalker(config, walked)).isEqualTo(expected);
+
+        // Checking a source leaves comment nodes in its tree, so checking it again re-parses it too
+        CheckstyleAnalyzer analyzer = new CheckstyleAnalyzer(config.toString());
+        ParsedSource source = parse(sample);
+        List<String> first = describe(analyzer.check(List.of(source)).get(0));
+        assertThat(source.hasCommentNodes()).isTrue();
+        assertThat(describe(analyzer.check(List.of(source)).get(0))).isEqualTo(first);
+        assertThat(first).isEqualTo(expected.get(sample.toString()));
+    }
+
+    @Test
+    void reportsSameViolationsWithBundledConfiguration() throws Exception {
+        Path config = Path.of(getClass().getClassLoader().getResource("checkstyle.xml").toURI());
+        Path sample = write("demo/Sample.java", SAMPLE);
+        Path legacy = write("demo/Legacy.java", LEGACY);
+
+        Map<String, List<String>> expected = treeWalker(config, sample, legacy);
+
+        assertThat(sharedWalker(config, parse(sample), parse(legacy))).isEqualTo(expected);
+        assertThat(expected.get(sample.toString())).isNotEmpty();
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = temp.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        return file;
+    }
+
+    private static ParsedSource parse(Path file) throws Exception {
+        return ParsedSource.parse(file.toString(), Files.readString(file));
+    }
+
+    /**
+     * Violations of each file, checked by Checkstyle from disk with its own TreeWalker
+     */
+    private static Map<String, List<String>> treeWalker(Path config, Path... files) throws Exception {
+        Checker checker = new Checker();
+        checker.setModuleClassLoader(SharedAstTreeWalkerTest.class.getClassLoader());
+        checker.configure(ConfigurationLoader.loadConfiguration(config.toString(),
+                new PropertiesExpander(new Properties())));
+        Map<String, List<String>> violations = new LinkedHashMap<>();
+        checker.addListener(new AuditListener() {
+            @Override
+            public void auditStarted(AuditEvent event) {
+            }
+
+            @Override
+            public void auditFinished(AuditEvent event) {
+            }
+
+            @Override
+            public void fileStarted(AuditEvent event) {
+                violations.put(event.getFileName(), new ArrayList<>());
+            }
+
+            @Override
+            public void fileFinished(AuditEvent event) {
+            }
+
+            @Override
+            public void addError(AuditEvent event) {
+                AnalysisIssue.Severity severity = event.getSeverityLevel() == SeverityLevel.ERROR
+                        ? AnalysisIssue.Severity.MEDIUM
+                        : AnalysisIssue.Severity.LOW;
+                violations.get(event.getFileName()).add(describe(event.getLine(), event.getColumn(), severity,
+                        event.getMessage()));
+            }
+
+            @Override
+            public void addException(AuditEvent event, Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+        });
+        try {
+            checker.process(List.of(files).stream().map(Path::toFile).toList());
+        } finally {
+            checker.destroy();
+        }
+        return violations;
+    }
+
+    /**
+     * Violations of each source, checked through SharedAstTreeWalker
+     */
+    private static Map<String, List<String>> sharedWalker(Path config, ParsedSource... sources) throws Exception {
+        List<List<AnalysisIssue>> issues = new CheckstyleAnalyzer(config.toString()).check(List.of(sources));
+        Map<String, List<String>> violations = new LinkedHashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            violations.put(new File(sources[i].getPath()).getAbsolutePath(), describe(issues.get(i)));
+        }
+        return violations;
+    }
+
+    private static List<String> describe(List<AnalysisIssue> issues) {
+        return issues.stream()
+                .map(issue -> describe(issue.getLineNumber(), issue.getColumnNumber(), issue.getSeverity(),
+                        issue.getDescription()))
+                .toList();
+    }
+
+    private static String describe(int line, int column, AnalysisIssue.Severity severity, String message) {
+        return line + ":" + column + " " + severity + " " + message;
+    }
+}
@@ -0,0 +1,111 @@
+package com.codecritic.service;
+
+import com.codecritic.model.ModifiedFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the PMD and Checkstyle cost per file of {@link StaticAnalysisService} when a corpus of
+ * Java files is analyzed in batches of different sizes, from one file at a time up to the whole
+ * corpus in one batch, as a pull request's files are with the default unbounded batches. Results
+ * are not cached and the pre-screen is off, so every round analyzes every file.
+ * <p>
+ * The corpus is the Java files under the given directory, or under {@code src/main/java}. Not run
+ * by the build; run it from the test classpath:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.codecritic.service.StaticAnalysisBatchingBenchmark
+ * </pre>
+ */
+public final class StaticAnalysisBatchingBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 5, 20, Integer.MAX_VALUE};
+    private static final long WARMUP_NANOS = 5_000_000_000L;
+    private static final long MEASURE_NANOS = 10_000_000_000L;
+    /** PMD's dataflow pass logs every method it gives up on, which would bury the results */
+    private static final Logger PMD_LOGGER = Logger.getLogger("net.sourceforge.pmd");
+
+    private StaticAnalysisBatchingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Path.of(args.length > 0 ? args[0] : "src/main/java");
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.filter(path -> path.toString().endsWith(".java")).toList();
+        }
+        List<ModifiedFile> files = new ArrayList<>(paths.size());
+        List<String> sources = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            String repositoryPath = root.relativize(path).toString();
+            files.add(ModifiedFile.builder()
+                    .fileId(repositoryPath)
+                    .fileName(path.getFileName().toString())
+                    .filePath(repositoryPath)
+                    .changeType(ModifiedFile.ChangeType.MODIFIED)
+                    .build());
+            sources.add(Files.readString(path));
+        }
+        System.out.printf("corpus: %d files%n", files.size());
+        PMD_LOGGER.setLevel(Level.OFF);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StaticAnalysisService service = new StaticAnalysisService(
+                new CheckstyleAnalyzer(""),
+                new PmdAnalyzer(List.of("category/java/bestpractices.xml", "category/java/errorprone.xml"), 0),
+                new JavaSourceParser(meterRegistry),
+                new PreScreenAnalyzer(meterRegistry, false, Set.of(), List.of(), List.of(), List.of(), List.of()),
+                new AnalysisResultCache(new ObjectMapper(), meterRegistry, false, "", 0, 0),
+                meterRegistry, Runnable::run, 0, 1);
+        ReflectionTestUtils.setField(service, "pmdEnabled", true);
+        ReflectionTestUtils.setField(service, "checkstyleEnabled", true);
+
+        for (int batchSize : BATCH_SIZES) {
+            int size = Math.min(batchSize, files.size());
+            double nanos = measure(() -> {
+                for (int from = 0; from < files.size(); from += size) {
+                    int to = Math.min(from + size, files.size());
+                    service.analyzeFiles(files.subList(from, to), sources.subList(from, to));
+                }
+            });
+            System.out.printf("batches of %4d: %8.2f ms/file%n", size, nanos / files.size() / 1e6);
+        }
+        service.shutdown();
+    }
+
+    /**
+     * Mean time of a round, after a warm-up
+     */
+    private static double measure(Round round) throws Exception {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            round.run();
+        }
+
+        long rounds = 0;
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        long now;
+        do {
+            round.run();
+            rounds++;
+            now = System.nanoTime();
+        } while (now < end);
+        return (double) (now - start) / rounds;
+    }
+
+    @FunctionalInterface
+    private interface Round {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,182 @@
+package com.codecritic.service;
+
+import com.codecritic.model.AnalysisIssue;
+import com.codecritic.model.AnalysisReport;
+import com.codecritic.model.FileReviewResult;
+import com.codecritic.model.ModifiedFile;
+import com.codecritic.model.PullRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Analyzes files with stubbed PMD and Checkstyle analyzers, caching results on disk
+ */
+class StaticAnalysisServiceTest {
+
+    private static final String SOURCE = "package demo;\n\nclass Main {\n    void run() {\n        int x = 1;\n    }\n}\n";
+
+    @TempDir
+    Path cacheDir;
+
+    private final PmdAnalyzer pmdAnalyzer = mock(PmdAnalyzer.class);
+    private final CheckstyleAnalyzer checkstyleAnalyzer = mock(CheckstyleAnalyzer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StaticAnalysisService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(pmdAnalyzer.fingerprint()).thenReturn("pmd");
+        when(checkstyleAnalyzer.fingerprint()).thenReturn("checkstyle");
+        when(checkstyleAnalyzer.check(anyList())).thenAnswer(invocation ->
+                ((List<?>) invocation.getArgument(0)).stream().map(source -> List.<AnalysisIssue>of()).toList());
+
+        PreScreenAnalyzer preScreenAnalyzer = new PreScreenAnalyzer(meterRegistry, true,
+                Set.of("console-output"), List.of(), List.of(), List.of("System.out"), List.of());
+        AnalysisResultCache cache = new AnalysisResultCache(new ObjectMapper(), meterRegistry, true,
+                cacheDir.toString(), 100, 1);
+        service = new StaticAnalysisService(checkstyleAnalyzer, pmdAnalyzer, new JavaSourceParser(meterRegistry),
+                preScreenAnalyzer, cache, meterRegistry, Runnable::run, 0, 1);
+        ReflectionTestUtils.setField(service, "pmdEnabled", true);
+        ReflectionTestUtils.setField(service, "checkstyleEnabled", true);
+    }
+
+    @Test
+    void cachesCompleteResults() {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenReturn(List.of(List.of(AnalysisIssue.builder()
+                .description("Unused local variable")
+                .severity(AnalysisIssue.Severity.LOW)
+                .lineNumber(5)
+                .build())));
+
+        AnalysisReport first = service.analyzeFile(file(), SOURCE);
+        AnalysisReport second = service.analyzeFile(file(), SOURCE);
+
+        assertThat(first.isFailed()).isFalse();
+        assertThat(second.getIssues()).extracting(AnalysisIssue::getDescription)
+                .containsExactly("Unused local variable");
+        verify(pmdAnalyzer, times(1)).analyze(anyList(), anyList());
+    }
+
+    @Test
+    void runsEveryTierOnFilesThePreScreenPassed() {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenReturn(List.of(List.of()));
+
+        AnalysisReport report = service.analyzeFile(file(), SOURCE);
+
+        assertThat(report.getIssues()).isEmpty();
+        verify(pmdAnalyzer).analyze(List.of("src/demo/Main.java"), List.of(SOURCE));
+        assertThat(meterRegistry.get("codecritic.analysis.tier").tag("tier", "pmd").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("codecritic.analysis.tier").tag("tier", "checkstyle").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void failsReportsOfPmdBatchThatThrew() {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenThrow(new IllegalStateException("rule crashed"));
+
+        AnalysisReport report = service.analyzeFile(file(), SOURCE);
+
+        assertThat(report.isFailed()).isTrue();
+        assertThat(report.getIssues()).extracting(AnalysisIssue::getDescription)
+                .containsExactly("Error analyzing file: rule crashed");
+
+        // Neither cached nor carried over, so the next review analyzes the file again
+        service.analyzeFile(file(), SOURCE);
+        verify(pmdAnalyzer, times(2)).analyze(anyList(), anyList());
+        PullRequest pullRequest = PullRequest.builder().prId(1L).repository("octo/app").build();
+        ReviewResultStore store = new ReviewResultStore(10);
+        store.record(pullRequest, FileReviewResult.builder()
+                .filePath(file().getFilePath())
+                .blobSha(file().getFileId())
+                .report(report)
+                .build());
+        assertThat(store.find(pullRequest, file())).isNull();
+    }
+
+    @Test
+    void failsReportOfFileCheckstyleFailedOn() throws Exception {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenReturn(List.of(List.of()));
+        when(checkstyleAnalyzer.check(anyList())).thenReturn(Collections.singletonList(null));
+
+        AnalysisReport report = service.analyzeFile(file(), SOURCE);
+
+        assertThat(report.isFailed()).isTrue();
+        assertThat(report.getIssues()).extracting(AnalysisIssue::getDescription)
+                .containsExactly("Error analyzing file: Checkstyle failed on this file");
+        service.analyzeFile(file(), SOURCE);
+        verify(checkstyleAnalyzer, times(2)).check(anyList());
+    }
+
+    @Test
+    void failsReportsOfCheckstyleBatchThatThrew() throws Exception {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenReturn(List.of(List.of()));
+        when(checkstyleAnalyzer.check(anyList())).thenThrow(new CheckstyleException("bad configuration"));
+
+        AnalysisReport report = service.analyzeFile(file(), SOURCE);
+
+        assertThat(report.isFailed()).isTrue();
+        assertThat(report.getIssues()).extracting(AnalysisIssue::getDescription)
+                .containsExactly("Error analyzing file: bad configuration");
+        service.analyzeFile(file(), SOURCE);
+        verify(checkstyleAnalyzer, times(2)).check(anyList());
+    }
+
+    @Test
+    void batchesFilesOfAPullRequestUntilNoneArrivesForTheWindow() throws Exception {
+        when(pmdAnalyzer.analyze(anyList(), anyList())).thenAnswer(invocation ->
+                ((List<?>) invocation.getArgument(0)).stream().map(path -> List.<AnalysisIssue>of()).toList());
+        StaticAnalysisService batching = new StaticAnalysisService(checkstyleAnalyzer, pmdAnalyzer,
+                new JavaSourceParser(meterRegistry), new PreScreenAnalyzer(meterRegistry, false, Set.of(),
+                        List.of(), List.of(), List.of(), List.of()),
+                new AnalysisResultCache(new ObjectMapper(), meterRegistry, false, cacheDir.toString(), 100, 1),
+                meterRegistry, Runnable::run, 200, 0);
+        ReflectionTestUtils.setField(batching, "pmdEnabled", true);
+        PullRequest pullRequest = PullRequest.builder().repository("octo/app").prId(7L).headSha("abc").build();
+
+        List<CompletableFuture<AnalysisReport>> reports = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // Each file arrives well within the window, but the last one after the first one's window
+            reports.add(batching.submit(pullRequest, file("F" + i), SOURCE.replace("Main", "F" + i), null));
+            Thread.sleep(120);
+        }
+        CompletableFuture.allOf(reports.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        verify(pmdAnalyzer).analyze(eq(List.of("src/demo/F0.java", "src/demo/F1.java", "src/demo/F2.java")),
+                anyList());
+        batching.shutdown();
+    }
+
+    private static ModifiedFile file() {
+        return file("Main");
+    }
+
+    private static ModifiedFile file(String className) {
+        return ModifiedFile.builder()
+                .fileId("f".repeat(40))
+                .fileName(className + ".java")
+                .filePath("src/demo/" + className + ".java")
+                .changeType(ModifiedFile.ChangeType.MODIFIED)
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package com.codecritic.service;
+
+import com.codecritic.model.GitHubWebhookEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookJournalReplayerTest {
+
+    private final WebhookJournal journal = mock(WebhookJournal.class);
+    private final GitHubWebhookService webhookService = mock(GitHubWebhookService.class);
+    private final WebhookAdmissionService admissionService = mock(WebhookAdmissionService.class);
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final Queue<Long> processed = new ConcurrentLinkedQueue<>();
+    private WebhookJournalReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        // Stands in for the @Async proxy, which submits the call to the webhook executor
+        doAnswer(invocation -> {
+            GitHubWebhookEvent event = invocation.getArgument(0);
+            executor.execute(() -> {
+                sleep(20);
+                processed.add(event.getJournalSequence());
+            });
+            return null;
+        }).when(webhookService).processWebhookEvent(any());
+        replayer = new WebhookJournalReplayer(journal, webhookService, admissionService, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void replaysNoFasterThanTheExecutorTakesEvents() {
+        when(journal.drainReplay()).thenReturn(events(10));
+
+        replayer.replay();
+        executor.getThreadPoolExecutor().shutdown();
+        awaitTermination();
+
+        assertThat(processed).containsExactly(LongStream.rangeClosed(1, 10).boxed().toArray(Long[]::new));
+        verify(admissionService, times(10)).forceAdmit();
+        verify(admissionService, never()).release();
+        verify(journal, never()).acknowledge(anyLong());
+    }
+
+    @Test
+    void acknowledgesEventTheExecutorRejectedAndGoesOn() {
+        when(journal.drainReplay()).thenReturn(events(3));
+        doAnswer(invocation -> {
+            GitHubWebhookEvent event = invocation.getArgument(0);
+            if (event.getJournalSequence() == 1) {
+                throw new TaskRejectedException("webhookExecutor is full");
+            }
+            processed.add(event.getJournalSequence());
+            return null;
+        }).when(webhookService).processWebhookEvent(any());
+
+        replayer.replay();
+
+        assertThat(processed).containsExactly(2L, 3L);
+        verify(journal).acknowledge(1L);
+        verify(admissionService, times(3)).forceAdmit();
+        verify(admissionService, times(1)).release();
+    }
+
+    private static List<GitHubWebhookEvent> events(int count) {
+        return LongStream.rangeClosed(1, count)
+                .mapToObj(sequence -> GitHubWebhookEvent.builder()
+                        .eventType("pull_request")
+                        .journalSequence(sequence)
+                        .build())
+                .toList();
+    }
+
+    private void awaitTermination() {
+        try {
+            assertThat(executor.getThreadPoolExecutor().awaitTermination(10, TimeUnit.SECONDS))
+                    .isTrue();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}